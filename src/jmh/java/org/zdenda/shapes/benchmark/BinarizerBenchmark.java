@@ -0,0 +1,76 @@
+package org.zdenda.shapes.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zdenda.shapes.recognizer.core.Binarizer;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+
+/**
+ * Measures binarisation of grey scans. The default size has about 50 megapixels.
+ * @author Zdenda
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dlog4j.configurationFile=log4j2-benchmark.xml"})
+public class BinarizerBenchmark {
+
+	/**
+	 * Width and height of the image.
+	 */
+	@Param({"7072"})
+	public int size;
+
+	private BufferedImage image;
+
+	private byte[] grey;
+
+	private final Binarizer global = Binarizer.global(128);
+
+	private final Binarizer otsu = Binarizer.otsu();
+
+	private final Binarizer adaptive = Binarizer.adaptive(Binarizer.DEFAULT_WINDOW, Binarizer.DEFAULT_PERCENT);
+
+	@Setup
+	public void setUp() {
+		image = SyntheticImages.scannedLines(size, size, size / 10, new Random(42));
+		grey = BitmapConverter.convertToGrey(image);
+	}
+
+	@Benchmark
+	public byte[] convertToGrey() {
+		return BitmapConverter.convertToGrey(image);
+	}
+
+	@Benchmark
+	public BinaryBitmap global() {
+		return global.binarize(grey, size, size);
+	}
+
+	@Benchmark
+	public BinaryBitmap otsu() {
+		return otsu.binarize(grey, size, size);
+	}
+
+	@Benchmark
+	public BinaryBitmap adaptive() {
+		return adaptive.binarize(grey, size, size);
+	}
+}
@@ -0,0 +1,110 @@
+package org.zdenda.shapes.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.BufferPool;
+import org.zdenda.shapes.recognizer.core.Pixel;
+
+/**
+ * Compares conversion of images by {@code BitmapConverter} (direct raster access) with the conversion
+ * which calls {@code BufferedImage.getRGB()} for every pixel, and with the conversion to reused buffers.
+ * @author Zdenda
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+public class ConverterBenchmark {
+
+	/**
+	 * Width and height of the image.
+	 */
+	@Param({"1000", "4000"})
+	public int size;
+
+	/**
+	 * Type of the image, name of the BufferedImage.TYPE_* constant without prefix.
+	 */
+	@Param({"INT_RGB", "3BYTE_BGR", "BYTE_GRAY", "BYTE_BINARY"})
+	public String type;
+
+	private BufferedImage image;
+
+	private final BufferPool pool = new BufferPool();
+
+	private Pixel[][] pixels;
+
+	@Setup
+	public void setUp() throws Exception {
+		int imageType = BufferedImage.class.getField("TYPE_"+type).getInt(null);
+		image = SyntheticImages.randomLines(size, size, imageType, size / 10, new Random(42));
+	}
+
+	@Benchmark
+	public BinaryBitmap binaryRaster() {
+		return BitmapConverter.convertToBinaryBitmap(image);
+	}
+
+	@Benchmark
+	public BinaryBitmap binaryPooled() {
+		BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmapPooled(image, null, pool);
+		pool.releaseBitmap(bitmap);
+		return bitmap;
+	}
+
+	@Benchmark
+	public BinaryBitmap binaryGetRgb() {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		BinaryBitmap res = new BinaryBitmap(w, h);
+		for(int i = 0; i < h; i++) {
+			for(int j = 0; j < w; j++) {
+				if((image.getRGB(j, i) & 0x00FFFFFF) == 0) {
+					res.setBlack(j, i, true);
+				}
+			}
+		}
+		return res;
+	}
+
+	@Benchmark
+	public Pixel[][] pixelsRaster() {
+		return BitmapConverter.convertToPixArray(image);
+	}
+
+	@Benchmark
+	public Pixel[][] pixelsReused() {
+		return pixels = BitmapConverter.convertToPixArray(image, pixels);
+	}
+
+	@Benchmark
+	public Pixel[][] pixelsGetRgb() {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		Pixel[][] res = new Pixel[h][w];
+		for(int i = 0; i < h; i++) {
+			for(int j = 0; j < w; j++) {
+				res[i][j] = new Pixel(image.getRGB(j, i));
+			}
+		}
+		return res;
+	}
+}
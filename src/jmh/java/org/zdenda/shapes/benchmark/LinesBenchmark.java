@@ -0,0 +1,127 @@
+package org.zdenda.shapes.benchmark;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zdenda.shapes.benchmark.SyntheticImages.Orientation;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.Direction;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.Pixel;
+import org.zdenda.shapes.recognizer.core.RunLengthBitmap;
+import org.zdenda.shapes.recognizer.core.lines.LineDetector;
+import org.zdenda.shapes.recognizer.core.lines.Lines;
+import org.zdenda.shapes.recognizer.core.lines.RunLengthLineDetector;
+
+/**
+ * Line tracing on synthetic bitmaps of different size, line density and orientation.
+ * @author Zdenda
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+public class LinesBenchmark {
+
+	/**
+	 * Width and height of the bitmap.
+	 */
+	@Param({"512", "2048"})
+	public int size;
+
+	@Param({"HORIZONTAL", "VERTICAL", "SE", "SW"})
+	public Orientation orientation;
+
+	/**
+	 * Distance between lines.
+	 */
+	@Param({"4", "64"})
+	public int spacing;
+
+	private BinaryBitmap bitmap;
+
+	private Pixel[][] pixels;
+
+	private RunLengthBitmap runs;
+
+	private LineDetector detector;
+
+	private RunLengthLineDetector runDetector;
+
+	/**
+	 * Point in the middle of the first line and direction of that line.
+	 */
+	private Point linePoint;
+
+	private Direction lineDirection;
+
+	@Setup
+	public void setUp() {
+		bitmap = SyntheticImages.parallelLinesBitmap(size, size, orientation, spacing);
+		pixels = BitmapConverter.convertToPixArray(SyntheticImages.parallelLines(size, size, BufferedImage.TYPE_INT_RGB, orientation, spacing));
+		runs = RunLengthBitmap.fromBinaryBitmap(bitmap);
+		detector = new LineDetector();
+		runDetector = new RunLengthLineDetector();
+
+		Line line = Lines.findLine(bitmap);
+		linePoint = new Point((line.getStart().x + line.getEnd().x) / 2, (line.getStart().y + line.getEnd().y) / 2);
+		lineDirection = Lines.determineDirection(line.getStart(), line.getEnd());
+	}
+
+	@Benchmark
+	public List<Line> findLines() {
+		return Lines.findLines(bitmap);
+	}
+
+	@Benchmark
+	public List<Line> findLinesReusedDetector() {
+		return detector.findLines(bitmap);
+	}
+
+	@Benchmark
+	public List<Line> findLinesRunLength() {
+		return runDetector.findLines(runs);
+	}
+
+	@Benchmark
+	public List<Line> findLinesPixels() {
+		return Lines.findLines(pixels);
+	}
+
+	@Benchmark
+	public List<Line> findLinesParallel() {
+		return Lines.findLinesParallel(bitmap);
+	}
+
+	@Benchmark
+	public List<Line> findLinesHough() {
+		return Lines.findLinesHough(bitmap);
+	}
+
+	@Benchmark
+	public Line findLine() {
+		return Lines.findLine(bitmap);
+	}
+
+	@Benchmark
+	public Point findNextPoint() {
+		return Lines.findNextPoint(linePoint, bitmap, lineDirection);
+	}
+}
@@ -0,0 +1,64 @@
+package org.zdenda.shapes.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.lines.Lines;
+
+/**
+ * End-to-end recognition, from decoded image to the list of lines.
+ * @author Zdenda
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+public class RecognitionBenchmark {
+
+	/**
+	 * Width and height of the image.
+	 */
+	@Param({"1000", "4000"})
+	public int size;
+
+	/**
+	 * Number of random lines per 1000 pixels of the image side.
+	 */
+	@Param({"10", "100"})
+	public int density;
+
+	private BufferedImage image;
+
+	@Setup
+	public void setUp() {
+		image = SyntheticImages.randomLines(size, size, BufferedImage.TYPE_INT_RGB, density * size / 1000, new Random(42));
+	}
+
+	@Benchmark
+	public List<Line> recognize() {
+		return Lines.findLines(BitmapConverter.convertToBinaryBitmap(image));
+	}
+
+	@Benchmark
+	public List<Line> recognizePixels() {
+		return Lines.findLines(BitmapConverter.convertToPixArray(image));
+	}
+}
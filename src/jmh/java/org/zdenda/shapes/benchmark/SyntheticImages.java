@@ -0,0 +1,140 @@
+package org.zdenda.shapes.benchmark;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+
+/**
+ * Generates images used by benchmarks. Every image has white background and black lines.
+ * @author Zdenda
+ *
+ */
+public class SyntheticImages {
+
+	/**
+	 * Orientation of generated lines, the same as in the test images of {@code LinesTest}.
+	 */
+	public enum Orientation {
+		HORIZONTAL, VERTICAL, SE, SW
+	}
+
+	/**
+	 * Empty space around the lines.
+	 */
+	private static final int MARGIN = 2;
+
+	/**
+	 * Creates image with parallel lines.
+	 * @param w Width.
+	 * @param h Height.
+	 * @param type Type of the image.
+	 * @param orientation Orientation of lines.
+	 * @param spacing Distance between lines, smaller spacing means more lines. Must be at least 2.
+	 * @return
+	 */
+	public static BufferedImage parallelLines(int w, int h, int type, Orientation orientation, int spacing) {
+		BufferedImage image = whiteImage(w, h, type);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.BLACK);
+		int last = Math.min(w, h) - MARGIN - 1;
+
+		switch (orientation) {
+		case HORIZONTAL:
+			for(int y = MARGIN; y < h - MARGIN; y += spacing) {
+				g.drawLine(MARGIN, y, w - MARGIN - 1, y);
+			}
+			break;
+		case VERTICAL:
+			for(int x = MARGIN; x < w - MARGIN; x += spacing) {
+				g.drawLine(x, MARGIN, x, h - MARGIN - 1);
+			}
+			break;
+		case SE:
+			//45 degree lines starting on the top and on the left edge
+			for(int x = MARGIN; x < last; x += spacing) {
+				g.drawLine(x, MARGIN, last, last - x + MARGIN);
+			}
+			for(int y = MARGIN + spacing; y < last; y += spacing) {
+				g.drawLine(MARGIN, y, last - y + MARGIN, last);
+			}
+			break;
+		case SW:
+			for(int x = last; x > MARGIN; x -= spacing) {
+				g.drawLine(x, MARGIN, MARGIN, x);
+			}
+			for(int y = MARGIN + spacing; y < last; y += spacing) {
+				g.drawLine(last, y, y, last);
+			}
+			break;
+		}
+
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Creates binary bitmap with parallel lines.
+	 * @see #parallelLines(int, int, int, Orientation, int)
+	 */
+	public static BinaryBitmap parallelLinesBitmap(int w, int h, Orientation orientation, int spacing) {
+		return BitmapConverter.convertToBinaryBitmap(parallelLines(w, h, BufferedImage.TYPE_BYTE_BINARY, orientation, spacing));
+	}
+
+	/**
+	 * Creates image with random black lines.
+	 * @param w Width.
+	 * @param h Height.
+	 * @param type Type of the image.
+	 * @param lines Number of lines.
+	 * @param random Source of line coordinates.
+	 * @return
+	 */
+	public static BufferedImage randomLines(int w, int h, int type, int lines, Random random) {
+		BufferedImage image = whiteImage(w, h, type);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.BLACK);
+		for(int i = 0; i < lines; i++) {
+			g.drawLine(random.nextInt(w), random.nextInt(h), random.nextInt(w), random.nextInt(h));
+		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Creates grey image which looks like a scan: background with gradient from light grey to white
+	 * and anti-aliased dark grey lines.
+	 * @param w Width.
+	 * @param h Height.
+	 * @param lines Number of lines.
+	 * @param random Source of line coordinates.
+	 * @return
+	 */
+	public static BufferedImage scannedLines(int w, int h, int lines, Random random) {
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g = image.createGraphics();
+		g.setPaint(new GradientPaint(0, 0, new Color(170, 170, 170), w, h, Color.WHITE));
+		g.fillRect(0, 0, w, h);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(new Color(60, 60, 60));
+		for(int i = 0; i < lines; i++) {
+			g.drawLine(random.nextInt(w), random.nextInt(h), random.nextInt(w), random.nextInt(h));
+		}
+		g.dispose();
+		return image;
+	}
+
+	private static BufferedImage whiteImage(int w, int h, int type) {
+		BufferedImage image = new BufferedImage(w, h, type);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, w, h);
+		g.dispose();
+		return image;
+	}
+}
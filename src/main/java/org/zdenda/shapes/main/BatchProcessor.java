@@ -0,0 +1,410 @@
+package org.zdenda.shapes.main;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.Binarizer;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapCache;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.BufferPool;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.lines.DetectionStatistics;
+import org.zdenda.shapes.recognizer.core.lines.LineDetector;
+import org.zdenda.shapes.recognizer.core.metrics.Metrics;
+
+/**
+ * <p>
+ * Processes multiple image files in one run. Files are decoded and converted to binary bitmaps by decoding threads
+ * and passed to recognition threads through a bounded queue. When the queue is full, decoding threads wait,
+ * so only a limited number of decoded images is held in memory at once.
+ * </p>
+ *
+ * <p>
+ * Reading of files is mostly waiting for I/O, so on JDK 21 and newer the decoding threads are virtual threads
+ * and there are {@code DECODERS_PER_THREAD} times more of them than recognition threads, which keeps
+ * the recognition threads busy even when files are read from slow network drives. On older JDKs the same
+ * number of platform threads is used for decoding and for recognition. Decoded images are held by decoding
+ * threads until they are converted, so at most {@code maxDecodes()} images are decoded at once, whatever
+ * the number of decoding threads is.
+ * </p>
+ *
+ * <p>
+ * One result line is printed for every file, in the order in which the files are finished. Errors of one file
+ * (including {@code Error}s) are printed as its result and the processing continues, so no thread stops before
+ * the end of the queue and decoding threads never wait for the full queue forever.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class BatchProcessor {
+
+	private static final Logger logger = LogManager.getLogger(BatchProcessor.class);
+
+	/**
+	 * Number of decoded images waiting for recognition per one recognition thread.
+	 */
+	private static final int QUEUE_SIZE_PER_THREAD = 2;
+
+	/**
+	 * Number of virtual decoding threads per one recognition thread.
+	 */
+	static final int DECODERS_PER_THREAD = 8;
+
+	/**
+	 * Number of recognition threads (and decoding threads).
+	 */
+	private final int threads;
+
+	/**
+	 * Stream for the results.
+	 */
+	private final PrintStream out;
+
+	/**
+	 * Cache of decoded bitmaps, may be null.
+	 */
+	private final BitmapCache cache;
+
+	/**
+	 * Binarizer of decoded images, may be null.
+	 */
+	private final Binarizer binarizer;
+
+	/**
+	 * Statistics of all searches of the last run.
+	 */
+	private DetectionStatistics statistics = DetectionStatistics.EMPTY;
+
+	/**
+	 * @param threads Number of threads used for decoding and the same number for recognition. Must be positive.
+	 * @param out Stream to which the results are printed.
+	 */
+	public BatchProcessor(int threads, PrintStream out) {
+		this(threads, out, null);
+	}
+
+	/**
+	 * @param threads Number of threads used for decoding and the same number for recognition. Must be positive.
+	 * @param out Stream to which the results are printed.
+	 * @param cache Cache of decoded bitmaps. If null, every file is decoded.
+	 */
+	public BatchProcessor(int threads, PrintStream out, BitmapCache cache) {
+		this(threads, out, cache, null);
+	}
+
+	/**
+	 * @param threads Number of threads used for decoding and the same number for recognition. Must be positive.
+	 * @param out Stream to which the results are printed.
+	 * @param cache Cache of decoded bitmaps. If null, every file is decoded. The cache should use the same binarizer.
+	 * @param binarizer Binarizer of decoded images. If null, only black pixels are line points.
+	 */
+	public BatchProcessor(int threads, PrintStream out, BitmapCache cache, Binarizer binarizer) {
+		super();
+		if(threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be positive!");
+		}
+		if(out == null) {
+			throw new IllegalArgumentException("Output stream can't be null!");
+		}
+
+		this.threads = threads;
+		this.out = out;
+		this.cache = cache;
+		this.binarizer = binarizer;
+	}
+
+	/**
+	 * Processes all files and waits until they are finished.
+	 * @param files Files to be processed.
+	 * @return Number of files which couldn't be processed.
+	 * @throws InterruptedException
+	 */
+	public int process(List<File> files) throws InterruptedException {
+		ExecutorService decoders = newVirtualThreadExecutor();
+		boolean virtual = decoders != null;
+		if(!virtual) {
+			decoders = Executors.newFixedThreadPool(threads);
+		}
+		return process(files, decoders, decoderCount(threads, virtual, files.size()));
+	}
+
+	/**
+	 * Returns number of decoding threads, {@code DECODERS_PER_THREAD} virtual threads or one platform thread
+	 * per recognition thread, but at least one and at most one per file.
+	 * @param threads Number of recognition threads.
+	 * @param virtual True if decoding threads are virtual.
+	 * @param files Number of files.
+	 * @return
+	 */
+	static int decoderCount(int threads, boolean virtual, int files) {
+		int count = virtual ? threads * DECODERS_PER_THREAD : threads;
+		return Math.max(1, Math.min(count, files));
+	}
+
+	/**
+	 * Returns number of images decoded at once, the capacity of the queue.
+	 * @param threads Number of recognition threads.
+	 * @return
+	 */
+	static int maxDecodes(int threads) {
+		return QUEUE_SIZE_PER_THREAD * threads;
+	}
+
+	/**
+	 * Processes all files by the decoding threads of the executor and waits until they are finished.
+	 * @param files Files to be processed.
+	 * @param decoders Executor of decoding threads, it's shut down at the end.
+	 * @param decoderCount Number of decoding tasks, the executor must run all of them at once.
+	 * @return Number of files which couldn't be processed.
+	 * @throws InterruptedException
+	 */
+	int process(final List<File> files, ExecutorService decoders, int decoderCount) throws InterruptedException {
+		synchronized (this) {
+			statistics = DetectionStatistics.EMPTY;
+		}
+
+		ExecutorService recognizers = Executors.newFixedThreadPool(threads);
+		logger.debug("Processing {} files using {} decoding and {} recognition threads.", files.size(), decoderCount, threads);
+
+		final BlockingQueue<DecodedImage> queue = new ArrayBlockingQueue<DecodedImage>(QUEUE_SIZE_PER_THREAD * threads);
+		//decoded images are large, other decoding threads wait before reading the file
+		final Semaphore decodes = new Semaphore(maxDecodes(threads));
+		//bitmaps of images in the queue, being converted or being recognized, bounded by bytes
+		final BufferPool pool = new BufferPool();
+		final AtomicInteger nextFile = new AtomicInteger(0);
+		final AtomicInteger failures = new AtomicInteger(0);
+		final CountDownLatch decoded = new CountDownLatch(decoderCount);
+
+		for(int i = 0; i < decoderCount; i++) {
+			decoders.execute(new Runnable() {
+				public void run() {
+					try {
+						int index;
+						while((index = nextFile.getAndIncrement()) < files.size()) {
+							File file = files.get(index);
+							BinaryBitmap bitmap;
+							decodes.acquire();
+							try {
+								bitmap = decode(file, pool);
+							} finally {
+								decodes.release();
+							}
+							if(bitmap == null) {
+								failures.incrementAndGet();
+								continue;
+							}
+							queue.put(new DecodedImage(file, bitmap));
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						decoded.countDown();
+					}
+				}
+			});
+		}
+
+		for(int i = 0; i < threads; i++) {
+			recognizers.execute(new Runnable() {
+				public void run() {
+					LineDetector detector = new LineDetector();
+					try {
+						DecodedImage image;
+						while((image = queue.take()) != DecodedImage.END) {
+							try {
+								if(!recognize(image, detector)) {
+									failures.incrementAndGet();
+								}
+							} finally {
+								if(cache == null) {
+									pool.releaseBitmap(image.bitmap);
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+
+		//all files are decoded, tell the recognizers to finish
+		decoded.await();
+		for(int i = 0; i < threads; i++) {
+			queue.put(DecodedImage.END);
+		}
+
+		decoders.shutdown();
+		recognizers.shutdown();
+		recognizers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		logger.info("Processed {} files: {}.", files.size(), getStatistics());
+		return failures.get();
+	}
+
+	/**
+	 * Returns executor which starts new virtual thread for every task, or null if the JDK doesn't support
+	 * virtual threads. The method is called by reflection, so the code runs on older JDKs too.
+	 * @return
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			logger.debug("Virtual threads are not available: {}.", e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the file and converts it to binary bitmap, or loads the bitmap from the cache.
+	 * If the file can't be read or decoded, error line is printed and null is returned.
+	 * @param file Image file.
+	 * @param pool Pool of bitmaps, bitmaps are released after recognition.
+	 * @return Bitmap or null.
+	 */
+	private BinaryBitmap decode(File file, BufferPool pool) {
+		boolean metrics = Metrics.isEnabled();
+		long allocated = metrics ? Metrics.allocatedBytes() : 0;
+		try {
+			if(cache != null) {
+				BinaryBitmap bitmap = cache.get(file);
+				if(bitmap == null) {
+					printResult(file, "error: unsupported image format");
+				}
+				return bitmap;
+			}
+
+			long start = metrics ? System.nanoTime() : 0;
+			BufferedImage image = ImageIO.read(file);
+			if(image == null) {
+				printResult(file, "error: unsupported image format");
+				return null;
+			}
+
+			long decodeEnd = metrics ? System.nanoTime() : 0;
+			BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmapPooled(image, binarizer, pool);
+			if(metrics) {
+				Metrics.DECODE_TIME.record(decodeEnd - start);
+				Metrics.CONVERT_TIME.record(System.nanoTime() - decodeEnd);
+			}
+			return bitmap;
+		} catch (IOException e) {
+			logger.error("Error reading the file: "+file.getPath()+".", e);
+			printResult(file, "error: "+e.getMessage());
+			return null;
+		} catch (RuntimeException | Error e) {
+			logger.error("Error decoding the file: "+file.getPath()+".", e);
+			printResult(file, "error: "+e);
+			return null;
+		} finally {
+			if(metrics) {
+				Metrics.recordAllocation(Metrics.DECODE_ALLOCATION, allocated);
+			}
+		}
+	}
+
+	/**
+	 * Finds lines in decoded image and prints the result.
+	 * @param image Decoded image.
+	 * @param detector Detector of the current thread.
+	 * @return False if the recognition failed.
+	 */
+	private boolean recognize(DecodedImage image, LineDetector detector) {
+		boolean metrics = Metrics.isEnabled();
+		long allocated = metrics ? Metrics.allocatedBytes() : 0;
+		try {
+			List<Line> lines = detector.findLines(image.bitmap);
+			if(metrics) {
+				Metrics.recordAllocation(Metrics.RECOGNITION_ALLOCATION, allocated);
+				Metrics.IMAGES.increment();
+			}
+			printResult(image.file, formatLines(lines));
+			DetectionStatistics fileStatistics = detector.getLastStatistics();
+			logger.debug("{}: {}.", image.file.getPath(), fileStatistics);
+			synchronized (this) {
+				statistics = statistics.add(fileStatistics);
+			}
+			return true;
+		} catch (RuntimeException | Error e) {
+			logger.error("Error recognizing the file: "+image.file.getPath()+".", e);
+			printResult(image.file, "error: "+e);
+			return false;
+		}
+	}
+
+	/**
+	 * Returns statistics of all searches of the last run, time is the sum of times of all recognition threads.
+	 * @return
+	 */
+	public synchronized DetectionStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Returns lines formatted as one line of text.
+	 * @param lines Lines, may be null.
+	 * @return
+	 */
+	public static String formatLines(List<Line> lines) {
+		if(lines == null || lines.isEmpty()) {
+			return "0 lines";
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(lines.size()).append(" lines:");
+		for(Line line : lines) {
+			sb.append(" [").append(line.getStart().x).append(',').append(line.getStart().y).append("]-[")
+				.append(line.getEnd().x).append(',').append(line.getEnd().y).append(']');
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Prints one result line. Lines from different threads are not mixed.
+	 * @param file Processed file.
+	 * @param result Result.
+	 */
+	private void printResult(File file, String result) {
+		synchronized (out) {
+			out.println(file.getPath()+": "+result);
+		}
+	}
+
+	/**
+	 * Image waiting for recognition.
+	 */
+	private static class DecodedImage {
+
+		/**
+		 * Marks the end of the queue.
+		 */
+		static final DecodedImage END = new DecodedImage(null, null);
+
+		final File file;
+
+		final BinaryBitmap bitmap;
+
+		DecodedImage(File file, BinaryBitmap bitmap) {
+			this.file = file;
+			this.bitmap = bitmap;
+		}
+	}
+}
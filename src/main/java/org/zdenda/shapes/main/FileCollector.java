@@ -0,0 +1,159 @@
+package org.zdenda.shapes.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Class containing static methods to turn command line arguments (files, directories and glob patterns)
+ * to the list of image files.
+ * @author Zdenda
+ *
+ */
+public class FileCollector {
+
+	private static final Logger logger = LogManager.getLogger(FileCollector.class);
+
+	/**
+	 * Characters which make the argument a glob pattern.
+	 */
+	private static final String GLOB_CHARS = "*?[{";
+
+	/**
+	 * Returns image files specified by the argument.
+	 * <ul>
+	 * 	<li>Regular file is returned as it is.</li>
+	 * 	<li>Directory is searched recursively for files with suffixes known to {@code ImageIO}.</li>
+	 * 	<li>Glob pattern (e.g. {@code scans/**.bmp}) is matched against files under the part of path without wildcards.</li>
+	 * </ul>
+	 * Files of directories and patterns are sorted by path.
+	 *
+	 * @param argument File, directory or glob pattern.
+	 * @return List of files, empty if nothing matches.
+	 * @throws IOException If directory can't be read.
+	 */
+	public static List<File> collect(String argument) throws IOException {
+		List<File> files = new ArrayList<File>();
+		if(!isGlob(argument)) {
+			File file = new File(argument);
+			if(file.isDirectory()) {
+				collectImages(file.toPath(), null, files);
+			} else if(file.isFile()) {
+				files.add(file);
+			} else {
+				logger.warn("File: {} doesn't exist.", file.getPath());
+			}
+			return files;
+		}
+
+		//walk from the longest path prefix without wildcards
+		Path pattern = Paths.get(argument);
+		Path base = pattern.isAbsolute() ? pattern.getRoot() : Paths.get("");
+		for(Path part : pattern) {
+			if(isGlob(part.toString())) {
+				break;
+			}
+			base = base.resolve(part);
+		}
+
+		if(!Files.isDirectory(base)) {
+			logger.warn("Directory: {} doesn't exist.", base);
+			return files;
+		}
+
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:"+argument);
+		collectImages(base, matcher, files);
+		return files;
+	}
+
+	/**
+	 * Returns image files specified by all arguments, without duplicates.
+	 * @param arguments Files, directories and glob patterns.
+	 * @return
+	 * @throws IOException
+	 */
+	public static List<File> collect(List<String> arguments) throws IOException {
+		List<File> files = new ArrayList<File>();
+		Set<File> known = new HashSet<File>();
+		for(String argument : arguments) {
+			for(File file : collect(argument)) {
+				if(known.add(file)) {
+					files.add(file);
+				}
+			}
+		}
+
+		return files;
+	}
+
+	/**
+	 * Returns true if the argument contains wildcards.
+	 * @param argument
+	 * @return
+	 */
+	private static boolean isGlob(String argument) {
+		for(int i = 0; i < argument.length(); i++) {
+			if(GLOB_CHARS.indexOf(argument.charAt(i)) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds all files under the directory to the list. If the matcher is null, only files with image suffixes are added.
+	 */
+	private static void collectImages(Path directory, final PathMatcher matcher, final List<File> files) throws IOException {
+		final Set<String> suffixes = new HashSet<String>();
+		for(String suffix : ImageIO.getReaderFileSuffixes()) {
+			suffixes.add(suffix.toLowerCase(Locale.ROOT));
+		}
+
+		final List<Path> found = new ArrayList<Path>();
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if(!attrs.isRegularFile()) {
+					return FileVisitResult.CONTINUE;
+				}
+
+				if(matcher != null ? matcher.matches(file) : suffixes.contains(suffix(file))) {
+					found.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		Collections.sort(found);
+		for(Path path : found) {
+			files.add(path.toFile());
+		}
+	}
+
+	/**
+	 * Returns lower case suffix of the file name without dot.
+	 */
+	private static String suffix(Path file) {
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+}
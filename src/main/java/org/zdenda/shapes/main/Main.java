@@ -1,18 +1,16 @@
 package org.zdenda.shapes.main;
 
-import java.awt.Point;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-
-import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.zdenda.shapes.recognizer.core.BitmapConverter;
-import org.zdenda.shapes.recognizer.core.Line;
-import org.zdenda.shapes.recognizer.core.Pixel;
-import org.zdenda.shapes.recognizer.core.lines.Lines;
+import org.zdenda.shapes.recognizer.core.Binarizer;
+import org.zdenda.shapes.recognizer.core.BitmapCache;
+import org.zdenda.shapes.recognizer.core.metrics.JsonMetricsSink;
+import org.zdenda.shapes.recognizer.core.metrics.Metrics;
 
 /**
  * Main class of application.
@@ -20,48 +18,185 @@ import org.zdenda.shapes.recognizer.core.lines.Lines;
  *
  */
 public class Main {
-	
+
 	private static final Logger logger = LogManager.getLogger(Main.class);
-	
+
+	private static final String USAGE = "Usage: [--threads N] [--cache DIR] [--binarize global:N|otsu|adaptive[:window[:percent]]] [--metrics FILE|-] <file|directory|glob pattern>...\n"
+			+ "       [--threads N] [--binarize ...] [--metrics FILE|-] --server PORT [--queue N] [--timeout MS]";
+
+	/**
+	 * Default number of requests waiting for a worker of the server.
+	 */
+	private static final int DEFAULT_QUEUE_SIZE = 16;
+
+	/**
+	 * Default timeout of one request of the server.
+	 */
+	private static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
 	/**
-	 * Name of the file is specificated through args.
+	 * Files are specificated through args. Every argument can be a file, a directory (searched recursively for images)
+	 * or a glob pattern. Number of threads can be set by the {@code --threads N} option, number of available processors
+	 * is used by default. With the {@code --cache DIR} option, converted bitmaps are stored in the directory and
+	 * images which haven't changed are not decoded again in the following runs. The {@code --binarize} option
+	 * selects the {@code Binarizer} for grey and anti-aliased images, only black pixels are line points by default.
+	 *
+	 * One line with the result is printed for every file.
+	 *
+	 * With the {@code --server PORT} option no files are processed, {@code RecognitionServer} is started instead
+	 * and runs until the JVM is stopped. Threads are its workers, {@code --queue N} sets the number of requests
+	 * waiting for a worker and {@code --timeout MS} the timeout of one request.
+	 *
+	 * The {@code --metrics FILE} option enables {@code Metrics} and registers their MBean. The metrics are written
+	 * to the file as JSON when all files are processed or when the server stops, {@code -} prints them instead.
 	 * @param args
 	 */
 	public static void main(String[] args) {
 		if(args.length == 0) {
 			logger.warn("No arguments.");
-			System.out.println("No arguments. Use the file name as the first argument.");
+			System.out.println("No arguments. "+USAGE);
 			return;
 		}
-		
-		//load file and verify it exists
-		String fileName = args[0];
-		File imgFile = new File(fileName);
-		
-		if(!imgFile.exists()) {
-			logger.warn("File: {} doesn't exist.",imgFile.getPath());
+
+		//parse arguments
+		int threads = Runtime.getRuntime().availableProcessors();
+		File cacheDirectory = null;
+		Binarizer binarizer = null;
+		int serverPort = -1;
+		int queueSize = DEFAULT_QUEUE_SIZE;
+		long timeout = DEFAULT_TIMEOUT_MILLIS;
+		String metricsFile = null;
+		List<String> paths = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++) {
+			if("--threads".equals(args[i])) {
+				if(i + 1 >= args.length) {
+					System.out.println("Missing number of threads. "+USAGE);
+					return;
+				}
+
+				try {
+					threads = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				if(threads < 1) {
+					System.out.println("Invalid number of threads: "+args[i]+".");
+					return;
+				}
+			} else if("--cache".equals(args[i])) {
+				if(i + 1 >= args.length) {
+					System.out.println("Missing cache directory. "+USAGE);
+					return;
+				}
+				cacheDirectory = new File(args[++i]);
+			} else if("--binarize".equals(args[i])) {
+				if(i + 1 >= args.length) {
+					System.out.println("Missing binarization method. "+USAGE);
+					return;
+				}
+				binarizer = Binarizer.parse(args[++i]);
+				if(binarizer == null) {
+					System.out.println("Invalid binarization method: "+args[i]+".");
+					return;
+				}
+			} else if("--metrics".equals(args[i])) {
+				if(i + 1 >= args.length) {
+					System.out.println("Missing metrics file. "+USAGE);
+					return;
+				}
+				metricsFile = args[++i];
+			} else if("--server".equals(args[i]) || "--queue".equals(args[i]) || "--timeout".equals(args[i])) {
+				String option = args[i];
+				if(i + 1 >= args.length) {
+					System.out.println("Missing value of "+option+". "+USAGE);
+					return;
+				}
+
+				long value;
+				try {
+					value = Long.parseLong(args[++i]);
+				} catch (NumberFormatException e) {
+					value = -1;
+				}
+				if(value < 0 || value > Integer.MAX_VALUE || (value == 0 && "--timeout".equals(option))) {
+					System.out.println("Invalid value of "+option+": "+args[i]+".");
+					return;
+				}
+
+				if("--server".equals(option)) {
+					serverPort = (int) value;
+				} else if("--queue".equals(option)) {
+					queueSize = (int) value;
+				} else {
+					timeout = value;
+				}
+			} else {
+				paths.add(args[i]);
+			}
+		}
+
+		if(metricsFile != null) {
+			Metrics.setEnabled(true);
+			Metrics.registerMBean();
+			Metrics.addSink("-".equals(metricsFile) ? new JsonMetricsSink(System.out) : new JsonMetricsSink(new File(metricsFile)));
+		}
+
+		if(serverPort >= 0) {
+			startServer(serverPort, threads, queueSize, timeout, binarizer);
 			return;
 		}
-		
-		BufferedImage image = null;
+
+		List<File> files;
 		try {
-			image = ImageIO.read(imgFile);
+			files = FileCollector.collect(paths);
 		} catch (IOException e) {
-			System.out.println("Error reading the file: "+imgFile.getPath()+".");
+			System.out.println("Error listing the files: "+e.getMessage());
 			logger.error(e);
-			return; 
+			return;
 		}
-		
-		
-		//try to find a line
-		Pixel[][] bitmap = BitmapConverter.convertToPixArray(image);
-		Line line = Lines.findLine(bitmap);
-		
-		if(line == null) {
-			System.out.println("No line found.");
-		} else {
-			System.out.println("Line found from: ["+line.getStart().x+","+line.getStart().y+"] to: ["+line.getStart().x+","+line.getStart().y+"]");
+
+		if(files.isEmpty()) {
+			System.out.println("No files found.");
+			return;
 		}
+
+		BitmapCache cache = cacheDirectory == null ? null : new BitmapCache(cacheDirectory, binarizer);
+
+		//process files
+		try {
+			int failures = new BatchProcessor(Math.min(threads, files.size()), System.out, cache, binarizer).process(files);
+			if(failures > 0) {
+				logger.warn("{} of {} files couldn't be processed.", failures, files.size());
+			}
+		} catch (InterruptedException e) {
+			logger.warn("Processing interrupted.");
+			Thread.currentThread().interrupt();
+		}
+		Metrics.report();
 	}
 
+
+	/**
+	 * Starts the server which is stopped when the JVM exits.
+	 */
+	private static void startServer(int port, int threads, int queueSize, long timeout, Binarizer binarizer) {
+		final RecognitionServer server;
+		try {
+			server = new RecognitionServer(port, threads, queueSize, timeout, binarizer);
+		} catch (IOException e) {
+			System.out.println("Error starting the server: "+e.getMessage());
+			logger.error(e);
+			return;
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.stop();
+				Metrics.report();
+			}
+		});
+		server.start();
+		System.out.println("Listening on http://localhost:"+server.getPort()+"/lines");
+	}
 }
@@ -0,0 +1,484 @@
+package org.zdenda.shapes.main;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.Binarizer;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.BufferPool;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.lines.LineDetector;
+import org.zdenda.shapes.recognizer.core.metrics.Metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * Local HTTP server which keeps the recognizer running, so requests don't pay the start of JVM and cold JIT.
+ * The server listens only on the loopback address and has two endpoints:
+ * <ul>
+ * 	<li>{@code POST /lines[?binarize=method]} - body is an image file, response is JSON
+ * 		{@code {"width":W,"height":H,"timeMillis":T,"lines":[[x1,y1,x2,y2],...]}}. The optional binarization method
+ * 		has the format of {@code Binarizer.parse()}.</li>
+ * 	<li>{@code GET /health} - response is {@code {"status":"ok","workers":N,"pending":P}}.</li>
+ * 	<li>{@code GET /metrics} - response is {@code Metrics.toJson()}, values are recorded only if metrics are enabled.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Images are decoded and searched by the pool of worker threads. At most {@code workers + queueSize} requests
+ * are accepted at once, the following requests are rejected with status 503 before their body is read.
+ * Request which isn't finished in {@code timeoutMillis} gets status 504. Job of such request is dropped if it hasn't
+ * started yet. Decoding and search of a running job can't be interrupted, the job only checks for interruption
+ * between them, so its worker and permit are busy until then. Errors are returned as {@code {"error":"message"}},
+ * invalid and corrupt images get status 400, images larger than {@code MAX_IMAGE_BYTES} or {@code MAX_IMAGE_PIXELS}
+ * get status 413. Dimensions of the image are checked before it's decoded.
+ * </p>
+ *
+ * <p>
+ * Handler threads are limited to {@code workers + queueSize + EXTRA_HANDLERS}, exchanges above the limit wait
+ * for a free handler.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class RecognitionServer {
+
+	private static final Logger logger = LogManager.getLogger(RecognitionServer.class);
+
+	/**
+	 * Maximal size of the image file.
+	 */
+	public static final int MAX_IMAGE_BYTES = 64 << 20;
+
+	/**
+	 * Maximal number of pixels of the image (e.g. 8192 x 8192), small files can have huge dimensions.
+	 */
+	public static final long MAX_IMAGE_PIXELS = 1L << 26;
+
+	/**
+	 * Number of handler threads besides the ones waiting for accepted requests. They reject requests
+	 * and answer health checks when all requests are pending.
+	 */
+	public static final int EXTRA_HANDLERS = 2;
+
+	private final HttpServer server;
+
+	/**
+	 * Threads which decode and search images.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * Threads which read requests and write responses.
+	 */
+	private final ExecutorService handlers;
+
+	private final int workerCount;
+
+	/**
+	 * One permit for every accepted request, released when its job is finished or dropped.
+	 */
+	private final Semaphore capacity;
+
+	private final int maxPending;
+
+	private final long timeoutMillis;
+
+	/**
+	 * Default binarizer, may be null.
+	 */
+	private final Binarizer binarizer;
+
+	/**
+	 * Bitmaps, grey levels and visited maps of images being recognized.
+	 */
+	private final BufferPool pool;
+
+	/**
+	 * Creates the server, use {@code start()} to start it.
+	 * @param port Port on the loopback address or 0 to choose any free port.
+	 * @param workers Number of worker threads. Must be positive.
+	 * @param queueSize Number of requests which can wait for a worker. Must not be negative.
+	 * @param timeoutMillis Timeout of one request. Must be positive.
+	 * @param binarizer Default binarizer. If null, only black pixels are line points.
+	 * @throws IOException If the port can't be used.
+	 */
+	public RecognitionServer(int port, int workers, int queueSize, long timeoutMillis, Binarizer binarizer) throws IOException {
+		super();
+		if(workers < 1) {
+			throw new IllegalArgumentException("Number of workers must be positive!");
+		}
+		if(queueSize < 0) {
+			throw new IllegalArgumentException("Queue size can't be negative!");
+		}
+		if(timeoutMillis < 1) {
+			throw new IllegalArgumentException("Timeout must be positive!");
+		}
+
+		this.workerCount = workers;
+		this.maxPending = workers + queueSize;
+		this.capacity = new Semaphore(maxPending);
+		this.timeoutMillis = timeoutMillis;
+		this.binarizer = binarizer;
+		this.workers = Executors.newFixedThreadPool(workers);
+		this.pool = new BufferPool();
+		this.handlers = Executors.newFixedThreadPool(maxPending + EXTRA_HANDLERS);
+
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(handlers);
+		server.createContext("/lines", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleLines(exchange);
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleHealth(exchange);
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if(!"GET".equals(exchange.getRequestMethod())) {
+					sendError(exchange, 405, "Method not allowed.");
+					return;
+				}
+				send(exchange, 200, Metrics.toJson());
+			}
+		});
+	}
+
+	public void start() {
+		server.start();
+		logger.info("Recognition server listening on port {} with {} workers.", getPort(), workerCount);
+	}
+
+	/**
+	 * Stops the server. Requests in progress get at most one second to finish.
+	 */
+	public void stop() {
+		server.stop(1);
+		workers.shutdownNow();
+		handlers.shutdownNow();
+		logger.info("Recognition server stopped.");
+	}
+
+	/**
+	 * Returns port on which the server listens.
+	 * @return
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handleHealth(HttpExchange exchange) throws IOException {
+		if(!"GET".equals(exchange.getRequestMethod())) {
+			sendError(exchange, 405, "Method not allowed.");
+			return;
+		}
+
+		send(exchange, 200, "{\"status\":\"ok\",\"workers\":"+workerCount+",\"pending\":"+(maxPending - capacity.availablePermits())+"}");
+	}
+
+	private void handleLines(HttpExchange exchange) throws IOException {
+		if(!"POST".equals(exchange.getRequestMethod())) {
+			sendError(exchange, 405, "Method not allowed.");
+			return;
+		}
+
+		Binarizer requestBinarizer = binarizer;
+		String method = getParameter(exchange, "binarize");
+		if(method != null) {
+			requestBinarizer = Binarizer.parse(method);
+			if(requestBinarizer == null) {
+				sendError(exchange, 400, "Invalid binarization method: "+method+".");
+				return;
+			}
+		}
+
+		//reject before reading the body if there are too many requests
+		if(!capacity.tryAcquire()) {
+			logger.warn("Request rejected, {} requests pending.", maxPending);
+			sendError(exchange, 503, "Server is busy.");
+			return;
+		}
+
+		Job job;
+		Future<String> result;
+		try {
+			byte[] body = readBody(exchange.getRequestBody());
+			if(body == null) {
+				capacity.release();
+				sendError(exchange, 413, "Image is larger than "+MAX_IMAGE_BYTES+" bytes.");
+				return;
+			}
+			job = new Job(body, requestBinarizer);
+			result = workers.submit(job);
+		} catch (IOException | RuntimeException e) {
+			capacity.release();
+			throw e;
+		}
+
+		try {
+			send(exchange, 200, result.get(timeoutMillis, TimeUnit.MILLISECONDS));
+		} catch (TimeoutException e) {
+			//job which hasn't started is dropped, running job releases its permit when it finishes
+			if(job.claim()) {
+				capacity.release();
+			}
+			result.cancel(true);
+			logger.warn("Request timed out after {} ms.", timeoutMillis);
+			sendError(exchange, 504, "Recognition timed out.");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof ImageTooLargeException) {
+				sendError(exchange, 413, e.getCause().getMessage());
+			} else if(e.getCause() instanceof IllegalArgumentException) {
+				sendError(exchange, 400, e.getCause().getMessage());
+			} else {
+				logger.error("Error recognizing the image.", e.getCause());
+				sendError(exchange, 500, String.valueOf(e.getCause()));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sendError(exchange, 503, "Server is stopping.");
+		}
+	}
+
+	/**
+	 * Reads the whole body.
+	 * @return Body or null if it's larger than {@code MAX_IMAGE_BYTES}.
+	 */
+	private static byte[] readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[65536];
+		int read;
+		while((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+			if(out.size() > MAX_IMAGE_BYTES) {
+				return null;
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns value of the query parameter or null.
+	 */
+	private static String getParameter(HttpExchange exchange, String name) {
+		String query = exchange.getRequestURI().getQuery();
+		if(query == null) {
+			return null;
+		}
+
+		for(String parameter : query.split("&")) {
+			int eq = parameter.indexOf('=');
+			if(eq > 0 && parameter.substring(0, eq).equals(name)) {
+				return parameter.substring(eq + 1);
+			}
+		}
+		return null;
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		send(exchange, status, "{\"error\":\""+escape(message)+"\"}");
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Escapes the text for JSON string.
+	 */
+	static String escape(String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if(c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the result as JSON object.
+	 * @param bitmap Searched bitmap.
+	 * @param lines Found lines.
+	 * @param timeMillis Time of the recognition.
+	 * @return
+	 */
+	public static String formatJson(BinaryBitmap bitmap, List<Line> lines, long timeMillis) {
+		StringBuilder sb = new StringBuilder(64 + 24 * lines.size());
+		sb.append("{\"width\":").append(bitmap.getWidth()).append(",\"height\":").append(bitmap.getHeight())
+			.append(",\"timeMillis\":").append(timeMillis).append(",\"lines\":[");
+		for(int i = 0; i < lines.size(); i++) {
+			Line line = lines.get(i);
+			if(i > 0) {
+				sb.append(',');
+			}
+			sb.append('[').append(line.getStart().x).append(',').append(line.getStart().y).append(',')
+				.append(line.getEnd().x).append(',').append(line.getEnd().y).append(']');
+		}
+		return sb.append("]}").toString();
+	}
+
+	/**
+	 * Recognition of one image. The job is run only once, either by a worker or it's dropped after timeout.
+	 */
+	private class Job implements Callable<String> {
+
+		private final byte[] image;
+
+		private final Binarizer binarizer;
+
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		Job(byte[] image, Binarizer binarizer) {
+			this.image = image;
+			this.binarizer = binarizer;
+		}
+
+		/**
+		 * Claims the job for running or for dropping.
+		 * @return False if the job was already claimed.
+		 */
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		public String call() throws IOException, InterruptedException {
+			if(!claim()) {
+				return null;
+			}
+
+			boolean metrics = Metrics.isEnabled();
+			long allocated = metrics ? Metrics.allocatedBytes() : 0;
+			BinaryBitmap bitmap = null;
+			LineDetector detector = new LineDetector(pool);
+			try {
+				long start = System.nanoTime();
+				BufferedImage decoded;
+				try {
+					decoded = decode();
+				} catch (IIOException e) {
+					throw new IllegalArgumentException("Corrupt image: "+e.getMessage(), e);
+				}
+				checkInterrupted();
+
+				long decodeEnd = System.nanoTime();
+				bitmap = BitmapConverter.convertToBinaryBitmapPooled(decoded, binarizer, pool);
+				if(metrics) {
+					Metrics.DECODE_TIME.record(decodeEnd - start);
+					Metrics.CONVERT_TIME.record(System.nanoTime() - decodeEnd);
+					Metrics.recordAllocation(Metrics.DECODE_ALLOCATION, allocated);
+					allocated = Metrics.allocatedBytes();
+				}
+				checkInterrupted();
+				List<Line> lines = detector.findLines(bitmap);
+				if(lines == null) {
+					throw new IllegalArgumentException("Image is empty.");
+				}
+				if(metrics) {
+					Metrics.recordAllocation(Metrics.RECOGNITION_ALLOCATION, allocated);
+					Metrics.IMAGES.increment();
+				}
+				long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				logger.debug("Image {} x {} recognized in {} ms.", bitmap.getWidth(), bitmap.getHeight(), time);
+				return formatJson(bitmap, lines, time);
+			} finally {
+				detector.releaseBuffers();
+				pool.releaseBitmap(bitmap);
+				capacity.release();
+			}
+		}
+
+		/**
+		 * Reads dimensions of the image and decodes it if it isn't larger than {@code MAX_IMAGE_PIXELS}.
+		 */
+		private BufferedImage decode() throws IOException {
+			ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(image));
+			try {
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+				if(!readers.hasNext()) {
+					throw new IllegalArgumentException("Unsupported image format.");
+				}
+
+				ImageReader reader = readers.next();
+				try {
+					reader.setInput(input, true, true);
+					long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+					if(pixels > MAX_IMAGE_PIXELS) {
+						throw new ImageTooLargeException("Image has more than "+MAX_IMAGE_PIXELS+" pixels.");
+					}
+					return reader.read(0);
+				} finally {
+					reader.dispose();
+				}
+			} finally {
+				input.close();
+			}
+		}
+
+		/**
+		 * Stops the job cancelled after timeout.
+		 */
+		private void checkInterrupted() throws InterruptedException {
+			if(Thread.interrupted()) {
+				throw new InterruptedException("Recognition cancelled.");
+			}
+		}
+	}
+
+	/**
+	 * Image with too many pixels, answered with status 413.
+	 */
+	private static class ImageTooLargeException extends IllegalArgumentException {
+
+		private static final long serialVersionUID = 1L;
+
+		ImageTooLargeException(String message) {
+			super(message);
+		}
+	}
+}
@@ -67,8 +67,7 @@ public class AreaAroundPoint implements Iterator<Point> {
 		//user had specified direction
 		//return points with according to direction in this order direction, direction-1, direction+1
 		
-		Point p = currentDirection.getPoint();
-		Point res = new Point(center.x+p.x, center.y+p.y);
+		Point res = new Point(center.x+currentDirection.getDx(), center.y+currentDirection.getDy());
 		//direction
 		if(currentDirection == direction) {
 			currentDirection = direction.previousDirection();
@@ -106,9 +105,9 @@ public class AreaAroundPoint implements Iterator<Point> {
 		case SW:
 		case W:
 		case NW:
-			Point p = currentDirection.getPoint();
+			Point res = new Point(center.x+currentDirection.getDx(),center.y+currentDirection.getDy());
 			currentDirection = currentDirection.nextDirection();
-			return new Point(center.x+p.x,center.y+p.y);
+			return res;
 		case N:
 			currentDirection = Direction.NONE;
 			return new Point(center.x,center.y-1);
@@ -0,0 +1,308 @@
+package org.zdenda.shapes.recognizer.core;
+
+/**
+ * <p>
+ * Converts grey levels (0 - black, 255 - white) to black & white {@code BinaryBitmap}. Three methods are available:
+ * <ul>
+ * 	<li>{@code global()} - pixels with grey level at most the threshold are black.</li>
+ * 	<li>{@code otsu()} - global threshold computed from the histogram of the image by the Otsu's method.</li>
+ * 	<li>{@code adaptive()} - pixel is black if it's darker than the mean of the window around it by the given percentage.
+ * 		Means are computed from sums of columns, updated row by row, so the cost doesn't depend on the window size.</li>
+ * </ul>
+ * Grey levels are stored in a {@code byte[]} array, one byte per pixel, row by row without padding.
+ * </p>
+ *
+ * <p>
+ * Binarizers are immutable and can be used by multiple threads at once.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public abstract class Binarizer {
+
+	/**
+	 * Number of grey levels.
+	 */
+	public static final int LEVELS = 256;
+
+	/**
+	 * Default size of the window of {@code adaptive()} binarizer.
+	 */
+	public static final int DEFAULT_WINDOW = 31;
+
+	/**
+	 * Default percentage of {@code adaptive()} binarizer.
+	 */
+	public static final int DEFAULT_PERCENT = 15;
+
+	/**
+	 * Returns binarizer with fixed threshold.
+	 * @param threshold Pixels with grey level at most the threshold are black. Must be from 0 to 255.
+	 * @return
+	 */
+	public static Binarizer global(int threshold) {
+		if(threshold < 0 || threshold >= LEVELS) {
+			throw new IllegalArgumentException("Invalid threshold: "+threshold+"!");
+		}
+		return new Global(threshold);
+	}
+
+	/**
+	 * Returns binarizer which computes the threshold of every image by the Otsu's method.
+	 * @return
+	 */
+	public static Binarizer otsu() {
+		return new Otsu();
+	}
+
+	/**
+	 * Returns binarizer with threshold computed for every pixel from the window around it.
+	 * @param window Size of the square window, must be odd and from 3 to 2047.
+	 * @param percent Pixel is black if it's by more than {@code percent} % darker than the mean of the window. Must be from 0 to 100.
+	 * @return
+	 */
+	public static Binarizer adaptive(int window, int percent) {
+		if(window < 3 || window > 2047 || window % 2 == 0) {
+			throw new IllegalArgumentException("Invalid window size: "+window+"!");
+		}
+		if(percent < 0 || percent > 100) {
+			throw new IllegalArgumentException("Invalid percentage: "+percent+"!");
+		}
+		return new Adaptive(window, percent);
+	}
+
+	/**
+	 * Parses binarizer from the text: {@code global:N}, {@code otsu} or {@code adaptive[:window[:percent]]}.
+	 * @param text Text.
+	 * @return Binarizer or null if the text is invalid.
+	 */
+	public static Binarizer parse(String text) {
+		String[] parts = text.split(":");
+		try {
+			if("global".equals(parts[0]) && parts.length == 2) {
+				return global(Integer.parseInt(parts[1]));
+			}
+			if("otsu".equals(parts[0]) && parts.length == 1) {
+				return otsu();
+			}
+			if("adaptive".equals(parts[0]) && parts.length <= 3) {
+				int window = parts.length > 1 ? Integer.parseInt(parts[1]) : DEFAULT_WINDOW;
+				int percent = parts.length > 2 ? Integer.parseInt(parts[2]) : DEFAULT_PERCENT;
+				return adaptive(window, percent);
+			}
+		} catch (IllegalArgumentException e) {
+			//NumberFormatException included
+			return null;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Converts grey levels to the binary bitmap.
+	 * @param grey Grey levels, {@code width*height} long.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @return
+	 */
+	public BinaryBitmap binarize(byte[] grey, int width, int height) {
+		return binarize(grey, width, height, null);
+	}
+
+	/**
+	 * Converts grey levels to the binary bitmap, reusing the destination bitmap if it has the same dimensions.
+	 * @param grey Grey levels, {@code width*height} long.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @param destination Bitmap to reuse, may be null.
+	 * @return Destination or new bitmap.
+	 */
+	public BinaryBitmap binarize(byte[] grey, int width, int height, BinaryBitmap destination) {
+		if((long)width * height > grey.length) {
+			throw new IllegalArgumentException("Grey levels don't match the size "+width+"x"+height+"!");
+		}
+
+		BinaryBitmap bitmap;
+		if(destination != null && destination.fits(width, height)) {
+			bitmap = destination;
+			bitmap.clear();
+		} else {
+			bitmap = new BinaryBitmap(width, height);
+		}
+		binarize(grey, width, height, bitmap.getWords(), bitmap.getStride());
+		return bitmap;
+	}
+
+	/**
+	 * Sets bits of black pixels to the cleared words of the bitmap.
+	 */
+	protected abstract void binarize(byte[] grey, int width, int height, long[] words, int stride);
+
+	/**
+	 * Sets bits of pixels of the row with grey level at most {@code threshold}.
+	 */
+	static void thresholdRow(byte[] grey, int offset, int width, int threshold, long[] words, int wordOffset) {
+		for(int x = 0; x < width; x += 64) {
+			int end = Math.min(64, width - x);
+			long word = 0;
+			for(int b = 0; b < end; b++) {
+				//branch-free: sign bit of (threshold - grey) is 0 for black pixels
+				long black = ((threshold - (grey[offset + x + b] & 0xFF)) >>> 31) ^ 1;
+				word |= black << b;
+			}
+			words[wordOffset + (x >>> 6)] = word;
+		}
+	}
+
+	/**
+	 * Returns the histogram of grey levels.
+	 */
+	static int[] histogram(byte[] grey, int length) {
+		int[] histogram = new int[LEVELS];
+		for(int i = 0; i < length; i++) {
+			histogram[grey[i] & 0xFF]++;
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the threshold which maximizes the variance between black (grey level at most the threshold)
+	 * and white pixels.
+	 * @param histogram Histogram of grey levels.
+	 * @return
+	 */
+	static int otsuThreshold(int[] histogram) {
+		long total = 0;
+		double sum = 0;
+		for(int i = 0; i < LEVELS; i++) {
+			total += histogram[i];
+			sum += (double)i * histogram[i];
+		}
+
+		long black = 0;
+		double blackSum = 0;
+		double bestVariance = -1;
+		int best = 0;
+		for(int t = 0; t < LEVELS; t++) {
+			black += histogram[t];
+			blackSum += (double)t * histogram[t];
+			long white = total - black;
+			if(black == 0 || white == 0) {
+				continue;
+			}
+
+			double blackMean = blackSum / black;
+			double whiteMean = (sum - blackSum) / white;
+			double variance = (double)black * white * (blackMean - whiteMean) * (blackMean - whiteMean);
+			if(variance > bestVariance) {
+				bestVariance = variance;
+				best = t;
+			}
+		}
+
+		return best;
+	}
+
+	private static class Global extends Binarizer {
+
+		private final int threshold;
+
+		Global(int threshold) {
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void binarize(byte[] grey, int width, int height, long[] words, int stride) {
+			for(int y = 0; y < height; y++) {
+				thresholdRow(grey, y * width, width, threshold, words, y * stride);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "global:"+threshold;
+		}
+	}
+
+	private static class Otsu extends Binarizer {
+
+		@Override
+		protected void binarize(byte[] grey, int width, int height, long[] words, int stride) {
+			int threshold = otsuThreshold(histogram(grey, width * height));
+			for(int y = 0; y < height; y++) {
+				thresholdRow(grey, y * width, width, threshold, words, y * stride);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "otsu";
+		}
+	}
+
+	private static class Adaptive extends Binarizer {
+
+		private final int window;
+
+		private final int percent;
+
+		Adaptive(int window, int percent) {
+			this.window = window;
+			this.percent = percent;
+		}
+
+		@Override
+		protected void binarize(byte[] grey, int width, int height, long[] words, int stride) {
+			int radius = window / 2;
+			//sums of columns over rows [y-radius, y+radius] and their prefix sums (one row of the integral image)
+			int[] columns = new int[width];
+			long[] prefix = new long[width + 1];
+			for(int y = 0; y < Math.min(radius, height); y++) {
+				addRow(grey, y * width, width, columns, 1);
+			}
+
+			for(int y = 0; y < height; y++) {
+				if(y + radius < height) {
+					addRow(grey, (y + radius) * width, width, columns, 1);
+				}
+				if(y - radius - 1 >= 0) {
+					addRow(grey, (y - radius - 1) * width, width, columns, -1);
+				}
+				for(int x = 0; x < width; x++) {
+					prefix[x + 1] = prefix[x] + columns[x];
+				}
+
+				int rows = Math.min(height - 1, y + radius) - Math.max(0, y - radius) + 1;
+				int offset = y * width;
+				int wordOffset = y * stride;
+				for(int x = 0; x < width; x += 64) {
+					int end = Math.min(64, width - x);
+					long word = 0;
+					for(int b = 0; b < end; b++) {
+						int px = x + b;
+						int from = Math.max(0, px - radius);
+						int to = Math.min(width, px + radius + 1);
+						long sum = prefix[to] - prefix[from];
+						long count = (long)(to - from) * rows;
+						//grey*count*100 <= sum*(100-percent)
+						if((grey[offset + px] & 0xFF) * count * 100 <= sum * (100 - percent)) {
+							word |= 1L << b;
+						}
+					}
+					words[wordOffset + (x >>> 6)] = word;
+				}
+			}
+		}
+
+		private static void addRow(byte[] grey, int offset, int width, int[] columns, int sign) {
+			for(int x = 0; x < width; x++) {
+				columns[x] += sign * (grey[offset + x] & 0xFF);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "adaptive:"+window+":"+percent;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package org.zdenda.shapes.recognizer.core;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Black & white bitmap which stores one bit per pixel. Set bit means black pixel, cleared bit means white (background) pixel.
+ * </p>
+ *
+ * <p>
+ * Bits are packed into {@code long} words, row by row. Every row starts at the new word, so the row {@code y}
+ * starts at the index {@code y*stride} of the word array. Pixel {@code x} of the row is stored in the word
+ * {@code x/64} of that row as the bit {@code x%64} (the least significant bit is the leftmost pixel).
+ * Bits behind the width of the bitmap (padding of the last word in row) are always cleared.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class BinaryBitmap {
+
+	/**
+	 * Number of pixels stored in one word.
+	 */
+	public static final int WORD_SIZE = 64;
+
+	/**
+	 * Width of the bitmap in pixels.
+	 */
+	private final int width;
+
+	/**
+	 * Height of the bitmap in pixels.
+	 */
+	private final int height;
+
+	/**
+	 * Number of words per row.
+	 */
+	private final int stride;
+
+	/**
+	 * Packed pixels.
+	 */
+	private final long[] words;
+
+	/**
+	 * Creates a new white bitmap.
+	 * @param width Width of the bitmap. Must not be negative.
+	 * @param height Height of the bitmap. Must not be negative.
+	 */
+	public BinaryBitmap(int width, int height) {
+		super();
+		if(width < 0 || height < 0) {
+			throw new IllegalArgumentException("Invalid dimensions of bitmap: "+width+"x"+height+"!");
+		}
+
+		long size = (long)strideFor(width) * height;
+		if(size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Bitmap "+width+"x"+height+" is too big!");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.stride = strideFor(width);
+		this.words = new long[(int)size];
+	}
+
+	/**
+	 * Returns the number of words needed to store one row of the specified width.
+	 * @param width Width of the row in pixels.
+	 * @return Number of words.
+	 */
+	public static int strideFor(int width) {
+		return (width + WORD_SIZE - 1) / WORD_SIZE;
+	}
+
+	/**
+	 * Returns true if the point [x,y] lies within the bitmap.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return
+	 */
+	public boolean isInside(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
+	}
+
+	/**
+	 * Returns true if the pixel at [x,y] is black. Coordinates are expected to be inside the bitmap.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return
+	 */
+	public boolean isBlack(int x, int y) {
+		return (words[y*stride + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Sets the color of the pixel at [x,y]. Coordinates are expected to be inside the bitmap.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param black True for black pixel, false for white pixel.
+	 */
+	public void setBlack(int x, int y, boolean black) {
+		int index = y*stride + (x >>> 6);
+		if(black) {
+			words[index] |= 1L << x;
+		} else {
+			words[index] &= ~(1L << x);
+		}
+	}
+
+	/**
+	 * Returns the word of the row {@code y} which contains pixels from {@code wordIndex*64} to {@code wordIndex*64+63}.
+	 * @param y Row.
+	 * @param wordIndex Index of the word within the row.
+	 * @return
+	 */
+	public long getWord(int y, int wordIndex) {
+		return words[y*stride + wordIndex];
+	}
+
+	/**
+	 * Returns the number of black pixels in the bitmap.
+	 * @return
+	 */
+	public long countBlack() {
+		long count = 0;
+		for(int i = 0; i < words.length; i++) {
+			count += Long.bitCount(words[i]);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Copies the region of the bitmap to a new bitmap, pixel [x,y] of the region is the pixel [0,0] of the result.
+	 * The region is clipped to the bitmap. Rows are copied word by word, so the cost is proportional to the area of the region.
+	 * @param region Region. If null, exception is thrown.
+	 * @return New bitmap with dimensions of the clipped region, empty if the region doesn't intersect the bitmap.
+	 */
+	public BinaryBitmap crop(Rectangle region) {
+		if(region == null) {
+			throw new IllegalArgumentException("Region can't be null!");
+		}
+
+		Rectangle clipped = region.intersection(new Rectangle(width, height));
+		if(clipped.isEmpty()) {
+			return new BinaryBitmap(0, 0);
+		}
+
+		BinaryBitmap res = new BinaryBitmap(clipped.width, clipped.height);
+		int shift = clipped.x & (WORD_SIZE - 1);
+		long lastMask = (clipped.width & (WORD_SIZE - 1)) == 0 ? -1L : (1L << clipped.width) - 1;
+		for(int i = 0; i < clipped.height; i++) {
+			int src = (clipped.y + i) * stride + (clipped.x >>> 6);
+			int srcEnd = (clipped.y + i + 1) * stride;
+			int dst = i * res.stride;
+			for(int k = 0; k < res.stride; k++, src++) {
+				long word = words[src] >>> shift;
+				if(shift != 0 && src + 1 < srcEnd) {
+					word |= words[src + 1] << (WORD_SIZE - shift);
+				}
+				res.words[dst + k] = word;
+			}
+			res.words[dst + res.stride - 1] &= lastMask;
+		}
+
+		return res;
+	}
+
+	/**
+	 * Makes every pixel white.
+	 */
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * Returns true if the bitmap has the specified dimensions.
+	 * @param width Width.
+	 * @param height Height.
+	 * @return
+	 */
+	public boolean fits(int width, int height) {
+		return this.width == width && this.height == height;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Returns the backing array of words. Changes in the array are reflected in the bitmap.
+	 * @return
+	 */
+	public long[] getWords() {
+		return words;
+	}
+
+	@Override
+	public String toString() {
+		return "BinaryBitmap [width=" + width + ", height=" + height + "]";
+	}
+}
@@ -0,0 +1,268 @@
+package org.zdenda.shapes.recognizer.core;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.imageio.ImageIO;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.metrics.Metrics;
+
+/**
+ * <p>
+ * On-disk cache of converted binary bitmaps. Every image file has its own cache file named by the hash
+ * of its absolute path (and the binarizer). The cache file contains a header (width, height, length and modification time of the image)
+ * followed by the words of the bitmap in the {@code BinaryBitmap} format. If the image has changed, the cache file
+ * is not used.
+ * </p>
+ *
+ * <p>
+ * Cache files are read through memory-mapped channels and the words are copied at once, so a cached image is loaded
+ * without decoding, in the time of one memory copy.
+ * </p>
+ *
+ * <p>
+ * One cache can be used by multiple threads (and processes) at once, cache files are replaced atomically.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class BitmapCache {
+
+	private static final Logger logger = LogManager.getLogger(BitmapCache.class);
+
+	/**
+	 * "SRBB" - first 4 bytes of every cache file.
+	 */
+	private static final int MAGIC = 0x53524242;
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Header: magic, version, width, height (ints), length and modification time of the image (longs).
+	 */
+	private static final int HEADER_SIZE = 32;
+
+	private static final String SUFFIX = ".bbm";
+
+	/**
+	 * Directory with cache files.
+	 */
+	private final File directory;
+
+	/**
+	 * Binarizer used to convert images, may be null.
+	 */
+	private final Binarizer binarizer;
+
+	/**
+	 * @param directory Directory with cache files, created if it doesn't exist. If null, exception is thrown.
+	 */
+	public BitmapCache(File directory) {
+		this(directory, null);
+	}
+
+	/**
+	 * @param directory Directory with cache files, created if it doesn't exist. If null, exception is thrown.
+	 * @param binarizer Binarizer used to convert images, see {@code BitmapConverter.convertToBinaryBitmap()}.
+	 * 		Bitmaps of different binarizers are cached separately.
+	 */
+	public BitmapCache(File directory, Binarizer binarizer) {
+		super();
+		if(directory == null) {
+			throw new IllegalArgumentException("Cache directory can't be null!");
+		}
+
+		this.directory = directory;
+		this.binarizer = binarizer;
+	}
+
+	/**
+	 * Returns bitmap of the image. Cached bitmap is returned if it's valid, otherwise the image is decoded,
+	 * converted and stored to the cache. If the image format isn't supported, null is returned.
+	 *
+	 * @param image Image file.
+	 * @return Bitmap or null.
+	 * @throws IOException If the image can't be read.
+	 */
+	public BinaryBitmap get(File image) throws IOException {
+		boolean metrics = Metrics.isEnabled();
+		long start = metrics ? System.nanoTime() : 0;
+		BinaryBitmap bitmap = load(image);
+		if(bitmap != null) {
+			if(metrics) {
+				Metrics.CACHE_LOAD_TIME.record(System.nanoTime() - start);
+			}
+			return bitmap;
+		}
+
+		//stamp of the decoded version, the image may change while it's decoded
+		long length = image.length();
+		long modified = image.lastModified();
+		start = metrics ? System.nanoTime() : 0;
+		BufferedImage decoded = ImageIO.read(image);
+		if(decoded == null) {
+			return null;
+		}
+
+		long decodeEnd = metrics ? System.nanoTime() : 0;
+		bitmap = BitmapConverter.convertToBinaryBitmap(decoded, binarizer);
+		if(metrics) {
+			Metrics.DECODE_TIME.record(decodeEnd - start);
+			Metrics.CONVERT_TIME.record(System.nanoTime() - decodeEnd);
+		}
+		try {
+			store(image, bitmap, length, modified);
+		} catch (IOException e) {
+			//the bitmap is still usable
+			logger.warn("Bitmap of "+image.getPath()+" couldn't be cached.", e);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Loads the cached bitmap of the image. If there is no valid cache file for the image, null is returned.
+	 *
+	 * @param image Image file.
+	 * @return Bitmap or null.
+	 * @throws IOException If the cache file can't be read.
+	 */
+	public BinaryBitmap load(File image) throws IOException {
+		File cacheFile = cacheFile(image);
+		if(!cacheFile.isFile() || cacheFile.length() < HEADER_SIZE) {
+			return null;
+		}
+
+		RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				logger.warn("Invalid cache file: {}.", cacheFile.getPath());
+				return null;
+			}
+			int width = buffer.getInt();
+			int height = buffer.getInt();
+			long length = buffer.getLong();
+			long modified = buffer.getLong();
+			if(length != image.length() || modified != image.lastModified()) {
+				logger.debug("Cache file of {} is out of date.", image.getPath());
+				return null;
+			}
+
+			//the header is checked before the bitmap is allocated
+			if(width < 0 || height < 0 || (long) BinaryBitmap.strideFor(width) * height * 8 != buffer.remaining()) {
+				logger.warn("Invalid size of cache file: {}.", cacheFile.getPath());
+				return null;
+			}
+
+			BinaryBitmap bitmap = new BinaryBitmap(width, height);
+			buffer.asLongBuffer().get(bitmap.getWords());
+			logger.debug("Bitmap {}x{} of {} loaded from cache.", width, height, image.getPath());
+			return bitmap;
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Stores the bitmap of the current version of the image to the cache. Existing cache file is replaced.
+	 *
+	 * @param image Image file.
+	 * @param bitmap Bitmap of the image.
+	 * @throws IOException If the cache file can't be written.
+	 */
+	public void store(File image, BinaryBitmap bitmap) throws IOException {
+		store(image, bitmap, image.length(), image.lastModified());
+	}
+
+	/**
+	 * Stores the bitmap of the image to the cache. Existing cache file is replaced.
+	 *
+	 * @param image Image file.
+	 * @param bitmap Bitmap of the image.
+	 * @param length Length of the image file when it was decoded.
+	 * @param modified Modification time of the image file when it was decoded.
+	 * @throws IOException If the cache file can't be written.
+	 */
+	public void store(File image, BinaryBitmap bitmap, long length, long modified) throws IOException {
+		long[] words = bitmap.getWords();
+		long size = HEADER_SIZE + 8L * words.length;
+		if(size > Integer.MAX_VALUE) {
+			throw new IOException("Bitmap "+bitmap.getWidth()+"x"+bitmap.getHeight()+" is too big to be cached.");
+		}
+
+		if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Cache directory "+directory.getPath()+" can't be created.");
+		}
+
+		//write to temporary file and replace the cache file at once, so readers never see partial file
+		File cacheFile = cacheFile(image);
+		File tmp = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+		try {
+			RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+			try {
+				MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putInt(bitmap.getWidth());
+				buffer.putInt(bitmap.getHeight());
+				buffer.putLong(length);
+				buffer.putLong(modified);
+				buffer.asLongBuffer().put(words);
+				buffer.force();
+			} finally {
+				file.close();
+			}
+
+			try {
+				Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			logger.debug("Bitmap of {} stored to {}.", image.getPath(), cacheFile.getPath());
+		} finally {
+			if(tmp.exists() && !tmp.delete()) {
+				tmp.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Returns the cache file of the image.
+	 */
+	File cacheFile(File image) {
+		String path = binarizer == null ? image.getAbsolutePath() : image.getAbsolutePath()+"\n"+binarizer;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(path.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for(byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return new File(directory, sb.append(SUFFIX).toString());
+		} catch (NoSuchAlgorithmException e) {
+			//every JVM must support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+}
@@ -1,12 +1,15 @@
 package org.zdenda.shapes.recognizer.core;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Class containing static methods to convert bitmap to 2D array of {@code Pixel} objects.
+ * Class containing static methods to convert bitmap to 2D array of {@code Pixel} objects,
+ * to the {@code BinaryBitmap} or to the {@code RunLengthBitmap}.
  * @author Zdenda
  *
  */
@@ -18,10 +21,25 @@ public class BitmapConverter {
 	 * Converts a buffered image object to 2D array of {@code Pixel} objects.
 	 * The array is created as Pixel[height][width].
 	 * 
+	 * Pixels are read directly from the raster of the image for common image types.
+	 * 
 	 * @param image
 	 * @return
 	 */
 	public static Pixel[][] convertToPixArray(BufferedImage image) {
+		return convertToPixArray(image, null);
+	}
+	
+	/**
+	 * Converts image to 2D array of {@code Pixel} objects like {@code convertToPixArray(BufferedImage)}, but reuses
+	 * the destination array and its pixels if the array has dimensions of the image. Batches of images with the same
+	 * dimensions then don't allocate any pixels.
+	 * 
+	 * @param image
+	 * @param destination Array Pixel[height][width] to reuse, may be null.
+	 * @return Destination or new array.
+	 */
+	public static Pixel[][] convertToPixArray(BufferedImage image, Pixel[][] destination) {
 		
 		//check that image is ok
 		if(image == null) {
@@ -31,12 +49,257 @@ public class BitmapConverter {
 		
 		int w = image.getWidth();
 		int h = image.getHeight();
-		Pixel[][] res = new Pixel[h][w];
+		boolean reuse = destination != null && destination.length == h && (h == 0 || destination[0].length == w);
+		Pixel[][] res = reuse ? destination : new Pixel[h][w];
 		logger.debug("Converting image {}x{} to Pixel array.",w,h);
 		
+		RasterRowReader reader = RasterRowReader.create(image);
+		int[] row = new int[w];
+		for(int i = 0; i < h; i++) {
+			reader.readRow(i, row);
+			Pixel[] pixels = res[i];
+			for(int j = 0; j < w; j++) {
+				if(pixels[j] == null) {
+					pixels[j] = new Pixel(row[j]);
+				} else {
+					pixels[j].setColor(row[j]);
+				}
+			}
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Converts a buffered image object to the {@code BinaryBitmap}. Only black pixels (as defined by {@code Pixel.isBlack()})
+	 * are set in the result, every other color is considered as background.
+	 * 
+	 * @param image
+	 * @return
+	 */
+	public static BinaryBitmap convertToBinaryBitmap(BufferedImage image) {
+		return convertToBinaryBitmap(image, null, (BinaryBitmap) null);
+	}
+	
+	/**
+	 * Converts image to binary bitmap like {@code convertToBinaryBitmap(BufferedImage, Binarizer)}, but reuses
+	 * the destination bitmap if it has dimensions of the image.
+	 * 
+	 * @param image
+	 * @param binarizer Binarizer. If null, only black (0x000000) pixels are black.
+	 * @param destination Bitmap to reuse, may be null.
+	 * @return Destination or new bitmap.
+	 */
+	public static BinaryBitmap convertToBinaryBitmap(BufferedImage image, Binarizer binarizer, BinaryBitmap destination) {
+		
+		//check that image is ok
+		if(image == null) {
+			logger.warn("Image is null");
+			return new BinaryBitmap(0, 0);
+		}
+		
+		int w = image.getWidth();
+		int h = image.getHeight();
+		if(binarizer != null) {
+			logger.debug("Binarizing image {}x{} by {}.",w,h,binarizer);
+			return binarizer.binarize(convertToGrey(image), w, h, destination);
+		}
+		
+		BinaryBitmap res;
+		if(destination != null && destination.fits(w, h)) {
+			res = destination;
+			res.clear();
+		} else {
+			res = new BinaryBitmap(w, h);
+		}
+		long[] words = res.getWords();
+		int stride = res.getStride();
+		logger.debug("Converting image {}x{} to binary bitmap.",w,h);
+		
+		RasterRowReader reader = RasterRowReader.create(image);
+		int[] row = new int[w];
+		for(int i = 0; i < h; i++) {
+			reader.readBlackRow(i, words, i*stride, row);
+		}
+		
+		return res;
+	}
+	
+	/**
+	 * Converts image to binary bitmap using the binarizer, so grey and anti-aliased pixels can be black too.
+	 * If the image is null, empty bitmap is returned.
+	 * 
+	 * @param image
+	 * @param binarizer Binarizer. If null, only black (0x000000) pixels are black.
+	 * @return
+	 */
+	public static BinaryBitmap convertToBinaryBitmap(BufferedImage image, Binarizer binarizer) {
+		return convertToBinaryBitmap(image, binarizer, null);
+	}
+	
+	/**
+	 * Converts image to binary bitmap like {@code convertToBinaryBitmap(BufferedImage, Binarizer)}, the bitmap
+	 * and the grey levels used by the binarizer are taken from the pool. The caller owns the returned bitmap
+	 * and should release it to the pool when it's no longer used.
+	 * 
+	 * @param image
+	 * @param binarizer Binarizer. If null, only black (0x000000) pixels are black.
+	 * @param pool Pool of buffers. If null, new buffers are allocated.
+	 * @return
+	 */
+	public static BinaryBitmap convertToBinaryBitmapPooled(BufferedImage image, Binarizer binarizer, BufferPool pool) {
+		if(image == null || pool == null) {
+			return convertToBinaryBitmap(image, binarizer, null);
+		}
+		
+		int w = image.getWidth();
+		int h = image.getHeight();
+		BinaryBitmap destination = pool.acquireBitmap(w, h);
+		if(binarizer == null) {
+			return convertToBinaryBitmap(image, null, destination);
+		}
+		
+		logger.debug("Binarizing image {}x{} by {}.",w,h,binarizer);
+		byte[] grey = convertToGrey(image, pool.acquireGrey(w, h));
+		try {
+			return binarizer.binarize(grey, w, h, destination);
+		} finally {
+			pool.releaseGrey(grey, w, h);
+		}
+	}
+	
+	/**
+	 * Converts only the region of the image to binary bitmap. The region is read from the child raster of the image
+	 * ({@code BufferedImage.getSubimage()}), so the cost is proportional to the area of the region. Pixel [0,0]
+	 * of the result is the top left pixel of the region. Binarizers which compute thresholds from the image
+	 * see only the region.
+	 * 
+	 * @param image
+	 * @param region Region of the image, clipped to the image. If null, the whole image is converted.
+	 * @param binarizer Binarizer. If null, only black (0x000000) pixels are black.
+	 * @return Bitmap, empty if the image is null or the region doesn't intersect the image.
+	 */
+	public static BinaryBitmap convertToBinaryBitmap(BufferedImage image, Rectangle region, Binarizer binarizer) {
+		if(image == null || region == null) {
+			return convertToBinaryBitmap(image, binarizer);
+		}
+		
+		Rectangle clipped = region.intersection(new Rectangle(image.getWidth(), image.getHeight()));
+		if(clipped.isEmpty()) {
+			logger.warn("Region {} is outside of the image {}x{}.", region, image.getWidth(), image.getHeight());
+			return new BinaryBitmap(0, 0);
+		}
+		
+		return convertToBinaryBitmap(image.getSubimage(clipped.x, clipped.y, clipped.width, clipped.height), binarizer);
+	}
+	
+	/**
+	 * Converts image to grey levels (0 - black, 255 - white), one byte per pixel, row by row.
+	 * Grey level is {@code (77*R + 150*G + 29*B) / 256}. Pixels of images with alpha are composited onto white
+	 * background first, so transparent pixels are white.
+	 * If the image is null, empty array is returned.
+	 * 
+	 * @param image
+	 * @return
+	 */
+	public static byte[] convertToGrey(BufferedImage image) {
+		return convertToGrey(image, null);
+	}
+	
+	/**
+	 * Converts image to grey levels like {@code convertToGrey(BufferedImage)}, but reuses the destination array
+	 * if it has exactly {@code width*height} bytes.
+	 * 
+	 * @param image
+	 * @param destination Array to reuse, may be null.
+	 * @return Destination or new array.
+	 */
+	public static byte[] convertToGrey(BufferedImage image, byte[] destination) {
+		
+		//check that image is ok
+		if(image == null) {
+			logger.warn("Image is null");
+			return new byte[0];
+		}
+		
+		int w = image.getWidth();
+		int h = image.getHeight();
+		if((long)w * h > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Image "+w+"x"+h+" is too big!");
+		}
+		
+		byte[] grey = destination != null && destination.length == w * h ? destination : new byte[w * h];
+		RasterRowReader reader = RasterRowReader.createGrey(image);
+		int[] row = new int[w];
+		for(int i = 0; i < h; i++) {
+			reader.readGreyRow(i, grey, i * w, row);
+		}
+		
+		return grey;
+	}
+	
+	/**
+	 * Converts image to run length bitmap. Only runs of black (0x000000) pixels are stored,
+	 * the image is read row by row, so no full size bitmap is created.
+	 * If the image is null, empty bitmap is returned.
+	 * 
+	 * @param image
+	 * @return
+	 */
+	public static RunLengthBitmap convertToRunLengthBitmap(BufferedImage image) {
+		
+		//check that image is ok
+		if(image == null) {
+			logger.warn("Image is null");
+			return new RunLengthBitmap.Builder(0, 0).build();
+		}
+		
+		int w = image.getWidth();
+		int h = image.getHeight();
+		logger.debug("Converting image {}x{} to run length bitmap.",w,h);
+		
+		RunLengthBitmap.Builder builder = new RunLengthBitmap.Builder(w, h);
+		RasterRowReader reader = RasterRowReader.create(image);
+		long[] words = new long[BinaryBitmap.strideFor(w)];
+		int[] row = new int[w];
+		for(int i = 0; i < h; i++) {
+			Arrays.fill(words, 0L);
+			reader.readBlackRow(i, words, 0, row);
+			builder.addRow(words, 0);
+		}
+		
+		return builder.build();
+	}
+	
+	/**
+	 * Converts 2D array of {@code Pixel} objects (Pixel[height][width]) to the {@code BinaryBitmap}.
+	 * Null pixels are considered as background.
+	 * 
+	 * @param bitmap Pixel array, all rows are expected to have the same length.
+	 * @return
+	 */
+	public static BinaryBitmap convertToBinaryBitmap(Pixel[][] bitmap) {
+		
+		if(bitmap == null || bitmap.length == 0) {
+			logger.warn("Bitmap is null or empty");
+			return new BinaryBitmap(0, 0);
+		}
+		
+		int w = bitmap[0].length;
+		int h = bitmap.length;
+		BinaryBitmap res = new BinaryBitmap(w, h);
+		
 		for(int i = 0; i < h; i++) {
 			for(int j = 0; j < w; j++) {
-				res[i][j] = new Pixel(image.getRGB(j, i));
+				Pixel p = bitmap[i][j];
+				if(p == null) {
+					logger.warn("Pixel [{},{}] is null.",j,i);
+					continue;
+				}
+				
+				if(p.isBlack()) {
+					res.setBlack(j, i, true);
+				}
 			}
 		}
 		
@@ -0,0 +1,299 @@
+package org.zdenda.shapes.recognizer.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Pool of buffers used to convert images, so batches of images with the same dimensions don't allocate
+ * new bitmaps for every image. Buffers are pooled by their dimensions: binary bitmaps, grey levels
+ * (see {@code BitmapConverter.convertToGrey()}), pixel arrays and words with one bit per pixel (e.g. visited
+ * pixels of {@code LineDetector}).
+ * </p>
+ *
+ * <p>
+ * Buffer can be acquired by one thread and released by another one (e.g. decoding and recognition threads
+ * of {@code BatchProcessor}). Pooled buffers take at most {@code capacity} bytes. When a buffer is released
+ * to the full pool, buffers of the least recently used kinds and dimensions are left to the garbage collector,
+ * so the pool follows the sizes of the current images. Buffer must not be used after it's released.
+ * </p>
+ *
+ * <p>
+ * Pool can be used by multiple threads at once.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class BufferPool {
+
+	/**
+	 * Part of the maximal heap size used by the pool created by {@code BufferPool()}.
+	 */
+	public static final int DEFAULT_HEAP_FRACTION = 8;
+
+	/**
+	 * Estimated size of one item of the pixel array: reference and {@code Pixel} object.
+	 */
+	private static final int PIXEL_BYTES = 32;
+
+	private static final int BITMAP = 0;
+
+	private static final int GREY = 1;
+
+	private static final int PIXELS = 2;
+
+	private static final int WORDS = 3;
+
+	private final long capacity;
+
+	/**
+	 * Bytes of buffers in the pool.
+	 */
+	private long bytes;
+
+	/**
+	 * Number of buffers in the pool.
+	 */
+	private int size;
+
+	/**
+	 * Buffers by their kinds and dimensions, in the order of access (the least recently used first).
+	 */
+	private final LinkedHashMap<Key, Deque<Object>> buffers = new LinkedHashMap<Key, Deque<Object>>(16, 0.75f, true);
+
+	/**
+	 * Creates pool with capacity of {@code 1/DEFAULT_HEAP_FRACTION} of the maximal heap size.
+	 */
+	public BufferPool() {
+		this(Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION);
+	}
+
+	/**
+	 * @param capacity Maximal number of bytes of buffers kept in the pool, must be positive.
+	 */
+	public BufferPool(long capacity) {
+		super();
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive!");
+		}
+
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns bitmap with the dimensions. Content of pooled bitmap is undefined, converters clear the bitmap
+	 * they write to.
+	 * @param width Width of the bitmap.
+	 * @param height Height of the bitmap.
+	 * @return
+	 */
+	public BinaryBitmap acquireBitmap(int width, int height) {
+		BinaryBitmap bitmap = (BinaryBitmap) poll(new Key(BITMAP, width, height));
+		return bitmap == null ? new BinaryBitmap(width, height) : bitmap;
+	}
+
+	/**
+	 * Returns bitmap to the pool.
+	 * @param bitmap Bitmap, ignored if null.
+	 */
+	public void releaseBitmap(BinaryBitmap bitmap) {
+		if(bitmap != null) {
+			offer(new Key(BITMAP, bitmap.getWidth(), bitmap.getHeight()), bitmap);
+		}
+	}
+
+	/**
+	 * Returns array for grey levels of the image with the dimensions. Content of pooled array is undefined.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @return Array of {@code width*height} bytes.
+	 */
+	public byte[] acquireGrey(int width, int height) {
+		byte[] grey = (byte[]) poll(new Key(GREY, width, height));
+		return grey == null ? new byte[width * height] : grey;
+	}
+
+	/**
+	 * Returns grey levels to the pool.
+	 * @param grey Grey levels acquired by {@code acquireGrey(width, height)}, ignored if null.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 */
+	public void releaseGrey(byte[] grey, int width, int height) {
+		if(grey != null && grey.length == width * height) {
+			offer(new Key(GREY, width, height), grey);
+		}
+	}
+
+	/**
+	 * Returns array Pixel[height][width]. Pixels of pooled array have colors of the previous image.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @return
+	 */
+	public Pixel[][] acquirePixels(int width, int height) {
+		Pixel[][] array = (Pixel[][]) poll(new Key(PIXELS, width, height));
+		return array == null ? new Pixel[height][width] : array;
+	}
+
+	/**
+	 * Returns pixel array to the pool.
+	 * @param array Array Pixel[height][width], ignored if null or empty.
+	 */
+	public void releasePixels(Pixel[][] array) {
+		if(array != null && array.length > 0) {
+			offer(new Key(PIXELS, array[0].length, array.length), array);
+		}
+	}
+
+	/**
+	 * Returns array with one bit per pixel of the image with the dimensions, laid out as the words
+	 * of {@code BinaryBitmap}. Content of pooled array is undefined.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @return Array of {@code BinaryBitmap.strideFor(width)*height} words.
+	 */
+	public long[] acquireWords(int width, int height) {
+		long[] array = (long[]) poll(new Key(WORDS, width, height));
+		return array == null ? new long[BinaryBitmap.strideFor(width) * height] : array;
+	}
+
+	/**
+	 * Returns words to the pool.
+	 * @param array Words acquired by {@code acquireWords(width, height)}, ignored if null.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 */
+	public void releaseWords(long[] array, int width, int height) {
+		if(array != null && array.length == BinaryBitmap.strideFor(width) * height) {
+			offer(new Key(WORDS, width, height), array);
+		}
+	}
+
+	/**
+	 * Returns number of buffers in the pool.
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns number of bytes of buffers in the pool.
+	 * @return
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns maximal number of bytes of buffers in the pool.
+	 * @return
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	private synchronized Object poll(Key key) {
+		Deque<Object> queue = buffers.get(key);
+		if(queue == null) {
+			return null;
+		}
+
+		Object buffer = queue.pollLast();
+		if(queue.isEmpty()) {
+			buffers.remove(key);
+		}
+		bytes -= key.bytes;
+		size--;
+		return buffer;
+	}
+
+	private synchronized void offer(Key key, Object buffer) {
+		if(key.bytes > capacity) {
+			return;
+		}
+
+		//buffers of other sizes are evicted first, the least recently used ones
+		Iterator<Map.Entry<Key, Deque<Object>>> it = buffers.entrySet().iterator();
+		while(bytes + key.bytes > capacity && it.hasNext()) {
+			Map.Entry<Key, Deque<Object>> entry = it.next();
+			if(entry.getKey().equals(key)) {
+				continue;
+			}
+			Deque<Object> queue = entry.getValue();
+			while(!queue.isEmpty() && bytes + key.bytes > capacity) {
+				queue.pollFirst();
+				bytes -= entry.getKey().bytes;
+				size--;
+			}
+			if(queue.isEmpty()) {
+				it.remove();
+			}
+		}
+		if(bytes + key.bytes > capacity) {
+			//the pool is full of buffers of the same size
+			return;
+		}
+
+		Deque<Object> queue = buffers.get(key);
+		if(queue == null) {
+			queue = new ArrayDeque<Object>();
+			buffers.put(key, queue);
+		}
+		queue.addLast(buffer);
+		bytes += key.bytes;
+		size++;
+	}
+
+	/**
+	 * Kind and dimensions of buffers.
+	 */
+	private static final class Key {
+
+		private final int kind;
+
+		private final int width;
+
+		private final int height;
+
+		/**
+		 * Size of one buffer.
+		 */
+		private final long bytes;
+
+		Key(int kind, int width, int height) {
+			this.kind = kind;
+			this.width = width;
+			this.height = height;
+			long pixels = (long) width * height;
+			switch(kind) {
+			case GREY:
+				bytes = pixels;
+				break;
+			case PIXELS:
+				bytes = pixels * PIXEL_BYTES;
+				break;
+			default:
+				bytes = (long) BinaryBitmap.strideFor(width) * height * 8;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return (kind * 31 + width) * 31 + height;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return kind == other.kind && width == other.width && height == other.height;
+		}
+	}
+}
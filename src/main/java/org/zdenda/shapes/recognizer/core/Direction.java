@@ -25,47 +25,47 @@ public enum Direction {
 	/**
 	 * North.
 	 */
-	N(1, new Point(0,-1)),
+	N(1, 0, -1),
 	
 	/**
 	 * North-east.
 	 */
-	NE(2, new Point(1,-1)),
+	NE(2, 1, -1),
 	
 	/**
 	 * East.
 	 */
-	E(3, new Point(1,0)),
+	E(3, 1, 0),
 	
 	/**
 	 * South-east.
 	 */
-	SE(4, new Point(1,1)),
+	SE(4, 1, 1),
 	
 	/**
 	 * South.
 	 */
-	S(5, new Point(0,1)),
+	S(5, 0, 1),
 	
 	/**
 	 * South-west.
 	 */
-	SW(6, new Point(-1,1)),
+	SW(6, -1, 1),
 	
 	/**
 	 * West.
 	 */
-	W(7, new Point(-1,0)),
+	W(7, -1, 0),
 	
 	/**
 	 * North-west.
 	 */
-	NW(8, new Point(-1,-1)),
+	NW(8, -1, -1),
 	
 	/**
 	 * No direction.
 	 */
-	NONE(0, new Point(0,0));
+	NONE(0, 0, 0);
 	
 	public static final int MAX_VAL = 8; 
 	
@@ -75,13 +75,14 @@ public enum Direction {
 	private final int val;
 	
 	/**
-	 * The point which would be in the direction from center.
-	 * Example: 
-	 * NORTH - [0,-1]
-	 * SOUTH - [0,-]
-	 * NONE - [0,0]
+	 * X coordinate of the point which would be in the direction from center.
+	 */
+	private final int dx;
+	
+	/**
+	 * Y coordinate of the point which would be in the direction from center.
 	 */
-	private final Point point;
+	private final int dy;
 
 	public static Direction getDirection(int val) {
 		switch(val) {
@@ -98,17 +99,44 @@ public enum Direction {
 		}
 	}
 	
-	private Direction(int val, Point point) {
+	private Direction(int val, int dx, int dy) {
 		this.val = val;
-		this.point = point;
+		this.dx = dx;
+		this.dy = dy;
 	}
 	
 	public int getVal() {
 		return val;
 	}
 	
+	/**
+	 * Returns the point which would be in the direction from center [0,0].
+	 * Example: 
+	 * NORTH - [0,-1]
+	 * SOUTH - [0,1]
+	 * NONE - [0,0]
+	 * 
+	 * New point is created for every call, use {@code getDx()} and {@code getDy()} to avoid it.
+	 * @return
+	 */
 	public Point getPoint() {
-		return point;
+		return new Point(dx, dy);
+	}
+	
+	/**
+	 * Returns the change of X coordinate when moving in this direction.
+	 * @return
+	 */
+	public int getDx() {
+		return dx;
+	}
+	
+	/**
+	 * Returns the change of Y coordinate when moving in this direction.
+	 * @return
+	 */
+	public int getDy() {
+		return dy;
 	}
 
 	/**
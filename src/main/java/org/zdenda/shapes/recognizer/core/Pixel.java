@@ -39,6 +39,16 @@ public class Pixel {
 		b = color & 0x000000FF;
 	}
 	
+	/**
+	 * Sets all color components from the value returned by {@code getRgb()} method of {@code BufferedImage}.
+	 * @param color
+	 */
+	public void setColor(int color) {
+		r = (color >> 16) & 0x000000FF;
+		g = (color >> 8) & 0x000000FF;
+		b = color & 0x000000FF;
+	}
+	
 	/**
 	 * Returns true if the color represented by r,g,b fields is white.
 	 * @return
@@ -0,0 +1,77 @@
+package org.zdenda.shapes.recognizer.core;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sequence of connected lines represented by their points. Closed polyline has also a line from
+ * the last point to the first one.
+ * @author Zdenda
+ *
+ */
+public class Polyline {
+
+	private final List<Point> points;
+
+	private final boolean closed;
+
+	/**
+	 * @param points Points of the polyline, at least one. If null or empty, exception is thrown.
+	 * @param closed True if the last point is connected to the first one.
+	 */
+	public Polyline(List<Point> points, boolean closed) {
+		super();
+		if(points == null || points.isEmpty()) {
+			throw new IllegalArgumentException("Polyline must have at least one point!");
+		}
+
+		this.points = Collections.unmodifiableList(new ArrayList<Point>(points));
+		this.closed = closed;
+	}
+
+	/**
+	 * Returns unmodifiable list of points.
+	 * @return
+	 */
+	public List<Point> getPoints() {
+		return points;
+	}
+
+	public Point getStart() {
+		return points.get(0);
+	}
+
+	public Point getEnd() {
+		return points.get(points.size() - 1);
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Returns lines between the following points. Polyline with one point is returned as one line
+	 * with both points the same.
+	 * @return
+	 */
+	public List<Line> getLines() {
+		List<Line> lines = new ArrayList<Line>();
+		for(int i = 1; i < points.size(); i++) {
+			lines.add(new Line(points.get(i-1), points.get(i)));
+		}
+		if(closed && points.size() > 2) {
+			lines.add(new Line(getEnd(), getStart()));
+		}
+		if(lines.isEmpty()) {
+			lines.add(new Line(getStart(), getStart()));
+		}
+		return lines;
+	}
+
+	@Override
+	public String toString() {
+		return "Polyline [points=" + points + ", closed=" + closed + "]";
+	}
+}
@@ -0,0 +1,472 @@
+package org.zdenda.shapes.recognizer.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * <p>
+ * Reads rows of {@code BufferedImage} directly from the data buffer of its raster, without calling
+ * {@code getRGB()} for every pixel. Common layouts (packed int, interleaved bytes, indexed and gray bytes
+ * including 1-bit packed images) have their own readers, every other image is read by the row version
+ * of {@code getRGB()}.
+ * </p>
+ *
+ * <p>
+ * Colors are returned as {@code 0x00RRGGBB}, the same values as the ones returned by {@code BufferedImage.getRGB()}
+ * without alpha. Only grey levels of readers created by {@code createGrey()} take alpha into account.
+ * </p>
+ * @author Zdenda
+ *
+ */
+abstract class RasterRowReader {
+
+	/**
+	 * Value of pixels without alpha.
+	 */
+	protected static final int RGB_MASK = 0x00FFFFFF;
+
+	protected final int width;
+
+	protected RasterRowReader(int width) {
+		this.width = width;
+	}
+
+	/**
+	 * Returns the best reader for the image.
+	 * @param image Image, not null.
+	 * @return
+	 */
+	public static RasterRowReader create(BufferedImage image) {
+		WritableRaster raster = image.getRaster();
+		ColorModel cm = image.getColorModel();
+		SampleModel sm = raster.getSampleModel();
+		DataBuffer db = raster.getDataBuffer();
+
+		if(db.getNumBanks() == 1 && !cm.isAlphaPremultiplied() && cm.getColorSpace().isCS_sRGB()) {
+			if(db instanceof DataBufferInt && sm instanceof SinglePixelPackedSampleModel && cm instanceof DirectColorModel
+					&& IntPackedReader.supports((DirectColorModel)cm)) {
+				return new IntPackedReader(image);
+			}
+
+			if(db instanceof DataBufferByte && sm instanceof ComponentSampleModel && cm instanceof ComponentColorModel
+					&& sm.getNumBands() >= 3 && cm.getNumColorComponents() == 3 && allSamplesHaveBits(sm, 8)) {
+				return new ByteInterleavedReader(image);
+			}
+		}
+
+		if(db instanceof DataBufferByte && db.getNumBanks() == 1 && sm.getNumBands() == 1 && cm.getPixelSize() <= 8
+				&& (cm instanceof IndexColorModel || cm instanceof ComponentColorModel)) {
+			if(sm instanceof MultiPixelPackedSampleModel) {
+				return new PackedLookupReader(image);
+			}
+			if(sm instanceof ComponentSampleModel && sm.getSampleSize(0) == 8) {
+				return new ByteLookupReader(image);
+			}
+		}
+
+		return new GenericReader(image);
+	}
+
+	/**
+	 * Returns reader for {@code readGreyRow()}. Pixels of images with alpha are composited onto white background,
+	 * so transparent pixels are white, other images get the reader of {@code create()}.
+	 * @param image Image, not null.
+	 * @return
+	 */
+	public static RasterRowReader createGrey(BufferedImage image) {
+		if(image.getColorModel().hasAlpha()) {
+			return new AlphaReader(image);
+		}
+		return create(image);
+	}
+
+	private static boolean allSamplesHaveBits(SampleModel sm, int bits) {
+		for(int size : sm.getSampleSize()) {
+			if(size != bits) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads colors of pixels in the row.
+	 * @param y Row.
+	 * @param rgb Array for colors, at least {@code width} long.
+	 */
+	public abstract void readRow(int y, int[] rgb);
+
+	/**
+	 * Reads grey levels (0 - black, 255 - white) of pixels in the row, see {@code toGrey()}.
+	 * @param y Row.
+	 * @param grey Array for grey levels.
+	 * @param offset Index of the first pixel of the row in {@code grey}.
+	 * @param rgb Temporary array, at least {@code width} long.
+	 */
+	public void readGreyRow(int y, byte[] grey, int offset, int[] rgb) {
+		readRow(y, rgb);
+		for(int x = 0; x < width; x++) {
+			grey[offset + x] = (byte) toGrey(rgb[x]);
+		}
+	}
+
+	/**
+	 * Returns the grey level of the color, {@code (77*R + 150*G + 29*B) / 256}.
+	 * @param rgb Color, alpha is ignored.
+	 * @return
+	 */
+	static int toGrey(int rgb) {
+		return (77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF) + 29 * (rgb & 0xFF)) >> 8;
+	}
+
+	/**
+	 * Returns the grey level of the color composited onto white background, transparent colors are white.
+	 * @param argb Color with alpha, not premultiplied.
+	 * @return
+	 */
+	static int compositeGrey(int argb) {
+		int alpha = argb >>> 24;
+		return 255 - ((255 - toGrey(argb)) * alpha + 127) / 255;
+	}
+
+	/**
+	 * Sets bits of black pixels of the row to the words in {@code BinaryBitmap} format. Words are expected to be cleared.
+	 * @param y Row.
+	 * @param words Words of the bitmap.
+	 * @param offset Index of the first word of the row.
+	 * @param rgb Temporary array, at least {@code width} long.
+	 */
+	public void readBlackRow(int y, long[] words, int offset, int[] rgb) {
+		readRow(y, rgb);
+		for(int x = 0; x < width; x++) {
+			if(rgb[x] == 0) {
+				words[offset + (x >>> 6)] |= 1L << x;
+			}
+		}
+	}
+
+	/**
+	 * Image with one int per pixel and 8 bits per color (TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_INT_BGR...).
+	 */
+	private static class IntPackedReader extends RasterRowReader {
+
+		private final int[] data;
+
+		private final int scanlineStride;
+
+		private final int firstPixel;
+
+		private final int redShift;
+
+		private final int greenShift;
+
+		private final int blueShift;
+
+		private final int colorMask;
+
+		IntPackedReader(BufferedImage image) {
+			super(image.getWidth());
+			WritableRaster raster = image.getRaster();
+			SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+			DirectColorModel cm = (DirectColorModel) image.getColorModel();
+			DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+
+			data = db.getData();
+			scanlineStride = sm.getScanlineStride();
+			firstPixel = db.getOffset() + sm.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+			redShift = Integer.numberOfTrailingZeros(cm.getRedMask());
+			greenShift = Integer.numberOfTrailingZeros(cm.getGreenMask());
+			blueShift = Integer.numberOfTrailingZeros(cm.getBlueMask());
+			colorMask = cm.getRedMask() | cm.getGreenMask() | cm.getBlueMask();
+		}
+
+		/**
+		 * Only 8 bit colors are supported.
+		 */
+		static boolean supports(DirectColorModel cm) {
+			return is8Bits(cm.getRedMask()) && is8Bits(cm.getGreenMask()) && is8Bits(cm.getBlueMask());
+		}
+
+		private static boolean is8Bits(int mask) {
+			return Integer.bitCount(mask) == 8 && (mask >>> Integer.numberOfTrailingZeros(mask)) == 0xFF;
+		}
+
+		@Override
+		public void readRow(int y, int[] rgb) {
+			int index = firstPixel + y * scanlineStride;
+			for(int x = 0; x < width; x++) {
+				int p = data[index + x];
+				rgb[x] = ((p >>> redShift) & 0xFF) << 16 | ((p >>> greenShift) & 0xFF) << 8 | ((p >>> blueShift) & 0xFF);
+			}
+		}
+
+		@Override
+		public void readBlackRow(int y, long[] words, int offset, int[] rgb) {
+			int index = firstPixel + y * scanlineStride;
+			for(int x = 0; x < width; x++) {
+				if((data[index + x] & colorMask) == 0) {
+					words[offset + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Image with interleaved 8 bit samples (TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR...).
+	 */
+	private static class ByteInterleavedReader extends RasterRowReader {
+
+		private final byte[] data;
+
+		private final int scanlineStride;
+
+		private final int pixelStride;
+
+		private final int firstPixel;
+
+		private final int redOffset;
+
+		private final int greenOffset;
+
+		private final int blueOffset;
+
+		ByteInterleavedReader(BufferedImage image) {
+			super(image.getWidth());
+			WritableRaster raster = image.getRaster();
+			ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+			DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+
+			data = db.getData();
+			scanlineStride = sm.getScanlineStride();
+			pixelStride = sm.getPixelStride();
+			int[] bandOffsets = sm.getBandOffsets();
+			firstPixel = db.getOffset() - raster.getSampleModelTranslateY() * scanlineStride - raster.getSampleModelTranslateX() * pixelStride;
+			redOffset = bandOffsets[0];
+			greenOffset = bandOffsets[1];
+			blueOffset = bandOffsets[2];
+		}
+
+		@Override
+		public void readRow(int y, int[] rgb) {
+			int index = firstPixel + y * scanlineStride;
+			for(int x = 0; x < width; x++, index += pixelStride) {
+				rgb[x] = (data[index + redOffset] & 0xFF) << 16 | (data[index + greenOffset] & 0xFF) << 8 | (data[index + blueOffset] & 0xFF);
+			}
+		}
+
+		@Override
+		public void readBlackRow(int y, long[] words, int offset, int[] rgb) {
+			int index = firstPixel + y * scanlineStride;
+			for(int x = 0; x < width; x++, index += pixelStride) {
+				if((data[index + redOffset] | data[index + greenOffset] | data[index + blueOffset]) == 0) {
+					words[offset + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Base for images with one sample per pixel which is translated to color by a lookup table.
+	 */
+	private static abstract class LookupReader extends RasterRowReader {
+
+		/**
+		 * Colors of all possible samples.
+		 */
+		protected final int[] lookup;
+
+		LookupReader(BufferedImage image) {
+			super(image.getWidth());
+			ColorModel cm = image.getColorModel();
+			int colors = cm instanceof IndexColorModel ? ((IndexColorModel)cm).getMapSize() : Integer.MAX_VALUE;
+			lookup = new int[1 << cm.getPixelSize()];
+			//the same path as getRGB() uses, color models may round int samples differently
+			byte[] sample = new byte[1];
+			for(int i = 0; i < lookup.length && i < colors; i++) {
+				sample[0] = (byte) i;
+				lookup[i] = cm.getRGB(sample) & RGB_MASK;
+			}
+		}
+	}
+
+	/**
+	 * Gray or indexed image with 8 bit samples (TYPE_BYTE_GRAY, TYPE_BYTE_INDEXED).
+	 */
+	private static class ByteLookupReader extends LookupReader {
+
+		private final byte[] data;
+
+		private final int scanlineStride;
+
+		private final int pixelStride;
+
+		private final int firstPixel;
+
+		/**
+		 * Grey levels of all possible samples, created by the first call of {@code readGreyRow()}.
+		 */
+		private byte[] greyLookup;
+
+		ByteLookupReader(BufferedImage image) {
+			super(image);
+			WritableRaster raster = image.getRaster();
+			ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+			DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+
+			data = db.getData();
+			scanlineStride = sm.getScanlineStride();
+			pixelStride = sm.getPixelStride();
+			firstPixel = db.getOffset() + sm.getBandOffsets()[0] - raster.getSampleModelTranslateY() * scanlineStride
+					- raster.getSampleModelTranslateX() * pixelStride;
+		}
+
+		@Override
+		public void readRow(int y, int[] rgb) {
+			int index = firstPixel + y * scanlineStride;
+			for(int x = 0; x < width; x++, index += pixelStride) {
+				rgb[x] = lookup[data[index] & 0xFF];
+			}
+		}
+
+		@Override
+		public void readGreyRow(int y, byte[] grey, int offset, int[] rgb) {
+			if(greyLookup == null) {
+				greyLookup = new byte[256];
+				for(int i = 0; i < lookup.length; i++) {
+					greyLookup[i] = (byte) toGrey(lookup[i]);
+				}
+			}
+
+			int index = firstPixel + y * scanlineStride;
+			for(int x = 0; x < width; x++, index += pixelStride) {
+				grey[offset + x] = greyLookup[data[index] & 0xFF];
+			}
+		}
+	}
+
+	/**
+	 * Gray or indexed image with 1, 2 or 4 bits per pixel packed in bytes (TYPE_BYTE_BINARY).
+	 */
+	private static class PackedLookupReader extends LookupReader {
+
+		private final byte[] data;
+
+		private final int scanlineStride;
+
+		private final int bitsPerPixel;
+
+		/**
+		 * Index of the first bit of the first row, counted from the most significant bit of {@code data[0]}.
+		 */
+		private final long firstBit;
+
+		PackedLookupReader(BufferedImage image) {
+			super(image);
+			WritableRaster raster = image.getRaster();
+			MultiPixelPackedSampleModel sm = (MultiPixelPackedSampleModel) raster.getSampleModel();
+			DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+
+			data = db.getData();
+			scanlineStride = sm.getScanlineStride();
+			bitsPerPixel = sm.getPixelBitStride();
+			int x0 = -raster.getSampleModelTranslateX();
+			int y0 = -raster.getSampleModelTranslateY();
+			firstBit = 8L * (db.getOffset() + sm.getOffset(x0, y0)) + sm.getBitOffset(x0);
+		}
+
+		@Override
+		public void readRow(int y, int[] rgb) {
+			long bit = firstBit + 8L * y * scanlineStride;
+			int mask = (1 << bitsPerPixel) - 1;
+			for(int x = 0; x < width; x++, bit += bitsPerPixel) {
+				int shift = 8 - bitsPerPixel - (int)(bit & 7);
+				rgb[x] = lookup[(data[(int)(bit >>> 3)] >>> shift) & mask];
+			}
+		}
+
+		@Override
+		public void readBlackRow(int y, long[] words, int offset, int[] rgb) {
+			long bit = firstBit + 8L * y * scanlineStride;
+			if(bitsPerPixel != 1 || (bit & 7) != 0) {
+				super.readBlackRow(y, words, offset, rgb);
+				return;
+			}
+
+			//whole bytes, 8 pixels at once
+			boolean zeroBlack = lookup[0] == 0;
+			boolean oneBlack = lookup[1] == 0;
+			if(!zeroBlack && !oneBlack) {
+				return;
+			}
+
+			int index = (int)(bit >>> 3);
+			int bytes = (width + 7) >>> 3;
+			for(int i = 0; i < bytes; i++) {
+				int value = data[index + i] & 0xFF;
+				if(zeroBlack) {
+					value = oneBlack ? 0xFF : ~value & 0xFF;
+				}
+
+				//the first pixel is the most significant bit of the byte, but the lowest bit in the word
+				long pixels = Integer.reverse(value) >>> 24;
+				words[offset + (i >>> 3)] |= pixels << ((i & 7) << 3);
+			}
+
+			//clear padding behind the last pixel
+			int rest = width & 63;
+			if(rest != 0) {
+				words[offset + (width >>> 6)] &= (1L << rest) - 1;
+			}
+		}
+	}
+
+	/**
+	 * Any other image, read by {@code getRGB()} one row at a time.
+	 */
+	private static class GenericReader extends RasterRowReader {
+
+		protected final BufferedImage image;
+
+		GenericReader(BufferedImage image) {
+			super(image.getWidth());
+			this.image = image;
+		}
+
+		@Override
+		public void readRow(int y, int[] rgb) {
+			image.getRGB(0, y, width, 1, rgb, 0, width);
+			for(int x = 0; x < width; x++) {
+				rgb[x] &= RGB_MASK;
+			}
+		}
+	}
+
+	/**
+	 * Image with alpha read for grey levels, by {@code getRGB()} one row at a time.
+	 */
+	private static class AlphaReader extends GenericReader {
+
+		AlphaReader(BufferedImage image) {
+			super(image);
+		}
+
+		@Override
+		public void readGreyRow(int y, byte[] grey, int offset, int[] rgb) {
+			image.getRGB(0, y, width, 1, rgb, 0, width);
+			for(int x = 0; x < width; x++) {
+				grey[offset + x] = (byte) compositeGrey(rgb[x]);
+			}
+		}
+	}
+}
@@ -0,0 +1,343 @@
+package org.zdenda.shapes.recognizer.core;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Black & white bitmap which stores only runs of black pixels. Runs of all rows are stored in two arrays
+ * (first pixel and the pixel after the last one), row by row and from left to right. Runs of the row {@code y}
+ * have indexes from {@code getRowStart(y)} to {@code getRowEnd(y)}. Memory used by the bitmap depends on the number
+ * of runs, not on the size of the image.
+ * </p>
+ *
+ * <p>
+ * Every black pixel has its index in the order of rows ("ink index"), so data for black pixels
+ * can be stored in arrays with one item per black pixel, see {@code getInkIndex()}.
+ * </p>
+ *
+ * <p>
+ * Bitmap is immutable, use {@code Builder} to create it.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class RunLengthBitmap {
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * Index of the first run of every row, the last item is the number of runs.
+	 */
+	private final int[] rowOffsets;
+
+	/**
+	 * X of the first pixel of the run.
+	 */
+	private final int[] runStarts;
+
+	/**
+	 * X after the last pixel of the run.
+	 */
+	private final int[] runEnds;
+
+	/**
+	 * Ink index of the first pixel of every run, the last item is the number of black pixels.
+	 */
+	private final int[] inkOffsets;
+
+	private RunLengthBitmap(int width, int height, int[] rowOffsets, int[] runStarts, int[] runEnds, int[] inkOffsets) {
+		super();
+		this.width = width;
+		this.height = height;
+		this.rowOffsets = rowOffsets;
+		this.runStarts = runStarts;
+		this.runEnds = runEnds;
+		this.inkOffsets = inkOffsets;
+	}
+
+	/**
+	 * Creates run length bitmap with the same pixels as the binary bitmap.
+	 * @param bitmap Binary bitmap.
+	 * @return
+	 */
+	public static RunLengthBitmap fromBinaryBitmap(BinaryBitmap bitmap) {
+		Builder builder = new Builder(bitmap.getWidth(), bitmap.getHeight());
+		for(int y = 0; y < bitmap.getHeight(); y++) {
+			builder.addRow(bitmap.getWords(), y * bitmap.getStride());
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Creates binary bitmap with the same pixels.
+	 * @return
+	 */
+	public BinaryBitmap toBinaryBitmap() {
+		BinaryBitmap bitmap = new BinaryBitmap(width, height);
+		for(int y = 0; y < height; y++) {
+			for(int r = rowOffsets[y]; r < rowOffsets[y+1]; r++) {
+				for(int x = runStarts[r]; x < runEnds[r]; x++) {
+					bitmap.setBlack(x, y, true);
+				}
+			}
+		}
+
+		return bitmap;
+	}
+
+	/**
+	 * Returns true if the point is inside of the bitmap.
+	 */
+	public boolean isInside(int x, int y) {
+		return x >= 0 && x < width && y >= 0 && y < height;
+	}
+
+	/**
+	 * Returns the index of the run which contains the pixel or -1 if the pixel is white.
+	 * Point is expected to be inside of the bitmap.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int findRun(int x, int y) {
+		int low = rowOffsets[y];
+		int high = rowOffsets[y+1] - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			if(runEnds[middle] <= x) {
+				low = middle + 1;
+			} else if(runStarts[middle] > x) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns true if the pixel is black. Point is expected to be inside of the bitmap.
+	 */
+	public boolean isBlack(int x, int y) {
+		return findRun(x, y) >= 0;
+	}
+
+	/**
+	 * Returns the ink index of the black pixel.
+	 * @param run Run which contains the pixel.
+	 * @param x X of the pixel.
+	 * @return
+	 */
+	public int getInkIndex(int run, int x) {
+		return inkOffsets[run] + x - runStarts[run];
+	}
+
+	/**
+	 * Returns the index of the first run of the row.
+	 */
+	public int getRowStart(int y) {
+		return rowOffsets[y];
+	}
+
+	/**
+	 * Returns the index after the last run of the row.
+	 */
+	public int getRowEnd(int y) {
+		return rowOffsets[y+1];
+	}
+
+	public int getRunStart(int run) {
+		return runStarts[run];
+	}
+
+	/**
+	 * Returns X after the last pixel of the run.
+	 */
+	public int getRunEnd(int run) {
+		return runEnds[run];
+	}
+
+	public int getRunCount() {
+		return rowOffsets[height];
+	}
+
+	/**
+	 * Returns number of black pixels.
+	 * @return
+	 */
+	public int countBlack() {
+		return inkOffsets[getRunCount()];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public String toString() {
+		return "RunLengthBitmap "+width+"x"+height+" with "+getRunCount()+" runs";
+	}
+
+	/**
+	 * Creates the bitmap row by row.
+	 */
+	public static class Builder {
+
+		private final int width;
+
+		private final int height;
+
+		private final int[] rowOffsets;
+
+		private int[] runStarts;
+
+		private int[] runEnds;
+
+		private int runs;
+
+		/**
+		 * Number of added rows.
+		 */
+		private int rows;
+
+		/**
+		 * @param width Width of the bitmap. Must not be negative.
+		 * @param height Height of the bitmap. Must not be negative.
+		 */
+		public Builder(int width, int height) {
+			super();
+			if(width < 0 || height < 0) {
+				throw new IllegalArgumentException("Invalid dimensions of bitmap: "+width+"x"+height+"!");
+			}
+
+			this.width = width;
+			this.height = height;
+			this.rowOffsets = new int[height + 1];
+			this.runStarts = new int[16];
+			this.runEnds = new int[16];
+			this.runs = 0;
+			this.rows = 0;
+		}
+
+		/**
+		 * Adds the next row stored in the {@code BinaryBitmap} format. Runs are found word by word,
+		 * so white parts of the row are skipped quickly. Padding bits of the last word are ignored.
+		 * @param words Words of the row.
+		 * @param offset Index of the first word of the row.
+		 */
+		public void addRow(long[] words, int offset) {
+			checkRow();
+			int stride = BinaryBitmap.strideFor(width);
+			int runStart = -1;
+
+			for(int wi = 0; wi < stride; wi++) {
+				long word = words[offset + wi];
+				if(wi == stride - 1 && (width & 63) != 0) {
+					//ignore padding bits
+					word &= (1L << width) - 1;
+				}
+				int bitBase = wi << 6;
+				int pos = 0;
+				while(pos < 64) {
+					if(runStart < 0) {
+						long rest = word & (-1L << pos);
+						if(rest == 0) {
+							break;
+						}
+						pos = Long.numberOfTrailingZeros(rest);
+						runStart = bitBase + pos;
+					} else {
+						long rest = ~word & (-1L << pos);
+						if(rest == 0) {
+							//run continues in the next word
+							break;
+						}
+						pos = Long.numberOfTrailingZeros(rest);
+						addRun(runStart, bitBase + pos);
+						runStart = -1;
+					}
+				}
+			}
+
+			if(runStart >= 0) {
+				addRun(runStart, width);
+			}
+			endRow();
+		}
+
+		/**
+		 * Adds the next row.
+		 * @param rgb Colors of pixels, only black (0x000000) pixels are considered as black, alpha is ignored.
+		 */
+		public void addRow(int[] rgb) {
+			checkRow();
+			int x = 0;
+			while(x < width) {
+				if((rgb[x] & 0x00FFFFFF) != 0) {
+					x++;
+					continue;
+				}
+
+				int start = x;
+				while(x < width && (rgb[x] & 0x00FFFFFF) == 0) {
+					x++;
+				}
+				addRun(start, x);
+			}
+			endRow();
+		}
+
+		/**
+		 * Creates the bitmap. All rows must have been added.
+		 * @return
+		 */
+		public RunLengthBitmap build() {
+			if(rows < height) {
+				throw new IllegalStateException("Only "+rows+" of "+height+" rows were added!");
+			}
+
+			int[] inkOffsets = new int[runs + 1];
+			long ink = 0;
+			for(int r = 0; r < runs; r++) {
+				inkOffsets[r] = (int)ink;
+				ink += runEnds[r] - runStarts[r];
+				if(ink > Integer.MAX_VALUE) {
+					throw new IllegalStateException("Bitmap has too many black pixels!");
+				}
+			}
+			inkOffsets[runs] = (int)ink;
+
+			return new RunLengthBitmap(width, height, rowOffsets, Arrays.copyOf(runStarts, runs), Arrays.copyOf(runEnds, runs), inkOffsets);
+		}
+
+		private void checkRow() {
+			if(rows >= height) {
+				throw new IllegalStateException("All "+height+" rows were already added!");
+			}
+		}
+
+		private void addRun(int start, int end) {
+			if(runs == runStarts.length) {
+				runStarts = Arrays.copyOf(runStarts, 2 * runs);
+				runEnds = Arrays.copyOf(runEnds, 2 * runs);
+			}
+
+			runStarts[runs] = start;
+			runEnds[runs] = end;
+			runs++;
+		}
+
+		private void endRow() {
+			rows++;
+			rowOffsets[rows] = runs;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package org.zdenda.shapes.recognizer.core.components;
+
+import java.awt.Rectangle;
+
+/**
+ * <p>
+ * Connected component of black pixels (8-connectivity). The component is stored as a list of runs
+ * of black pixels, ordered row by row and from left to right in every row.
+ * </p>
+ *
+ * <p>
+ * Components are immutable.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class Component {
+
+	/**
+	 * Index of the component in the result of the labelling, components are numbered by their first pixels.
+	 */
+	private final int label;
+
+	private final int minX;
+
+	private final int minY;
+
+	private final int maxX;
+
+	private final int maxY;
+
+	/**
+	 * Number of black pixels.
+	 */
+	private final long pixelCount;
+
+	/**
+	 * Runs as [y0,start0,end0,y1,start1,end1,...], end is exclusive.
+	 */
+	private final int[] runs;
+
+	/**
+	 * @param label Label of the component.
+	 * @param runs Runs as [y,start,end] triples, ordered row by row. At least one run is expected.
+	 */
+	Component(int label, int[] runs) {
+		super();
+		this.label = label;
+		this.runs = runs;
+
+		int minX = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		long pixelCount = 0;
+		for(int i = 0; i < runs.length; i += 3) {
+			minX = Math.min(minX, runs[i+1]);
+			maxX = Math.max(maxX, runs[i+2] - 1);
+			pixelCount += runs[i+2] - runs[i+1];
+		}
+
+		this.minX = minX;
+		this.maxX = maxX;
+		this.minY = runs[0];
+		this.maxY = runs[runs.length - 3];
+		this.pixelCount = pixelCount;
+	}
+
+	public int getLabel() {
+		return label;
+	}
+
+	public int getMinX() {
+		return minX;
+	}
+
+	public int getMinY() {
+		return minY;
+	}
+
+	public int getMaxX() {
+		return maxX;
+	}
+
+	public int getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Returns the bounding box of the component.
+	 * @return
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+
+	public long getPixelCount() {
+		return pixelCount;
+	}
+
+	public int getRunCount() {
+		return runs.length / 3;
+	}
+
+	/**
+	 * Returns the row of the run.
+	 * @param run Index of the run.
+	 * @return
+	 */
+	public int getRunY(int run) {
+		return runs[3*run];
+	}
+
+	/**
+	 * Returns X of the first pixel of the run.
+	 * @param run Index of the run.
+	 * @return
+	 */
+	public int getRunStart(int run) {
+		return runs[3*run+1];
+	}
+
+	/**
+	 * Returns X after the last pixel of the run.
+	 * @param run Index of the run.
+	 * @return
+	 */
+	public int getRunEnd(int run) {
+		return runs[3*run+2];
+	}
+
+	@Override
+	public String toString() {
+		return "Component "+label+": "+pixelCount+" pixels in ["+minX+","+minY+"]-["+maxX+","+maxY+"]";
+	}
+}
@@ -0,0 +1,204 @@
+package org.zdenda.shapes.recognizer.core.components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+
+/**
+ * <p>
+ * Finds connected components of black pixels (8-connectivity) in binary bitmap. Rows are split into
+ * runs of black pixels and touching runs are joined by union-find, so the labelling runs in linear time
+ * and white parts of the bitmap are skipped word by word.
+ * </p>
+ *
+ * <p>
+ * If the labeler has a pool, the bitmap is split into horizontal bands which are labelled in parallel
+ * and joined on their borders afterwards. The result is the same as the result of sequential labelling.
+ * </p>
+ *
+ * <p>
+ * One labeler can be used by multiple threads at once.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class ComponentLabeler {
+
+	private static final Logger logger = LogManager.getLogger(ComponentLabeler.class);
+
+	/**
+	 * Default minimal number of rows in one band.
+	 */
+	public static final int DEFAULT_MIN_BAND_HEIGHT = 64;
+
+	/**
+	 * Number of bands per one thread of the pool.
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+
+	/**
+	 * Pool used to label the bands, null for sequential labelling.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Minimal number of rows in one band.
+	 */
+	private final int minBandHeight;
+
+	/**
+	 * Creates labeler which labels the whole bitmap in the calling thread.
+	 */
+	public ComponentLabeler() {
+		super();
+		this.pool = null;
+		this.minBandHeight = DEFAULT_MIN_BAND_HEIGHT;
+	}
+
+	/**
+	 * Creates labeler which labels bands of the bitmap in parallel.
+	 * @param pool Pool used for labelling. If null, exception is thrown.
+	 * @param minBandHeight Minimal number of rows in one band. Must be positive.
+	 */
+	public ComponentLabeler(ForkJoinPool pool, int minBandHeight) {
+		super();
+		if(pool == null) {
+			throw new IllegalArgumentException("Pool can't be null!");
+		}
+		if(minBandHeight < 1) {
+			throw new IllegalArgumentException("Band height must be positive!");
+		}
+
+		this.pool = pool;
+		this.minBandHeight = minBandHeight;
+	}
+
+	/**
+	 * Finds all connected components in the bitmap. Components are ordered by their first pixels (row by row).
+	 * If the bitmap is null, null is returned.
+	 *
+	 * @param bitmap Bitmap.
+	 * @return Components.
+	 */
+	public List<Component> label(BinaryBitmap bitmap) {
+		if(bitmap == null) {
+			logger.warn("Bitmap is null.");
+			return null;
+		}
+
+		int h = bitmap.getHeight();
+		int bandCount = pool == null ? 1 : Math.max(1, Math.min(pool.getParallelism() * BANDS_PER_THREAD, h / minBandHeight));
+		RunBuffer runs;
+		if(bandCount == 1) {
+			runs = RunBuffer.scan(bitmap, 0, h);
+		} else {
+			int bandHeight = (h + bandCount - 1) / bandCount;
+			bandCount = (h + bandHeight - 1) / bandHeight;
+			RunBuffer[] bands = new RunBuffer[bandCount];
+			pool.invoke(new BandScan(bitmap, bands, bandHeight, 0, bandCount));
+			runs = RunBuffer.concat(bands);
+		}
+
+		List<Component> components = collect(runs);
+		logger.debug("{} components with {} runs found in bitmap {} x {}.", components.size(), runs.size, bitmap.getWidth(), h);
+		return components;
+	}
+
+	/**
+	 * Returns components which have at least {@code minPixels} pixels, smaller components are considered as noise.
+	 * @param components Components.
+	 * @param minPixels Minimal number of pixels.
+	 * @return
+	 */
+	public static List<Component> removeNoise(List<Component> components, long minPixels) {
+		List<Component> result = new ArrayList<Component>();
+		for(Component component : components) {
+			if(component.getPixelCount() >= minPixels) {
+				result.add(component);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates components from the sets of runs.
+	 */
+	private static List<Component> collect(RunBuffer runs) {
+		int n = runs.size;
+
+		//root of every set is its first run, so labels are assigned in order of first pixels
+		int[] labels = new int[n];
+		int[] counts = new int[n];
+		int componentCount = 0;
+		for(int i = 0; i < n; i++) {
+			int root = runs.find(i);
+			labels[i] = root == i ? componentCount++ : labels[root];
+			counts[labels[i]]++;
+		}
+
+		int[][] componentRuns = new int[componentCount][];
+		for(int c = 0; c < componentCount; c++) {
+			componentRuns[c] = new int[3 * counts[c]];
+			counts[c] = 0;
+		}
+		for(int i = 0; i < n; i++) {
+			int[] target = componentRuns[labels[i]];
+			int k = 3 * counts[labels[i]]++;
+			target[k] = runs.y[i];
+			target[k+1] = runs.start[i];
+			target[k+2] = runs.end[i];
+		}
+
+		List<Component> components = new ArrayList<Component>(componentCount);
+		for(int c = 0; c < componentCount; c++) {
+			components.add(new Component(c, componentRuns[c]));
+		}
+
+		return components;
+	}
+
+	/**
+	 * Task which scans range of bands, splitting the range until only one band is left.
+	 */
+	private static class BandScan extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final BinaryBitmap bitmap;
+
+		private final RunBuffer[] results;
+
+		private final int bandHeight;
+
+		private final int from;
+
+		private final int to;
+
+		BandScan(BinaryBitmap bitmap, RunBuffer[] results, int bandHeight, int from, int to) {
+			this.bitmap = bitmap;
+			this.results = results;
+			this.bandHeight = bandHeight;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from == 1) {
+				int bandStart = from * bandHeight;
+				results[from] = RunBuffer.scan(bitmap, bandStart, Math.min(bitmap.getHeight(), bandStart + bandHeight));
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new BandScan(bitmap, results, bandHeight, from, middle),
+					new BandScan(bitmap, results, bandHeight, middle, to));
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package org.zdenda.shapes.recognizer.core.components;
+
+import java.util.Arrays;
+
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+
+/**
+ * Runs of black pixels of a range of rows together with the union-find forest which joins touching runs.
+ * Runs are ordered row by row, the root of every set is its first run.
+ * @author Zdenda
+ *
+ */
+class RunBuffer {
+
+	/**
+	 * First row of the buffer.
+	 */
+	final int firstRow;
+
+	/**
+	 * Index of the first run of every row, the last item is the number of runs.
+	 */
+	final int[] rowOffsets;
+
+	int[] y;
+
+	int[] start;
+
+	/**
+	 * Exclusive end of the run.
+	 */
+	int[] end;
+
+	int[] parent;
+
+	int size;
+
+	/**
+	 * @param firstRow First row.
+	 * @param rows Number of rows.
+	 * @param capacity Initial number of runs.
+	 */
+	RunBuffer(int firstRow, int rows, int capacity) {
+		this.firstRow = firstRow;
+		this.rowOffsets = new int[rows + 1];
+		capacity = Math.max(16, capacity);
+		this.y = new int[capacity];
+		this.start = new int[capacity];
+		this.end = new int[capacity];
+		this.parent = new int[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Extracts runs of the rows from the bitmap and joins runs which touch each other.
+	 * @param bitmap Bitmap.
+	 * @param fromRow First row.
+	 * @param toRow Row after the last row.
+	 * @return
+	 */
+	static RunBuffer scan(BinaryBitmap bitmap, int fromRow, int toRow) {
+		RunBuffer buffer = new RunBuffer(fromRow, toRow - fromRow, 16);
+		for(int row = fromRow; row < toRow; row++) {
+			buffer.rowOffsets[row - fromRow] = buffer.size;
+			buffer.scanRow(bitmap, row);
+			if(row > fromRow) {
+				buffer.joinRows(row - 1 - fromRow, row - fromRow, buffer.size);
+			}
+		}
+		buffer.rowOffsets[toRow - fromRow] = buffer.size;
+
+		return buffer;
+	}
+
+	/**
+	 * Appends runs of one row. Runs are found word by word, so white parts of the row are skipped quickly.
+	 */
+	private void scanRow(BinaryBitmap bitmap, int row) {
+		long[] words = bitmap.getWords();
+		int stride = bitmap.getStride();
+		int base = row * stride;
+		int runStart = -1;
+
+		for(int wi = 0; wi < stride; wi++) {
+			long word = words[base + wi];
+			int bitBase = wi << 6;
+			int pos = 0;
+			while(pos < 64) {
+				if(runStart < 0) {
+					long rest = word & (-1L << pos);
+					if(rest == 0) {
+						break;
+					}
+					pos = Long.numberOfTrailingZeros(rest);
+					runStart = bitBase + pos;
+				} else {
+					long rest = ~word & (-1L << pos);
+					if(rest == 0) {
+						//run continues in the next word
+						break;
+					}
+					pos = Long.numberOfTrailingZeros(rest);
+					add(row, runStart, bitBase + pos);
+					runStart = -1;
+				}
+			}
+		}
+
+		if(runStart >= 0) {
+			add(row, runStart, bitmap.getWidth());
+		}
+	}
+
+	private void add(int row, int runStart, int runEnd) {
+		if(size == y.length) {
+			int capacity = 2 * size;
+			y = Arrays.copyOf(y, capacity);
+			start = Arrays.copyOf(start, capacity);
+			end = Arrays.copyOf(end, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+		}
+
+		y[size] = row;
+		start[size] = runStart;
+		end[size] = runEnd;
+		parent[size] = size;
+		size++;
+	}
+
+	/**
+	 * Joins runs of two neighbouring rows which touch each other, diagonal neighbours included.
+	 * @param upper Index of the upper row in the buffer.
+	 * @param lower Index of the lower row in the buffer, its runs end at {@code lowerEnd}.
+	 * @param lowerEnd Index after the last run of the lower row.
+	 */
+	void joinRows(int upper, int lower, int lowerEnd) {
+		int p = rowOffsets[upper];
+		int upperEnd = rowOffsets[upper + 1];
+		for(int r = rowOffsets[lower]; r < lowerEnd; r++) {
+			while(p < upperEnd && end[p] < start[r]) {
+				p++;
+			}
+			for(int q = p; q < upperEnd && start[q] <= end[r]; q++) {
+				union(q, r);
+			}
+		}
+	}
+
+	/**
+	 * Returns the root of the run and shortens the path to it.
+	 */
+	int find(int run) {
+		while(parent[run] != run) {
+			parent[run] = parent[parent[run]];
+			run = parent[run];
+		}
+		return run;
+	}
+
+	/**
+	 * Joins sets of two runs, the root with the lower index becomes the root of both.
+	 */
+	void union(int a, int b) {
+		int rootA = find(a);
+		int rootB = find(b);
+		if(rootA < rootB) {
+			parent[rootB] = rootA;
+		} else if(rootB < rootA) {
+			parent[rootA] = rootB;
+		}
+	}
+
+	/**
+	 * Joins buffers of neighbouring bands into one. Sets of every band are kept and runs on the borders
+	 * of the bands are joined.
+	 * @param bands Buffers ordered by their rows, at least one.
+	 * @return Joined buffer.
+	 */
+	static RunBuffer concat(RunBuffer[] bands) {
+		int total = 0;
+		int rows = 0;
+		for(RunBuffer band : bands) {
+			total += band.size;
+			rows += band.rowOffsets.length - 1;
+		}
+
+		RunBuffer result = new RunBuffer(bands[0].firstRow, rows, total);
+		int row = 0;
+		for(RunBuffer band : bands) {
+			int offset = result.size;
+			System.arraycopy(band.y, 0, result.y, offset, band.size);
+			System.arraycopy(band.start, 0, result.start, offset, band.size);
+			System.arraycopy(band.end, 0, result.end, offset, band.size);
+			for(int i = 0; i < band.size; i++) {
+				result.parent[offset + i] = band.parent[i] + offset;
+			}
+			int bandRows = band.rowOffsets.length - 1;
+			for(int i = 0; i < bandRows; i++) {
+				result.rowOffsets[row + i] = band.rowOffsets[i] + offset;
+			}
+			result.size += band.size;
+			result.rowOffsets[row + bandRows] = result.size;
+
+			if(row > 0 && bandRows > 0) {
+				result.joinRows(row - 1, row, result.rowOffsets[row + 1]);
+			}
+			row += bandRows;
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,64 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+/**
+ * Summary of one search for lines. Statistics are collected once per search instead of logging
+ * every checked pixel.
+ * @author Zdenda
+ *
+ */
+public class DetectionStatistics {
+
+	/**
+	 * Statistics of no search.
+	 */
+	public static final DetectionStatistics EMPTY = new DetectionStatistics(0, 0, 0);
+
+	/**
+	 * Number of pixels examined one by one: first points and points of traced lines (or pixels of components, runs,
+	 * candidates of the update, depending on the detector). Runs of white pixels skipped a word at a time are not counted.
+	 */
+	private final long pixelsScanned;
+
+	/**
+	 * Number of found lines.
+	 */
+	private final int linesFound;
+
+	/**
+	 * Duration of the search in nanoseconds.
+	 */
+	private final long timeNanos;
+
+	public DetectionStatistics(long pixelsScanned, int linesFound, long timeNanos) {
+		super();
+		this.pixelsScanned = pixelsScanned;
+		this.linesFound = linesFound;
+		this.timeNanos = timeNanos;
+	}
+
+	/**
+	 * Returns statistics of both searches together.
+	 * @param other Other statistics.
+	 * @return
+	 */
+	public DetectionStatistics add(DetectionStatistics other) {
+		return new DetectionStatistics(pixelsScanned + other.pixelsScanned, linesFound + other.linesFound, timeNanos + other.timeNanos);
+	}
+
+	public long getPixelsScanned() {
+		return pixelsScanned;
+	}
+
+	public int getLinesFound() {
+		return linesFound;
+	}
+
+	public long getTimeNanos() {
+		return timeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return pixelsScanned+" pixels scanned, "+linesFound+" lines found in "+(timeNanos / 1000000.0)+" ms";
+	}
+}
@@ -0,0 +1,140 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.zdenda.shapes.recognizer.core.Line;
+
+/**
+ * Hash grid of end points of lines. End point {@code 2*i} is the start of the line {@code i}, {@code 2*i+1}
+ * is its end. Cells have the size of the search radius, so only 3x3 cells are checked for every query.
+ * Cells are hashed to buckets stored in one array, the grid is built in linear time.
+ * @author Zdenda
+ *
+ */
+class EndpointGrid {
+
+	/**
+	 * Coordinates of end points.
+	 */
+	final int[] xs;
+
+	final int[] ys;
+
+	private final double radius;
+
+	private final int cellSize;
+
+	private final int mask;
+
+	/**
+	 * Index of the first end point of every bucket, the last item is the number of end points.
+	 */
+	private final int[] bucketOffsets;
+
+	/**
+	 * End points ordered by buckets.
+	 */
+	private final int[] entries;
+
+	/**
+	 * End points found by the last query and squares of their distances, {@code foundCount} items are valid.
+	 */
+	private int[] found;
+
+	private long[] foundDistancesSq;
+
+	private int foundCount;
+
+	/**
+	 * @param lines Lines.
+	 * @param radius Maximal distance of end points returned by {@code findNear()}.
+	 */
+	EndpointGrid(List<Line> lines, double radius) {
+		int n = 2 * lines.size();
+		this.xs = new int[n];
+		this.ys = new int[n];
+		for(int i = 0; i < lines.size(); i++) {
+			Line line = lines.get(i);
+			xs[2*i] = line.getStart().x;
+			ys[2*i] = line.getStart().y;
+			xs[2*i+1] = line.getEnd().x;
+			ys[2*i+1] = line.getEnd().y;
+		}
+
+		this.radius = radius;
+		this.cellSize = Math.max(1, (int) Math.ceil(radius));
+		this.mask = Integer.highestOneBit(Math.max(1, n)) * 2 - 1;
+
+		int[] counts = new int[mask + 2];
+		for(int e = 0; e < n; e++) {
+			counts[bucket(Math.floorDiv(xs[e], cellSize), Math.floorDiv(ys[e], cellSize)) + 1]++;
+		}
+		for(int i = 1; i < counts.length; i++) {
+			counts[i] += counts[i-1];
+		}
+		this.bucketOffsets = counts.clone();
+		this.entries = new int[n];
+		for(int e = 0; e < n; e++) {
+			entries[counts[bucket(Math.floorDiv(xs[e], cellSize), Math.floorDiv(ys[e], cellSize))]++] = e;
+		}
+		this.found = new int[16];
+		this.foundDistancesSq = new long[16];
+	}
+
+	/**
+	 * Finds end points of other lines near the end point.
+	 * @param e End point.
+	 * @return Number of found end points, see {@code getFound()}.
+	 */
+	int findNear(int e) {
+		foundCount = 0;
+		int cx = Math.floorDiv(xs[e], cellSize);
+		int cy = Math.floorDiv(ys[e], cellSize);
+		double radiusSq = radius * radius;
+		for(int y = cy - 1; y <= cy + 1; y++) {
+			for(int x = cx - 1; x <= cx + 1; x++) {
+				int b = bucket(x, y);
+				for(int k = bucketOffsets[b]; k < bucketOffsets[b+1]; k++) {
+					int f = entries[k];
+					//buckets may contain more cells, so the distance is always checked
+					long dx = xs[f] - xs[e];
+					long dy = ys[f] - ys[e];
+					if((f >>> 1) != (e >>> 1) && dx * dx + dy * dy <= radiusSq
+							&& Math.floorDiv(xs[f], cellSize) == x && Math.floorDiv(ys[f], cellSize) == y) {
+						addFound(f, dx * dx + dy * dy);
+					}
+				}
+			}
+		}
+		return foundCount;
+	}
+
+	private void addFound(int f, long distanceSq) {
+		if(foundCount == found.length) {
+			found = Arrays.copyOf(found, 2 * foundCount);
+			foundDistancesSq = Arrays.copyOf(foundDistancesSq, 2 * foundCount);
+		}
+		found[foundCount] = f;
+		foundDistancesSq[foundCount++] = distanceSq;
+	}
+
+	/**
+	 * Returns the end point found by the last query.
+	 */
+	int getFound(int i) {
+		return found[i];
+	}
+
+	/**
+	 * Returns square of the distance of the end point found by the last query.
+	 */
+	long getFoundDistanceSq(int i) {
+		return foundDistancesSq[i];
+	}
+
+	private int bucket(int cx, int cy) {
+		int h = cx * 0x9E3779B1 + cy * 0x85EBCA77;
+		return (h ^ (h >>> 15)) & mask;
+	}
+}
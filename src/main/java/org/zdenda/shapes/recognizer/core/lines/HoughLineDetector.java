@@ -0,0 +1,456 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.Line;
+
+/**
+ * <p>
+ * Line detector based on the Hough transform. Every black pixel votes for all lines (theta, rho) going through it,
+ * peaks of the accumulator are verified against the bitmap and split to segments. Unlike the tracing detectors,
+ * lines may have gaps (dashed lines) and may be a few pixels thick or anti-aliased.
+ * </p>
+ *
+ * <p>
+ * Line (theta, rho) is the same as the line (theta + PI, -rho), so the theta range wraps around: rows
+ * close to 0 are neighbours of the rows close to PI with opposite rho. The accumulator has {@code PEAK_RADIUS}
+ * extra rows on both sides voted with theta below 0 and above PI, so a near vertical line gives only one peak.
+ * </p>
+ *
+ * <p>
+ * The accumulator is an {@code int} array with one row per theta step. Theta rows are voted in parallel
+ * (every task owns its rows, so no synchronization is needed). If the whole accumulator doesn't fit into the memory
+ * budget, theta range is processed in chunks and the bitmap is read once per chunk.
+ * </p>
+ *
+ * <p>
+ * One detector can be used by multiple threads at once.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class HoughLineDetector implements LineDetectionEngine {
+
+	private static final Logger logger = LogManager.getLogger(HoughLineDetector.class);
+
+	/**
+	 * Default number of theta steps in the range [0, PI).
+	 */
+	public static final int DEFAULT_THETA_STEPS = 180;
+
+	/**
+	 * Default size of one rho step in pixels.
+	 */
+	public static final double DEFAULT_RHO_RESOLUTION = 1.0;
+
+	/**
+	 * Default minimal number of votes of the line.
+	 */
+	public static final int DEFAULT_THRESHOLD = 20;
+
+	/**
+	 * Default minimal length of the line in pixels.
+	 */
+	public static final int DEFAULT_MIN_LENGTH = 10;
+
+	/**
+	 * Default maximal number of missing pixels inside of the line.
+	 */
+	public static final int DEFAULT_MAX_GAP = 3;
+
+	/**
+	 * Default memory budget of the accumulator in bytes.
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	/**
+	 * Peak must be the maximum of the cells at most this far in both theta and rho.
+	 */
+	private static final int PEAK_RADIUS = 2;
+
+	/**
+	 * Minimal number of theta rows voted by one task, every task reads the whole bitmap.
+	 */
+	private static final int MIN_ROWS_PER_TASK = 4;
+
+	private final ForkJoinPool pool;
+
+	private final int thetaSteps;
+
+	private final double rhoResolution;
+
+	private final int threshold;
+
+	private final int minLength;
+
+	private final int maxGap;
+
+	private final long memoryBudget;
+
+	/**
+	 * Cosine and sine of every theta step.
+	 */
+	private final double[] cos;
+
+	private final double[] sin;
+
+	/**
+	 * Creates detector with default parameters which uses the common pool.
+	 */
+	public HoughLineDetector() {
+		this(ForkJoinPool.commonPool(), DEFAULT_THETA_STEPS, DEFAULT_RHO_RESOLUTION, DEFAULT_THRESHOLD,
+				DEFAULT_MIN_LENGTH, DEFAULT_MAX_GAP, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * @param pool Pool used for voting. If null, exception is thrown.
+	 * @param thetaSteps Number of theta steps in the range [0, PI). Must be positive.
+	 * @param rhoResolution Size of one rho step in pixels. Must be positive.
+	 * @param threshold Minimal number of votes of the line. Must be positive.
+	 * @param minLength Minimal length of the line in pixels.
+	 * @param maxGap Maximal number of missing pixels inside of the line. Must not be negative.
+	 * @param memoryBudget Maximal size of the accumulator in bytes. At least one theta row is always allocated.
+	 */
+	public HoughLineDetector(ForkJoinPool pool, int thetaSteps, double rhoResolution, int threshold, int minLength, int maxGap, long memoryBudget) {
+		super();
+		if(pool == null) {
+			throw new IllegalArgumentException("Pool can't be null!");
+		}
+		if(thetaSteps < 1 || !(rhoResolution > 0)) {
+			throw new IllegalArgumentException("Invalid resolution: "+thetaSteps+" theta steps, rho step "+rhoResolution+"!");
+		}
+		if(threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be positive!");
+		}
+		if(maxGap < 0) {
+			throw new IllegalArgumentException("Gap can't be negative!");
+		}
+
+		this.pool = pool;
+		this.thetaSteps = thetaSteps;
+		this.rhoResolution = rhoResolution;
+		this.threshold = threshold;
+		this.minLength = minLength;
+		this.maxGap = maxGap;
+		this.memoryBudget = memoryBudget;
+
+		this.cos = new double[thetaSteps];
+		this.sin = new double[thetaSteps];
+		for(int t = 0; t < thetaSteps; t++) {
+			double theta = Math.PI * t / thetaSteps;
+			cos[t] = Math.cos(theta);
+			sin[t] = Math.sin(theta);
+		}
+	}
+
+	/**
+	 * Finds lines in the bitmap. Lines are ordered by their first points (row by row), the first point
+	 * of every line is the one which comes first in the order of rows.
+	 */
+	@Override
+	public List<Line> findLines(BinaryBitmap bitmap) {
+		if(!LineDetector.checkBitmap(bitmap)) {
+			return null;
+		}
+
+		long start = System.nanoTime();
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		double maxRho = Math.sqrt((double)w * w + (double)h * h);
+		int rhoOffset = (int)Math.ceil(maxRho / rhoResolution);
+		int rhoBins = 2 * rhoOffset + 1;
+
+		//extra rows on both sides of the chunk, so the peaks on the border of chunks can be compared with their neighbours,
+		//rows before 0 and after the last step continue over the wrap around
+		int chunkRows = (int)Math.max(1, Math.min(thetaSteps, memoryBudget / (4L * rhoBins) - 2 * PEAK_RADIUS));
+		int[] accumulator = new int[(chunkRows + 2 * PEAK_RADIUS) * rhoBins];
+		int rowsPerTask = Math.max(MIN_ROWS_PER_TASK, (chunkRows + pool.getParallelism() - 1) / pool.getParallelism());
+		logger.debug("Hough transform of bitmap {} x {}: {} x {} accumulator in chunks of {} rows.", w, h, thetaSteps, rhoBins, chunkRows);
+
+		List<Peak> peaks = new ArrayList<Peak>();
+		for(int from = 0; from < thetaSteps; from += chunkRows) {
+			int to = Math.min(thetaSteps, from + chunkRows);
+			int votedFrom = from - PEAK_RADIUS;
+			int votedTo = to + PEAK_RADIUS;
+			Arrays.fill(accumulator, 0);
+			pool.invoke(new Vote(bitmap, accumulator, rhoBins, rhoOffset, rowsPerTask, votedFrom, votedFrom, votedTo));
+			findPeaks(accumulator, rhoBins, rhoOffset, votedFrom, from, to, peaks);
+		}
+
+		//the strongest lines claim their pixels first
+		Collections.sort(peaks, new Comparator<Peak>() {
+			public int compare(Peak p1, Peak p2) {
+				return Integer.compare(p2.votes, p1.votes);
+			}
+		});
+
+		VisitedMap claimed = new VisitedMap(w, h);
+		List<Line> lines = new ArrayList<Line>();
+		int[] hitX = new int[Math.max(w, h)];
+		int[] hitY = new int[Math.max(w, h)];
+		for(Peak peak : peaks) {
+			extractSegments(bitmap, peak, claimed, hitX, hitY, lines);
+		}
+
+		Collections.sort(lines, new Comparator<Line>() {
+			public int compare(Line l1, Line l2) {
+				int c = Integer.compare(l1.getStart().y, l2.getStart().y);
+				return c != 0 ? c : Integer.compare(l1.getStart().x, l2.getStart().x);
+			}
+		});
+
+		if(logger.isDebugEnabled()) {
+			logger.debug("{} peaks verified, search finished: {}.", peaks.size(),
+					new DetectionStatistics(bitmap.countBlack(), lines.size(), System.nanoTime() - start));
+		}
+		return lines;
+	}
+
+	/**
+	 * Adds cells which have at least {@code threshold} votes and which are local maxima to the peaks.
+	 * Wider neighbourhood than 3x3 removes most of the false peaks next to real lines, each of them
+	 * would cost one walk through the bitmap.
+	 * @param accumulator Accumulator, the row {@code votedFrom} is at index 0. Rows {@code from - PEAK_RADIUS}
+	 * 		to {@code to + PEAK_RADIUS} must be voted, including the rows outside of [0, thetaSteps).
+	 * @param from First theta row searched for the peaks.
+	 * @param to Row after the last theta row searched for the peaks.
+	 */
+	private void findPeaks(int[] accumulator, int rhoBins, int rhoOffset, int votedFrom, int from, int to, List<Peak> peaks) {
+		for(int t = from; t < to; t++) {
+			int row = (t - votedFrom) * rhoBins;
+			for(int r = 0; r < rhoBins; r++) {
+				int votes = accumulator[row + r];
+				if(votes < threshold) {
+					continue;
+				}
+
+				//cell must be greater than neighbours before it and at least equal to the ones after it
+				boolean max = true;
+				for(int dt = -PEAK_RADIUS; dt <= PEAK_RADIUS && max; dt++) {
+					int nt = t + dt;
+					for(int dr = -PEAK_RADIUS; dr <= PEAK_RADIUS; dr++) {
+						int nr = r + dr;
+						if((dt == 0 && dr == 0) || nr < 0 || nr >= rhoBins) {
+							continue;
+						}
+						int other = accumulator[(nt - votedFrom) * rhoBins + nr];
+						boolean before = dt < 0 || (dt == 0 && dr < 0);
+						if(before ? other >= votes : other > votes) {
+							max = false;
+							break;
+						}
+					}
+				}
+
+				if(max) {
+					peaks.add(new Peak(t, (r - rhoOffset) * rhoResolution, votes));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Walks along the line of the peak and adds segments of black pixels which weren't claimed by stronger lines.
+	 * Pixels at distance 1 from the line are accepted too, so thick and anti-aliased lines are found once.
+	 * @param hitX Buffer for X of the found pixels, at least as long as the longer side of the bitmap.
+	 * @param hitY Buffer for Y of the found pixels.
+	 */
+	private void extractSegments(BinaryBitmap bitmap, Peak peak, VisitedMap claimed, int[] hitX, int[] hitY, List<Line> lines) {
+		double c = cos[peak.theta];
+		double s = sin[peak.theta];
+		//walk along the axis in which the line is longer, one pixel per step,
+		//position on the other axis is base + slope * step
+		boolean alongX = Math.abs(s) >= Math.abs(c);
+		int steps = alongX ? bitmap.getWidth() : bitmap.getHeight();
+		int limit = alongX ? bitmap.getHeight() : bitmap.getWidth();
+		double base = alongX ? peak.rho / s : peak.rho / c;
+		double slope = alongX ? -c / s : -s / c;
+
+		//only steps where the line (or its neighbours) is inside of the bitmap
+		int first = 0;
+		int last = steps - 1;
+		if(slope == 0) {
+			if(base < -1.5 || base > limit + 0.5) {
+				return;
+			}
+		} else {
+			double i1 = (-1.5 - base) / slope;
+			double i2 = (limit + 0.5 - base) / slope;
+			first = (int)Math.max(first, Math.ceil(Math.min(i1, i2)));
+			last = (int)Math.min(last, Math.floor(Math.max(i1, i2)));
+		}
+
+		int segmentStart = -1;
+		int lastHit = -1;
+		for(int i = first; i <= last + 1; i++) {
+			boolean hit = false;
+			if(i <= last) {
+				hitX[i] = -1;
+				int along = i;
+				int across = (int)Math.round(base + slope * i);
+				//exact position first, then the neighbours across the line
+				for(int d = 0; d < 3 && !hit; d++) {
+					int offset = d == 0 ? 0 : (d == 1 ? -1 : 1);
+					int px = alongX ? along : across + offset;
+					int py = alongX ? across + offset : along;
+					if(bitmap.isInside(px, py) && bitmap.isBlack(px, py) && !claimed.isVisited(px, py)) {
+						hitX[i] = px;
+						hitY[i] = py;
+						hit = true;
+					}
+				}
+			}
+
+			if(hit) {
+				if(segmentStart < 0) {
+					segmentStart = i;
+				}
+				lastHit = i;
+			} else if(segmentStart >= 0 && (i - lastHit > maxGap || i > last)) {
+				if(lastHit - segmentStart + 1 >= minLength) {
+					addSegment(bitmap, hitX, hitY, segmentStart, lastHit, alongX, claimed, lines);
+				}
+				segmentStart = -1;
+			}
+		}
+	}
+
+	/**
+	 * Claims pixels of the segment (including black pixels next to it) and adds the segment to lines.
+	 */
+	private void addSegment(BinaryBitmap bitmap, int[] hitX, int[] hitY, int first, int last, boolean alongX, VisitedMap claimed, List<Line> lines) {
+		Point start = null;
+		Point end = null;
+		for(int i = first; i <= last; i++) {
+			if(hitX[i] < 0) {
+				continue;
+			}
+			if(start == null) {
+				start = new Point(hitX[i], hitY[i]);
+			}
+			end = new Point(hitX[i], hitY[i]);
+			for(int offset = -1; offset <= 1; offset++) {
+				int px = alongX ? hitX[i] : hitX[i] + offset;
+				int py = alongX ? hitY[i] + offset : hitY[i];
+				if(bitmap.isInside(px, py) && bitmap.isBlack(px, py)) {
+					claimed.visit(px, py);
+				}
+			}
+		}
+
+		//first point is the first one in the order of rows
+		if(end.y < start.y || (end.y == start.y && end.x < start.x)) {
+			Point tmp = start;
+			start = end;
+			end = tmp;
+		}
+		lines.add(new Line(start, end));
+	}
+
+	/**
+	 * Cell of the accumulator with enough votes.
+	 */
+	private static class Peak {
+
+		final int theta;
+
+		final double rho;
+
+		final int votes;
+
+		Peak(int theta, double rho, int votes) {
+			this.theta = theta;
+			this.rho = rho;
+			this.votes = votes;
+		}
+	}
+
+	/**
+	 * Task which votes for a range of theta rows, splitting the range between threads.
+	 */
+	private class Vote extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final BinaryBitmap bitmap;
+
+		private final int[] accumulator;
+
+		private final int rhoBins;
+
+		private final int rhoOffset;
+
+		/**
+		 * Maximal number of rows voted without splitting the task.
+		 */
+		private final int rowsPerTask;
+
+		/**
+		 * Theta row stored at the index 0 of the accumulator.
+		 */
+		private final int baseRow;
+
+		private final int from;
+
+		private final int to;
+
+		Vote(BinaryBitmap bitmap, int[] accumulator, int rhoBins, int rhoOffset, int rowsPerTask, int baseRow, int from, int to) {
+			this.bitmap = bitmap;
+			this.accumulator = accumulator;
+			this.rhoBins = rhoBins;
+			this.rhoOffset = rhoOffset;
+			this.rowsPerTask = rowsPerTask;
+			this.baseRow = baseRow;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > rowsPerTask) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Vote(bitmap, accumulator, rhoBins, rhoOffset, rowsPerTask, baseRow, from, middle),
+						new Vote(bitmap, accumulator, rhoBins, rhoOffset, rowsPerTask, baseRow, middle, to));
+				return;
+			}
+
+			//rows outside of [0, thetaSteps) are the rows of the other end of the range with opposite rho
+			double[] rowCos = new double[to - from];
+			double[] rowSin = new double[to - from];
+			for(int t = from; t < to; t++) {
+				int wrapped = Math.floorMod(t, thetaSteps);
+				double sign = t == wrapped ? 1 : ((t - wrapped) / thetaSteps % 2 == 0 ? 1 : -1);
+				rowCos[t - from] = sign * cos[wrapped];
+				rowSin[t - from] = sign * sin[wrapped];
+			}
+
+			//black pixels are found word by word, every pixel votes for all rows of the task
+			long[] words = bitmap.getWords();
+			int stride = bitmap.getStride();
+			double scale = 1.0 / rhoResolution;
+			for(int y = 0; y < bitmap.getHeight(); y++) {
+				for(int wi = 0; wi < stride; wi++) {
+					long word = words[y * stride + wi];
+					while(word != 0) {
+						int x = (wi << 6) + Long.numberOfTrailingZeros(word);
+						word &= word - 1;
+						for(int t = from; t < to; t++) {
+							int r = (int)Math.round((x * rowCos[t - from] + y * rowSin[t - from]) * scale) + rhoOffset;
+							accumulator[(t - baseRow) * rhoBins + r]++;
+						}
+					}
+				}
+			}
+		}
+	}
+}
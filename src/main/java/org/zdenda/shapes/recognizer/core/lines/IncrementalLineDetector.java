@@ -0,0 +1,424 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.Pixel;
+
+/**
+ * <p>
+ * Line detector for images which are edited. After the first search the detector keeps the points of every line,
+ * so when the bitmap changes inside of a rectangle, only lines which pass through the rectangle (or next to it)
+ * are traced again. The time of {@code update()} depends on the size of the edit and on the lengths of the
+ * re-traced lines, not on the size of the image.
+ * </p>
+ *
+ * <p>
+ * The result is always the same as the result of {@code LineDetector.findLines()} for the current bitmap,
+ * including the order of lines. Line is traced from the first black point which isn't a point of previous lines
+ * (in rows order), so change of one line may move the first points of the following lines. Such lines are
+ * re-traced too, the same way as lines dropped in {@code ParallelLineDetector}.
+ * </p>
+ *
+ * <p>
+ * Points of lines are indexed by tiles of {@code TILE_SIZE x TILE_SIZE} pixels. One detector is used for one image
+ * by one thread.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class IncrementalLineDetector {
+
+	private static final Logger logger = LogManager.getLogger(IncrementalLineDetector.class);
+
+	/**
+	 * Size of the tile is {@code 1 << TILE_SHIFT}.
+	 */
+	private static final int TILE_SHIFT = 6;
+
+	/**
+	 * Width and height of tiles of the index.
+	 */
+	public static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+	private final BinaryBitmap bitmap;
+
+	private final int tilesX;
+
+	/**
+	 * Parts of lines in every tile, row by row.
+	 */
+	private final List<List<Segment>> tiles;
+
+	/**
+	 * Lines by their packed first points, so the iteration order is the order of {@code LineDetector.findLines()}.
+	 */
+	private final TreeMap<Long, TracedLine> lines;
+
+	private final PathBuffer path;
+
+	/**
+	 * True after the first search.
+	 */
+	private boolean searched;
+
+	/**
+	 * Statistics of the last search or update.
+	 */
+	private DetectionStatistics lastStatistics = DetectionStatistics.EMPTY;
+
+	/**
+	 * @param bitmap Bitmap which will be searched, modified by the caller between updates.
+	 * 		If null or one of dimensions is 0, exception is thrown.
+	 */
+	public IncrementalLineDetector(BinaryBitmap bitmap) {
+		super();
+		if(!LineDetector.checkBitmap(bitmap)) {
+			throw new IllegalArgumentException("Bitmap can't be null or empty!");
+		}
+
+		this.bitmap = bitmap;
+		this.tilesX = (bitmap.getWidth() + TILE_SIZE - 1) >>> TILE_SHIFT;
+		int tileCount = tilesX * ((bitmap.getHeight() + TILE_SIZE - 1) >>> TILE_SHIFT);
+		this.tiles = new ArrayList<List<Segment>>(tileCount);
+		for(int i = 0; i < tileCount; i++) {
+			tiles.add(null);
+		}
+		this.lines = new TreeMap<Long, TracedLine>();
+		this.path = new PathBuffer();
+	}
+
+	/**
+	 * Creates detector for a copy of the pixel array. Use {@code update(Pixel[][], Rectangle)} after edits.
+	 * @param pixels Pixel array, see {@code BitmapConverter.convertToBinaryBitmap(Pixel[][])}.
+	 */
+	public IncrementalLineDetector(Pixel[][] pixels) {
+		this(BitmapConverter.convertToBinaryBitmap(pixels));
+	}
+
+	/**
+	 * Searches the whole bitmap and remembers the lines. Previous lines are forgotten.
+	 * @return List with lines, the same as {@code LineDetector.findLines()}.
+	 */
+	public List<Line> findLines() {
+		long start = System.nanoTime();
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		lines.clear();
+		for(int i = 0; i < tiles.size(); i++) {
+			tiles.set(i, null);
+		}
+
+		VisitedMap visitedPoints = new VisitedMap(w, h);
+		for(long first = LineDetector.findStart(bitmap, visitedPoints, 0, 0, 0, h); first != LineDetector.NO_POINT; ) {
+			int j = LineDetector.unpackX(first);
+			int i = LineDetector.unpackY(first);
+			visitedPoints.visit(j, i);
+			TracedLine line = trace(j, i);
+			for(int k = 2; k < line.points.length; k += 2) {
+				visitedPoints.visit(line.points[k], line.points[k+1]);
+			}
+			first = LineDetector.findStart(bitmap, visitedPoints, 0, j + 1, i, h);
+		}
+
+		searched = true;
+		lastStatistics = new DetectionStatistics(visitedPoints.countVisited(), lines.size(), System.nanoTime() - start);
+		logger.debug("Search finished: {}.", lastStatistics);
+		return getLines();
+	}
+
+	/**
+	 * Updates the lines after the bitmap was changed. Only pixels inside of the rectangle may have changed
+	 * since the last search or update. The first call searches the whole bitmap.
+	 *
+	 * @param dirty Changed part of the bitmap, clipped to the bitmap. If null, exception is thrown.
+	 * @return List with lines, the same as {@code LineDetector.findLines()} for the current bitmap.
+	 */
+	public List<Line> update(Rectangle dirty) {
+		if(dirty == null) {
+			throw new IllegalArgumentException("Changed rectangle can't be null!");
+		}
+		if(!searched) {
+			return findLines();
+		}
+
+		long start = System.nanoTime();
+		Rectangle changed = dirty.intersection(new Rectangle(0, 0, bitmap.getWidth(), bitmap.getHeight()));
+		if(changed.isEmpty()) {
+			return getLines();
+		}
+
+		//candidates for first points of lines, as packed points
+		PriorityQueue<Long> candidates = new PriorityQueue<Long>();
+		for(int i = changed.y; i < changed.y + changed.height; i++) {
+			for(int j = changed.x; j < changed.x + changed.width; j++) {
+				candidates.add(LineDetector.pack(j, i));
+			}
+		}
+
+		//every line which has a point inside of the rectangle or next to it may go another way
+		Rectangle touched = new Rectangle(changed.x - 1, changed.y - 1, changed.width + 2, changed.height + 2);
+		for(TracedLine line : linesIn(touched)) {
+			remove(line, candidates);
+		}
+
+		int traced = 0;
+		long scanned = 0;
+		long last = LineDetector.NO_POINT;
+		while(!candidates.isEmpty()) {
+			long point = candidates.poll();
+			if(point == last) {
+				continue;
+			}
+			last = point;
+			scanned++;
+
+			int x = LineDetector.unpackX(point);
+			int y = LineDetector.unpackY(point);
+			if(!bitmap.isBlack(x, y) || lines.containsKey(point) || isCoveredBefore(x, y, point)) {
+				continue;
+			}
+
+			if(logger.isTraceEnabled()) {
+				logger.trace("New first point found at [{},{}] while updating.", x, y);
+			}
+			TracedLine line = trace(x, y);
+			traced++;
+
+			//following lines which start on the points of the new line are not lines anymore
+			for(int k = 2; k < line.points.length; k += 2) {
+				long covered = LineDetector.pack(line.points[k], line.points[k+1]);
+				if(covered > point) {
+					TracedLine next = lines.get(covered);
+					if(next != null) {
+						remove(next, candidates);
+					}
+				}
+			}
+		}
+
+		lastStatistics = new DetectionStatistics(scanned, traced, System.nanoTime() - start);
+		logger.debug("Update of {} finished: {}.", changed, lastStatistics);
+		return getLines();
+	}
+
+	/**
+	 * Copies the changed part of the pixel array to the bitmap and updates the lines.
+	 * @param pixels Edited pixel array, the same dimensions as the array passed to the constructor.
+	 * @param dirty Changed part of the array.
+	 * @return List with lines.
+	 * @see #update(Rectangle)
+	 */
+	public List<Line> update(Pixel[][] pixels, Rectangle dirty) {
+		if(pixels == null || pixels.length != bitmap.getHeight()) {
+			throw new IllegalArgumentException("Pixels don't match the bitmap!");
+		}
+		if(dirty == null) {
+			throw new IllegalArgumentException("Changed rectangle can't be null!");
+		}
+
+		Rectangle changed = dirty.intersection(new Rectangle(0, 0, bitmap.getWidth(), bitmap.getHeight()));
+		for(int i = changed.y; i < changed.y + changed.height; i++) {
+			for(int j = changed.x; j < changed.x + changed.width; j++) {
+				Pixel p = pixels[i][j];
+				bitmap.setBlack(j, i, p != null && p.isBlack());
+			}
+		}
+
+		return update(dirty);
+	}
+
+	/**
+	 * Returns the current lines ordered by their first points.
+	 * @return
+	 */
+	public List<Line> getLines() {
+		List<Line> res = new ArrayList<Line>(lines.size());
+		for(TracedLine line : lines.values()) {
+			res.add(line.line);
+		}
+		return res;
+	}
+
+	/**
+	 * Returns statistics of the last search or update. Scanned pixels of the update are the candidates
+	 * for first points.
+	 * @return
+	 */
+	public DetectionStatistics getLastStatistics() {
+		return lastStatistics;
+	}
+
+	/**
+	 * Traces the line from [x,y] and adds it to the index.
+	 */
+	private TracedLine trace(int x, int y) {
+		path.clear();
+		path.add(x, y);
+		long end = LineDetector.findLineEnd(x, y, bitmap, null, path);
+		Point first = new Point(x, y);
+		Point last = end == LineDetector.NO_POINT ? first : new Point(LineDetector.unpackX(end), LineDetector.unpackY(end));
+		TracedLine line = new TracedLine(LineDetector.pack(x, y), new Line(first, last), path.toArray());
+
+		lines.put(line.key, line);
+		int from = 0;
+		int tile = tileOf(x, y);
+		for(int k = 1; k <= line.points.length / 2; k++) {
+			int next = k == line.points.length / 2 ? -1 : tileOf(line.points[2*k], line.points[2*k+1]);
+			if(next != tile) {
+				Segment segment = new Segment(line, from, k);
+				line.segments.add(segment);
+				List<Segment> segments = tiles.get(tile);
+				if(segments == null) {
+					segments = new ArrayList<Segment>();
+					tiles.set(tile, segments);
+				}
+				segments.add(segment);
+				from = k;
+				tile = next;
+			}
+		}
+
+		return line;
+	}
+
+	/**
+	 * Removes the line and adds all its points to the candidates.
+	 */
+	private void remove(TracedLine line, PriorityQueue<Long> candidates) {
+		if(logger.isTraceEnabled()) {
+			logger.trace("Line from {} removed.", line.line.getStart());
+		}
+		lines.remove(line.key);
+		for(Segment segment : line.segments) {
+			List<Segment> segments = tiles.get(tileOf(line.points[2*segment.from], line.points[2*segment.from+1]));
+			segments.remove(segment);
+		}
+		for(int k = 0; k < line.points.length; k += 2) {
+			candidates.add(LineDetector.pack(line.points[k], line.points[k+1]));
+		}
+	}
+
+	/**
+	 * Returns lines with at least one point inside of the rectangle.
+	 */
+	private List<TracedLine> linesIn(Rectangle area) {
+		Map<TracedLine, Boolean> found = new IdentityHashMap<TracedLine, Boolean>();
+		int fromX = Math.max(0, area.x) >>> TILE_SHIFT;
+		int fromY = Math.max(0, area.y) >>> TILE_SHIFT;
+		int toX = Math.min(bitmap.getWidth() - 1, area.x + area.width - 1) >>> TILE_SHIFT;
+		int toY = Math.min(bitmap.getHeight() - 1, area.y + area.height - 1) >>> TILE_SHIFT;
+		for(int ty = fromY; ty <= toY; ty++) {
+			for(int tx = fromX; tx <= toX; tx++) {
+				List<Segment> segments = tiles.get(ty * tilesX + tx);
+				if(segments == null) {
+					continue;
+				}
+				for(Segment segment : segments) {
+					int[] points = segment.line.points;
+					for(int k = segment.from; k < segment.to; k++) {
+						if(area.contains(points[2*k], points[2*k+1])) {
+							found.put(segment.line, Boolean.TRUE);
+							break;
+						}
+					}
+				}
+			}
+		}
+
+		return new ArrayList<TracedLine>(found.keySet());
+	}
+
+	/**
+	 * Checks whether [x,y] is a point of a line which starts before it.
+	 */
+	private boolean isCoveredBefore(int x, int y, long point) {
+		List<Segment> segments = tiles.get(tileOf(x, y));
+		if(segments == null) {
+			return false;
+		}
+
+		for(Segment segment : segments) {
+			if(segment.line.key >= point) {
+				continue;
+			}
+			int[] points = segment.line.points;
+			for(int k = segment.from; k < segment.to; k++) {
+				if(points[2*k] == x && points[2*k+1] == y) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private int tileOf(int x, int y) {
+		return (y >>> TILE_SHIFT) * tilesX + (x >>> TILE_SHIFT);
+	}
+
+	/**
+	 * Line with all its points.
+	 */
+	private static class TracedLine {
+
+		/**
+		 * Packed first point.
+		 */
+		final long key;
+
+		final Line line;
+
+		/**
+		 * Points of the line including the first one as [x0,y0,x1,y1,...].
+		 */
+		final int[] points;
+
+		/**
+		 * Parts of the line in tiles.
+		 */
+		final List<Segment> segments;
+
+		TracedLine(long key, Line line, int[] points) {
+			this.key = key;
+			this.line = line;
+			this.points = points;
+			this.segments = new ArrayList<Segment>(2);
+		}
+	}
+
+	/**
+	 * Consecutive points of the line inside of one tile.
+	 */
+	private static class Segment {
+
+		final TracedLine line;
+
+		/**
+		 * Index of the first point.
+		 */
+		final int from;
+
+		/**
+		 * Index after the last point.
+		 */
+		final int to;
+
+		Segment(TracedLine line, int from, int to) {
+			this.line = line;
+			this.from = from;
+			this.to = to;
+		}
+	}
+}
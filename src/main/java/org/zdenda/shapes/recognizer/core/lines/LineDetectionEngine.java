@@ -0,0 +1,23 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.util.List;
+
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.Line;
+
+/**
+ * Common interface of objects which find lines in binary bitmaps.
+ * @author Zdenda
+ *
+ */
+public interface LineDetectionEngine {
+
+	/**
+	 * Finds every line in a binary bitmap. If no line is found, empty list is returned.
+	 * If the bitmap is null or dimensions are invalid (one of dimensions is 0), null is returned.
+	 *
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with lines.
+	 */
+	public List<Line> findLines(BinaryBitmap bitmap);
+}
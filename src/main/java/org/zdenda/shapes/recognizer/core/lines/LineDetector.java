@@ -0,0 +1,451 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BufferPool;
+import org.zdenda.shapes.recognizer.core.Direction;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.components.Component;
+import org.zdenda.shapes.recognizer.core.metrics.Metrics;
+
+/**
+ * <p>
+ * Object which searches for lines in binary bitmaps. The detector keeps its own scratch buffers
+ * (visited pixels) and reuses them for the following searches in bitmaps of the same size.
+ * Detector created with {@code BufferPool} takes the buffers from the pool and returns them
+ * by {@code releaseBuffers()}.
+ * </p>
+ * 
+ * <p>
+ * One detector must not be used by multiple threads at once, but every thread can use its own detector.
+ * Detectors don't share any mutable state, so multiple images can be processed concurrently.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class LineDetector implements LineDetectionEngine {
+
+	private static final Logger logger = LogManager.getLogger(LineDetector.class);
+	
+	/**
+	 * Returned by {@code findLineEnd()} if the line has no other point than the first one.
+	 */
+	static final long NO_POINT = -1L;
+	
+	/**
+	 * Pool of scratch buffers, may be null.
+	 */
+	private final BufferPool pool;
+	
+	/**
+	 * Visited points of the last search. Reused if the next bitmap has the same dimensions.
+	 */
+	private VisitedMap visitedBuffer;
+	
+	/**
+	 * Statistics of the last search.
+	 */
+	private DetectionStatistics lastStatistics = DetectionStatistics.EMPTY;
+	
+	/**
+	 * Creates detector which allocates its own scratch buffers.
+	 */
+	public LineDetector() {
+		this(null);
+	}
+	
+	/**
+	 * @param pool Pool of scratch buffers. If null, the detector allocates its own buffers.
+	 */
+	public LineDetector(BufferPool pool) {
+		super();
+		this.pool = pool;
+	}
+	
+	/**
+	 * This method will try to find every line in a binary bitmap. If no line is found, empty list is returned.
+	 * If the bitmap is null or dimensions are invalid (one of dimensions is 0), null is returned.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with lines.
+	 */
+	@Override
+	public List<Line> findLines(BinaryBitmap bitmap) {
+		return findLines(bitmap, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Finds lines like {@code findLines(BinaryBitmap)}, but the search stops after {@code maxResults} lines
+	 * are found. The result is the beginning of the full result.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @param maxResults Maximal number of lines. Must be positive.
+	 * @return List with at most {@code maxResults} lines or null if the bitmap is invalid.
+	 */
+	public List<Line> findLines(BinaryBitmap bitmap, int maxResults) {
+		if(maxResults < 1) {
+			throw new IllegalArgumentException("Maximal number of lines must be positive!");
+		}
+		if(!checkBitmap(bitmap)) {
+			return null;
+		}
+		
+		long start = System.nanoTime();
+		boolean metrics = Metrics.isEnabled();
+		long traceTime = 0;
+		VisitedMap visitedPoints = prepareVisitedMap(bitmap.getWidth(), bitmap.getHeight());
+		List<Line> lines = new ArrayList<Line>();
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		logger.debug("Finding lines in bitmap {} x {}", w, h);
+		
+		
+		//this version works only with black & white (white as background) so the
+		//first point is first black pixel which is not visited yet.
+		for(long first = findStart(bitmap, visitedPoints, 0, 0, 0, h); first != NO_POINT; ) {
+			int j = unpackX(first);
+			int i = unpackY(first);
+			if(logger.isTraceEnabled()) {
+				logger.trace("First point found at [{},{}].",j,i);
+			}
+			Point firstPoint = new Point(j, i);
+			visitedPoints.visit(j, i);
+			
+			long traceStart = metrics ? System.nanoTime() : 0;
+			long end = findLineEnd(j, i, bitmap, visitedPoints, null);
+			if(metrics) {
+				traceTime += System.nanoTime() - traceStart;
+			}
+			Point secondPoint;
+			if(end == NO_POINT) {
+				if(logger.isTraceEnabled()) {
+					logger.trace("No second point found for point: {}.",firstPoint);
+				}
+				secondPoint = firstPoint;
+			} else {
+				secondPoint = new Point(unpackX(end), unpackY(end));
+			}
+			lines.add(new Line(firstPoint, secondPoint));
+			
+			if(lines.size() == maxResults) {
+				lastStatistics = new DetectionStatistics(visitedPoints.countVisited(), lines.size(), System.nanoTime() - start);
+				logger.debug("Search stopped after {} lines: {}.", maxResults, lastStatistics);
+				if(metrics) {
+					recordMetrics(traceTime);
+				}
+				return lines;
+			}
+			first = findStart(bitmap, visitedPoints, 0, j + 1, i, h);
+		}
+		
+		lastStatistics = new DetectionStatistics(visitedPoints.countVisited(), lines.size(), System.nanoTime() - start);
+		logger.debug("Search finished: {}.", lastStatistics);
+		if(metrics) {
+			recordMetrics(traceTime);
+		}
+		return lines;
+	}
+	
+	/**
+	 * Records the last statistics to {@code Metrics}, the time of the search is split to scanning and tracing.
+	 * @param traceTime Time spent in {@code findLineEnd()}.
+	 */
+	private void recordMetrics(long traceTime) {
+		Metrics.SCAN_TIME.record(lastStatistics.getTimeNanos() - traceTime);
+		Metrics.TRACE_TIME.record(traceTime);
+		Metrics.PIXELS_SCANNED.add(lastStatistics.getPixelsScanned());
+		Metrics.LINES_FOUND.add(lastStatistics.getLinesFound());
+	}
+	
+	/**
+	 * This method will try to find every line inside of the components of the bitmap. Pixels outside of
+	 * the components are not scanned at all, so components removed as noise are skipped.
+	 * 
+	 * Lines never leave their component, so if all components of the bitmap are passed, the result is
+	 * the same as the result of {@code findLines(BinaryBitmap)}. Lines are ordered by their first points.
+	 * If the bitmap or components are null or dimensions are invalid, null is returned.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @param components Components of the bitmap, see {@code ComponentLabeler}.
+	 * @return List with lines.
+	 */
+	public List<Line> findLines(BinaryBitmap bitmap, List<Component> components) {
+		if(!checkBitmap(bitmap)) {
+			return null;
+		}
+		if(components == null) {
+			logger.warn("Components are null.");
+			return null;
+		}
+		
+		long start = System.nanoTime();
+		VisitedMap visitedPoints = prepareVisitedMap(bitmap.getWidth(), bitmap.getHeight());
+		List<Line> lines = new ArrayList<Line>();
+		long pixelsScanned = 0;
+		
+		for(Component component : components) {
+			for(int r = 0; r < component.getRunCount(); r++) {
+				int y = component.getRunY(r);
+				int end = component.getRunEnd(r);
+				for(int x = component.getRunStart(r); x < end; x++) {
+					if(!visitedPoints.isVisited(x, y)) {
+						visitedPoints.visit(x, y);
+						long lineEnd = findLineEnd(x, y, bitmap, visitedPoints, null);
+						Point firstPoint = new Point(x, y);
+						Point secondPoint = lineEnd == NO_POINT ? firstPoint : new Point(unpackX(lineEnd), unpackY(lineEnd));
+						lines.add(new Line(firstPoint, secondPoint));
+					}
+				}
+			}
+			pixelsScanned += component.getPixelCount();
+		}
+		
+		//lines of different components are mixed in the order of rows
+		Collections.sort(lines, new Comparator<Line>() {
+			public int compare(Line l1, Line l2) {
+				int c = Integer.compare(l1.getStart().y, l2.getStart().y);
+				return c != 0 ? c : Integer.compare(l1.getStart().x, l2.getStart().x);
+			}
+		});
+		
+		lastStatistics = new DetectionStatistics(pixelsScanned, lines.size(), System.nanoTime() - start);
+		logger.debug("Search in {} components finished: {}.", components.size(), lastStatistics);
+		return lines;
+	}
+	
+	/**
+	 * This method will try to find a line in a binary bitmap. If line is found, then object representing this line is returned. 
+	 * Otherwise null is returned.
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return Two points representing the line or null.
+	 */
+	public Line findLine(BinaryBitmap bitmap) {
+		if(!checkBitmap(bitmap)) {
+			return null;
+		}
+		
+		long start = System.nanoTime();
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		logger.debug("Finding line in bitmap {} x {}", w, h);
+		
+		VisitedMap visitedPoints = prepareVisitedMap(w, h);
+		Point first = null;
+		
+		//find the first point
+		//this version works only with black & white (white as background) so the
+		//first point is first black pixel.
+		long firstPoint = findStart(bitmap, visitedPoints, 0, 0, 0, h);
+		if(firstPoint != NO_POINT) {
+			first = new Point(unpackX(firstPoint), unpackY(firstPoint));
+			logger.debug("First point found at {}.",first);
+			visitedPoints.visit(first.x, first.y);
+		}
+		
+		//if no first point of line is found, return empty array
+		if(first == null) {
+			lastStatistics = new DetectionStatistics(0, 0, System.nanoTime() - start);
+			logger.debug("No line found.");
+			return null;
+		}
+		
+		//get the end point of line
+		long end = findLineEnd(first.x, first.y, bitmap, visitedPoints, null);
+		Point endPoint;
+		if(end == NO_POINT) {
+			logger.warn("No end point found for the first point = "+first.toString());
+			endPoint = new Point(first);
+		} else {
+			endPoint = new Point(unpackX(end), unpackY(end));
+		}
+		
+		lastStatistics = new DetectionStatistics(visitedPoints.countVisited(), 1, System.nanoTime() - start);
+		logger.debug("Line from: {} to: {} found.",first,endPoint);
+		return new Line(first, endPoint);
+	}
+	
+	/**
+	 * Finds the first black pixel which is not visited, searching row by row from [x,y] to the end of the row
+	 * {@code endY - 1}. Black pixels are masked by visited pixels one word at a time, so runs of 64 white or visited
+	 * pixels are skipped by one test.
+	 * 
+	 * @param bitmap Bitmap.
+	 * @param visitedPoints Visited points, their row {@code y - visitedOffset} belongs to the row {@code y} of the bitmap.
+	 * @param visitedOffset First row of the bitmap covered by {@code visitedPoints}.
+	 * @param x X of the first tested pixel, may be equal to the width of the bitmap.
+	 * @param y Y of the first tested pixel.
+	 * @param endY Row after the last searched row.
+	 * @return Pixel packed by {@code pack()} or {@code NO_POINT}.
+	 */
+	static long findStart(BinaryBitmap bitmap, VisitedMap visitedPoints, int visitedOffset, int x, int y, int endY) {
+		long[] words = bitmap.getWords();
+		int stride = bitmap.getStride();
+		int k = x >>> 6;
+		long mask = -1L << x;
+		for(; y < endY; y++) {
+			int row = y * stride;
+			for(; k < stride; k++) {
+				long candidates = words[row + k] & ~visitedPoints.getWord(y - visitedOffset, k) & mask;
+				mask = -1L;
+				if(candidates != 0) {
+					return pack((k << 6) + Long.numberOfTrailingZeros(candidates), y);
+				}
+			}
+			k = 0;
+		}
+		
+		return NO_POINT;
+	}
+	
+	/**
+	 * This method will try to find the end of the line which starts at [firstX,firstY].
+	 * If no other point besides the first point is found, then {@code NO_POINT} is returned.
+	 * 
+	 * Every point of the line (except the first one) is marked in {@code visitedPoints} and
+	 * appended to {@code path}. Both may be null. The result doesn't depend on already visited points.
+	 * No objects are created during the search.
+	 * 
+	 * It is assumed that bitmap is checked for valid dimensions.
+	 * 
+	 * @param firstX X coordinate of the starting point of the line.
+	 * @param firstY Y coordinate of the starting point of the line.
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @param visitedPoints Visited points of the current search, same dimensions as the bitmap.
+	 * @param path Buffer for points of the line. 
+	 * @return End point packed by {@code pack()} or {@code NO_POINT}.
+	 */
+	static long findLineEnd(int firstX, int firstY, BinaryBitmap bitmap, VisitedMap visitedPoints, PathBuffer path) {
+		if(logger.isTraceEnabled()) {
+			logger.trace("Finding the end point from starting point: [{},{}]", firstX, firstY);
+		}
+		
+		//find the next point a determine the direction of the line
+		int none = Direction.NONE.getVal();
+		int next = Neighbours.find(bitmap, firstX, firstY, none);
+		if(next < 0) {
+			if(logger.isTraceEnabled()) {
+				logger.trace("No other point besides the first point found.");
+			}
+			return NO_POINT;
+		}
+		Direction direction = Neighbours.DIRECTIONS[none][next];
+		int x = firstX + Neighbours.DX[none][next];
+		int y = firstY + Neighbours.DY[none][next];
+		
+		//continue with finding points in the current direction
+		int[] dx = Neighbours.DX[direction.getVal()];
+		int[] dy = Neighbours.DY[direction.getVal()];
+		while(true) {
+			if(visitedPoints != null) {
+				visitedPoints.visit(x, y);
+			}
+			if(path != null) {
+				path.add(x, y);
+			}
+			
+			next = Neighbours.find(bitmap, x, y, direction.getVal());
+			if(next < 0) {
+				break;
+			}
+			x += dx[next];
+			y += dy[next];
+		}
+		
+		return pack(x, y);
+	}
+	
+	/**
+	 * Packs coordinates of the point to one long value.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	static long pack(int x, int y) {
+		return ((long)y << 32) | (x & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Returns X coordinate of the packed point.
+	 */
+	static int unpackX(long point) {
+		return (int)point;
+	}
+	
+	/**
+	 * Returns Y coordinate of the packed point.
+	 */
+	static int unpackY(long point) {
+		return (int)(point >>> 32);
+	}
+	
+	/**
+	 * Returns statistics of the last search made by this detector.
+	 * @return
+	 */
+	public DetectionStatistics getLastStatistics() {
+		return lastStatistics;
+	}
+	
+	/**
+	 * Returns cleared visited map for the bitmap with specified dimensions. The map from
+	 * previous search is reused if possible.
+	 * @param width Width of the bitmap.
+	 * @param height Height of the bitmap.
+	 * @return
+	 */
+	protected VisitedMap prepareVisitedMap(int width, int height) {
+		if(visitedBuffer != null && visitedBuffer.fits(width, height)) {
+			visitedBuffer.clear();
+		} else if(pool != null) {
+			releaseBuffers();
+			visitedBuffer = new VisitedMap(width, height, pool.acquireWords(width, height));
+			visitedBuffer.clear();
+		} else {
+			visitedBuffer = new VisitedMap(width, height);
+		}
+		
+		return visitedBuffer;
+	}
+	
+	/**
+	 * Releases scratch buffers to the pool of the detector (or to the garbage collector if the detector has no pool).
+	 * The following search takes new buffers.
+	 */
+	public void releaseBuffers() {
+		if(visitedBuffer != null && pool != null) {
+			pool.releaseWords(visitedBuffer.getWords(), visitedBuffer.getWidth(), visitedBuffer.getHeight());
+		}
+		visitedBuffer = null;
+	}
+	
+	/**
+	 * Checks that the bitmap is not null and has valid dimensions.
+	 * @param bitmap Bitmap.
+	 * @return True if the bitmap can be searched.
+	 */
+	protected static boolean checkBitmap(BinaryBitmap bitmap) {
+		if(bitmap == null) {
+			logger.warn("Bitmap is null.");
+			return false;
+		}
+		
+		if(bitmap.getHeight() == 0) {
+			logger.warn("Bitmap length is 0.");
+			return false;
+		}
+		
+		if(bitmap.getWidth() == 0) {
+			logger.warn("One dimensional bitamp.");
+			return false;
+		}
+		
+		return true;
+	}
+}
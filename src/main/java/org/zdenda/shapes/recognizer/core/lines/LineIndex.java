@@ -0,0 +1,379 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.zdenda.shapes.recognizer.core.Line;
+
+/**
+ * <p>
+ * Spatial index of lines for range, nearest line and endpoint queries. Index is a uniform grid of square cells built
+ * at once over all lines. Every line is stored in the cells which it passes through (not in all cells of its bounding box),
+ * cells are stored in one array like runs of {@code RunLengthBitmap}.
+ * </p>
+ *
+ * <p>
+ * Size of cells is chosen from the average length of lines and from the density of lines, so a cell holds only
+ * a few lines and queries in a small area take constant time regardless of the number of lines.
+ * Lines are treated as segments between their two points, line with both points the same is a single point.
+ * </p>
+ *
+ * <p>
+ * Index is immutable and can be used by multiple threads at once.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class LineIndex {
+
+	private final List<Line> lines;
+
+	/**
+	 * Coordinates of lines, the line i is from [x1[i],y1[i]] to [x2[i],y2[i]].
+	 */
+	private final int[] x1;
+
+	private final int[] y1;
+
+	private final int[] x2;
+
+	private final int[] y2;
+
+	/**
+	 * Top left corner of the grid.
+	 */
+	private final int originX;
+
+	private final int originY;
+
+	private final int cellSize;
+
+	private final int cellsX;
+
+	private final int cellsY;
+
+	/**
+	 * Index of the first entry of every cell (row by row), the last item is the number of entries.
+	 */
+	private final int[] cellOffsets;
+
+	/**
+	 * Indexes of lines in cells.
+	 */
+	private final int[] entries;
+
+	/**
+	 * Creates index with the cell size chosen from lines.
+	 * @param lines Lines. If null, exception is thrown.
+	 */
+	public LineIndex(List<Line> lines) {
+		this(lines, 0);
+	}
+
+	/**
+	 * @param lines Lines. If null, exception is thrown.
+	 * @param cellSize Size of the cell in pixels or 0 to choose it from lines.
+	 */
+	public LineIndex(List<Line> lines, int cellSize) {
+		super();
+		if(lines == null) {
+			throw new IllegalArgumentException("Lines can't be null!");
+		}
+		if(cellSize < 0) {
+			throw new IllegalArgumentException("Invalid cell size: "+cellSize+"!");
+		}
+
+		int n = lines.size();
+		this.lines = Collections.unmodifiableList(new ArrayList<Line>(lines));
+		this.x1 = new int[n];
+		this.y1 = new int[n];
+		this.x2 = new int[n];
+		this.y2 = new int[n];
+
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		long extent = 0;
+		for(int i = 0; i < n; i++) {
+			Line line = this.lines.get(i);
+			x1[i] = line.getStart().x;
+			y1[i] = line.getStart().y;
+			x2[i] = line.getEnd().x;
+			y2[i] = line.getEnd().y;
+			minX = Math.min(minX, Math.min(x1[i], x2[i]));
+			minY = Math.min(minY, Math.min(y1[i], y2[i]));
+			maxX = Math.max(maxX, Math.max(x1[i], x2[i]));
+			maxY = Math.max(maxY, Math.max(y1[i], y2[i]));
+			extent += Math.max(Math.abs(x2[i] - x1[i]), Math.abs(y2[i] - y1[i])) + 1;
+		}
+		if(n == 0) {
+			minX = minY = maxX = maxY = 0;
+		}
+
+		//cells about as big as lines, but not more cells than lines
+		long area = (long)(maxX - minX + 1) * (maxY - minY + 1);
+		if(cellSize == 0) {
+			cellSize = (int) Math.ceil(Math.max(n == 0 ? 1 : (double)extent / n, Math.sqrt((double)area / Math.max(1, n))));
+		}
+		this.originX = minX;
+		this.originY = minY;
+		this.cellSize = cellSize;
+		this.cellsX = (maxX - minX) / cellSize + 1;
+		this.cellsY = (maxY - minY) / cellSize + 1;
+
+		//count entries of cells, then fill them
+		int[] counts = new int[cellsX * cellsY + 1];
+		for(int i = 0; i < n; i++) {
+			for(int cy = cellY(Math.min(y1[i], y2[i])); cy <= cellY(Math.max(y1[i], y2[i])); cy++) {
+				long range = cellRange(i, cy);
+				for(int cx = (int)(range >>> 32); cx <= (int)range; cx++) {
+					counts[cy * cellsX + cx + 1]++;
+				}
+			}
+		}
+		for(int i = 1; i < counts.length; i++) {
+			counts[i] += counts[i-1];
+		}
+		this.cellOffsets = counts.clone();
+		this.entries = new int[counts[counts.length - 1]];
+		for(int i = 0; i < n; i++) {
+			for(int cy = cellY(Math.min(y1[i], y2[i])); cy <= cellY(Math.max(y1[i], y2[i])); cy++) {
+				long range = cellRange(i, cy);
+				for(int cx = (int)(range >>> 32); cx <= (int)range; cx++) {
+					entries[counts[cy * cellsX + cx]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns lines which have at least one point inside of the rectangle (including its border pixels).
+	 * @param area Rectangle in pixels.
+	 * @return Lines in the order of the original list.
+	 */
+	public List<Line> findIntersecting(Rectangle area) {
+		List<Line> res = new ArrayList<Line>();
+		if(lines.isEmpty() || area.isEmpty()) {
+			return res;
+		}
+
+		int left = area.x;
+		int top = area.y;
+		int right = area.x + area.width - 1;
+		int bottom = area.y + area.height - 1;
+		int fromX = clampX(cellX(left)), toX = clampX(cellX(right));
+		int fromY = clampY(cellY(top)), toY = clampY(cellY(bottom));
+		if(cellX(right) < 0 || cellY(bottom) < 0 || cellX(left) >= cellsX || cellY(top) >= cellsY) {
+			return res;
+		}
+
+		//lines in more cells are checked only once
+		Set<Integer> found = new HashSet<Integer>();
+		for(int cy = fromY; cy <= toY; cy++) {
+			for(int cx = fromX; cx <= toX; cx++) {
+				int cell = cy * cellsX + cx;
+				for(int e = cellOffsets[cell]; e < cellOffsets[cell+1]; e++) {
+					int i = entries[e];
+					if(!found.contains(i) && intersects(i, left, top, right, bottom)) {
+						found.add(i);
+					}
+				}
+			}
+		}
+
+		List<Integer> indexes = new ArrayList<Integer>(found);
+		Collections.sort(indexes);
+		for(int i : indexes) {
+			res.add(lines.get(i));
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the line nearest to the point.
+	 * @param x
+	 * @param y
+	 * @return Nearest line or null if the index is empty.
+	 */
+	public Line findNearest(int x, int y) {
+		return findNearest(x, y, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Returns the line nearest to the point, if it isn't further than {@code maxDistance}.
+	 * If more lines have the same distance, the first one of the original list is returned.
+	 * @param x
+	 * @param y
+	 * @param maxDistance Maximal distance of the line.
+	 * @return Nearest line or null.
+	 */
+	public Line findNearest(int x, int y, double maxDistance) {
+		int best = -1;
+		double bestDistance = maxDistance * maxDistance;
+		int cx = clampX(cellX(x));
+		int cy = clampY(cellY(y));
+		int maxRing = Math.max(cellsX, cellsY);
+
+		for(int ring = 0; ring <= maxRing && !lines.isEmpty(); ring++) {
+			//cells in the next ring are at least ring*cellSize far
+			double ringDistance = (double)(ring - 1) * cellSize;
+			if(ring > 0 && ringDistance * ringDistance > bestDistance) {
+				break;
+			}
+
+			for(int ry = cy - ring; ry <= cy + ring; ry++) {
+				if(ry < 0 || ry >= cellsY) {
+					continue;
+				}
+				boolean edge = ry == cy - ring || ry == cy + ring;
+				for(int rx = cx - ring; rx <= cx + ring; rx += edge ? 1 : 2 * ring) {
+					if(rx < 0 || rx >= cellsX) {
+						continue;
+					}
+					int cell = ry * cellsX + rx;
+					for(int e = cellOffsets[cell]; e < cellOffsets[cell+1]; e++) {
+						int i = entries[e];
+						double distance = distanceSq(i, x, y);
+						if(distance < bestDistance || (distance == bestDistance && best >= 0 && i < best)) {
+							best = i;
+							bestDistance = distance;
+						}
+					}
+				}
+			}
+		}
+
+		return best < 0 ? null : lines.get(best);
+	}
+
+	/**
+	 * Returns lines which have the start or the end point near the point.
+	 * @param x
+	 * @param y
+	 * @param tolerance Maximal distance of the end point.
+	 * @return Lines in the order of the original list.
+	 */
+	public List<Line> findByEndpoint(int x, int y, double tolerance) {
+		List<Line> res = new ArrayList<Line>();
+		int r = (int) Math.ceil(tolerance);
+		double toleranceSq = tolerance * tolerance;
+		for(Line line : findIntersecting(new Rectangle(x - r, y - r, 2 * r + 1, 2 * r + 1))) {
+			if(line.getStart().distanceSq(x, y) <= toleranceSq || line.getEnd().distanceSq(x, y) <= toleranceSq) {
+				res.add(line);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Returns lines which have the start or the end point near the point.
+	 * @see #findByEndpoint(int, int, double)
+	 */
+	public List<Line> findByEndpoint(Point point, double tolerance) {
+		return findByEndpoint(point.x, point.y, tolerance);
+	}
+
+	/**
+	 * Returns all lines of the index in the original order.
+	 * @return Unmodifiable list.
+	 */
+	public List<Line> getLines() {
+		return lines;
+	}
+
+	public int size() {
+		return lines.size();
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Returns range of cells of the row {@code cy} which the line passes through,
+	 * the first cell in the upper 32 bits, the last one in the lower 32 bits.
+	 */
+	private long cellRange(int i, int cy) {
+		double minX, maxX;
+		if(y1[i] == y2[i]) {
+			minX = Math.min(x1[i], x2[i]);
+			maxX = Math.max(x1[i], x2[i]);
+		} else {
+			//x of the line at the top and the bottom of the row, half of pixel added for rounding
+			double top = originY + (double)cy * cellSize - 0.5;
+			double bottom = top + cellSize + 1;
+			double t1 = Math.max(0, Math.min(1, (top - y1[i]) / (y2[i] - y1[i])));
+			double t2 = Math.max(0, Math.min(1, (bottom - y1[i]) / (y2[i] - y1[i])));
+			double a = x1[i] + t1 * (x2[i] - x1[i]);
+			double b = x1[i] + t2 * (x2[i] - x1[i]);
+			minX = Math.min(a, b) - 0.5;
+			maxX = Math.max(a, b) + 0.5;
+		}
+
+		int lineFrom = cellX(Math.min(x1[i], x2[i]));
+		int lineTo = cellX(Math.max(x1[i], x2[i]));
+		int from = Math.max(lineFrom, (int) Math.floor((minX - originX) / cellSize));
+		int to = Math.min(lineTo, (int) Math.floor((maxX - originX) / cellSize));
+		return ((long)from << 32) | (to & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Checks whether the line has a point inside of the rectangle, by clipping the line by the rectangle.
+	 */
+	private boolean intersects(int i, int left, int top, int right, int bottom) {
+		double dx = x2[i] - x1[i];
+		double dy = y2[i] - y1[i];
+		double[] p = {-dx, dx, -dy, dy};
+		double[] q = {x1[i] - left, right - x1[i], y1[i] - top, bottom - y1[i]};
+		double from = 0;
+		double to = 1;
+		for(int k = 0; k < 4; k++) {
+			if(p[k] == 0) {
+				if(q[k] < 0) {
+					return false;
+				}
+			} else {
+				double t = q[k] / p[k];
+				if(p[k] < 0) {
+					from = Math.max(from, t);
+				} else {
+					to = Math.min(to, t);
+				}
+			}
+		}
+		return from <= to;
+	}
+
+	/**
+	 * Returns square of the distance of the point from the line.
+	 */
+	private double distanceSq(int i, int x, int y) {
+		double dx = x2[i] - x1[i];
+		double dy = y2[i] - y1[i];
+		double length = dx * dx + dy * dy;
+		double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1[i]) * dx + (y - y1[i]) * dy) / length));
+		double px = x1[i] + t * dx - x;
+		double py = y1[i] + t * dy - y;
+		return px * px + py * py;
+	}
+
+	private int cellX(int x) {
+		return Math.floorDiv(x - originX, cellSize);
+	}
+
+	private int cellY(int y) {
+		return Math.floorDiv(y - originY, cellSize);
+	}
+
+	private int clampX(int cx) {
+		return Math.max(0, Math.min(cellsX - 1, cx));
+	}
+
+	private int clampY(int cy) {
+		return Math.max(0, Math.min(cellsY - 1, cy));
+	}
+}
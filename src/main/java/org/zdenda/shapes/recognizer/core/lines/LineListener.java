@@ -0,0 +1,17 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import org.zdenda.shapes.recognizer.core.Line;
+
+/**
+ * Receives lines from detectors which report lines as soon as they are found.
+ * @author Zdenda
+ *
+ */
+public interface LineListener {
+
+	/**
+	 * Called when the whole line is found.
+	 * @param line Found line.
+	 */
+	public void lineFound(Line line);
+}
@@ -0,0 +1,373 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.Polyline;
+
+/**
+ * <p>
+ * Post-processing of traced lines. Tracing stops whenever the line changes its direction too much, so one drawn line
+ * is often found as many short lines. This class joins lines whose end points are close:
+ * <ul>
+ * 	<li>{@code merge()} drops lines which lie along a longer line with a close end point (the detector traces
+ * 		the rest of the drawn line from every first point, so such lines are common) and joins lines going
+ * 		the same direction (up to {@code maxAngle}) to one line, as long as no joined end point is further
+ * 		than {@code maxDeviation} from the result.</li>
+ * 	<li>{@code assemble()} joins lines going any direction to polylines. Lines are joined only if their end points
+ * 		have no other close end point, so polylines end at crossings.</li>
+ * </ul>
+ * Close end points are found in {@code EndpointGrid}, so both methods take linear time in the number of lines
+ * (except long merged chains which are checked point by point).
+ * </p>
+ *
+ * <p>
+ * Merger is immutable and can be used by multiple threads at once.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class LineMerger {
+
+	private static final Logger logger = LogManager.getLogger(LineMerger.class);
+
+	/**
+	 * Default maximal distance of joined end points.
+	 */
+	public static final double DEFAULT_MAX_GAP = 2;
+
+	/**
+	 * Default maximal angle of merged lines in degrees.
+	 */
+	public static final double DEFAULT_MAX_ANGLE = 20;
+
+	/**
+	 * Default maximal distance of joined end points from the merged line.
+	 */
+	public static final double DEFAULT_MAX_DEVIATION = 1.5;
+
+	private final double maxGap;
+
+	/**
+	 * Cosine of the maximal angle.
+	 */
+	private final double minCos;
+
+	private final double maxDeviation;
+
+	/**
+	 * Creates merger with default parameters.
+	 */
+	public LineMerger() {
+		this(DEFAULT_MAX_GAP, DEFAULT_MAX_ANGLE, DEFAULT_MAX_DEVIATION);
+	}
+
+	/**
+	 * @param maxGap Maximal distance of joined end points, at least 0.
+	 * @param maxAngle Maximal angle of merged lines in degrees, from 0 to 90.
+	 * @param maxDeviation Maximal distance of joined end points from the merged line, at least 0.
+	 */
+	public LineMerger(double maxGap, double maxAngle, double maxDeviation) {
+		super();
+		if(!(maxGap >= 0)) {
+			throw new IllegalArgumentException("Invalid maximal gap: "+maxGap+"!");
+		}
+		if(!(maxAngle >= 0 && maxAngle <= 90)) {
+			throw new IllegalArgumentException("Invalid maximal angle: "+maxAngle+"!");
+		}
+		if(!(maxDeviation >= 0)) {
+			throw new IllegalArgumentException("Invalid maximal deviation: "+maxDeviation+"!");
+		}
+
+		this.maxGap = maxGap;
+		this.minCos = Math.cos(Math.toRadians(maxAngle));
+		this.maxDeviation = maxDeviation;
+	}
+
+	/**
+	 * Merges lines which continue each other in the same direction. Lines which aren't merged are returned as they are.
+	 * @param lines Lines, e.g. the result of {@code Lines.findLines()}.
+	 * @return Merged lines ordered by the first line of every merged chain or null if {@code lines} is null.
+	 */
+	public List<Line> merge(List<Line> lines) {
+		if(lines == null) {
+			logger.warn("Lines are null.");
+			return null;
+		}
+
+		int count = lines.size();
+		lines = removeCovered(lines);
+		EndpointGrid grid = new EndpointGrid(lines, maxGap);
+		int n = 2 * lines.size();
+
+		//the best candidate of every end point, joined only if the choice is mutual
+		int[] best = new int[n];
+		for(int e = 0; e < n; e++) {
+			best[e] = -1;
+			long bestDistance = Long.MAX_VALUE;
+			int found = grid.findNear(e);
+			for(int k = 0; k < found; k++) {
+				int f = grid.getFound(k);
+				long distance = grid.getFoundDistanceSq(k);
+				if((distance < bestDistance || (distance == bestDistance && f < best[e])) && isContinuation(grid, e, f)) {
+					best[e] = f;
+					bestDistance = distance;
+				}
+			}
+		}
+		int[] links = mutualLinks(best);
+
+		List<Line> res = new ArrayList<Line>();
+		PathBuffer points = new PathBuffer();
+		for(int[] chain : chains(links)) {
+			if(chain.length == 1) {
+				res.add(lines.get(chain[0] >>> 1));
+				continue;
+			}
+
+			chainPoints(grid, chain, points);
+			simplify(points, res);
+		}
+
+		logger.debug("{} lines merged to {} lines.", count, res.size());
+		return res;
+	}
+
+	/**
+	 * Joins lines with close end points to polylines. Every line is in exactly one polyline.
+	 * Lines should be merged by {@code merge()} first, so polylines have points only where their direction changes.
+	 * @param lines Lines.
+	 * @return Polylines ordered by their first lines or null if {@code lines} is null.
+	 */
+	public List<Polyline> assemble(List<Line> lines) {
+		if(lines == null) {
+			logger.warn("Lines are null.");
+			return null;
+		}
+
+		EndpointGrid grid = new EndpointGrid(lines, maxGap);
+		int n = 2 * lines.size();
+
+		//only end points with exactly one close end point are joined
+		int[] only = new int[n];
+		for(int e = 0; e < n; e++) {
+			only[e] = grid.findNear(e) == 1 ? grid.getFound(0) : -1;
+		}
+		int[] links = mutualLinks(only);
+
+		List<Polyline> res = new ArrayList<Polyline>();
+		PathBuffer points = new PathBuffer();
+		List<int[]> chains = chains(links);
+		for(int[] chain : chains) {
+			chainPoints(grid, chain, points);
+			boolean closed = chain.length > 1 && links[chain[chain.length - 1] ^ 1] == chain[0];
+
+			List<Point> polyline = new ArrayList<Point>(points.size());
+			for(int i = 0; i < points.size(); i++) {
+				polyline.add(new Point(points.getX(i), points.getY(i)));
+			}
+			if(closed && polyline.size() > 1) {
+				//the last point is the first point of the first line again
+				polyline.remove(polyline.size() - 1);
+			}
+			res.add(new Polyline(polyline, closed));
+		}
+
+		logger.debug("{} lines assembled to {} polylines.", lines.size(), res.size());
+		return res;
+	}
+
+	/**
+	 * Returns lines without lines which have an end point close to the end point of a longer line and the other
+	 * end point close to the longer line. Of two same lines the first one is kept.
+	 */
+	private List<Line> removeCovered(List<Line> lines) {
+		EndpointGrid grid = new EndpointGrid(lines, maxGap);
+		boolean[] covered = new boolean[lines.size()];
+		for(int e = 0; e < 2 * lines.size(); e++) {
+			int found = grid.findNear(e);
+			for(int k = 0; k < found; k++) {
+				int f = grid.getFound(k);
+				if(!covered[f >>> 1] && isShorter(grid, f, e)
+						&& distanceSq(grid, grid.xs[f ^ 1], grid.ys[f ^ 1], e) <= maxDeviation * maxDeviation) {
+					covered[f >>> 1] = true;
+				}
+			}
+		}
+
+		List<Line> res = new ArrayList<Line>(lines.size());
+		for(int i = 0; i < lines.size(); i++) {
+			if(!covered[i]) {
+				res.add(lines.get(i));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Checks whether the line of the end point {@code f} is shorter than the line of {@code e}, or has the same
+	 * length and is after it.
+	 */
+	private static boolean isShorter(EndpointGrid grid, int f, int e) {
+		long lf = lengthSq(grid, f);
+		long le = lengthSq(grid, e);
+		return lf < le || (lf == le && f > e);
+	}
+
+	private static long lengthSq(EndpointGrid grid, int e) {
+		long dx = grid.xs[e ^ 1] - grid.xs[e];
+		long dy = grid.ys[e ^ 1] - grid.ys[e];
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Returns square of the distance of the point from the line of the end point {@code e}.
+	 */
+	private static double distanceSq(EndpointGrid grid, int x, int y, int e) {
+		double x1 = grid.xs[e];
+		double y1 = grid.ys[e];
+		double dx = grid.xs[e ^ 1] - x1;
+		double dy = grid.ys[e ^ 1] - y1;
+		double lengthSq = dx * dx + dy * dy;
+		double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSq));
+		double ex = x - x1 - t * dx;
+		double ey = y - y1 - t * dy;
+		return ex * ex + ey * ey;
+	}
+
+	/**
+	 * Checks whether the line of the end point {@code f} continues the line of the end point {@code e}
+	 * in the same direction. Lines with only one point continue any line.
+	 */
+	private boolean isContinuation(EndpointGrid grid, int e, int f) {
+		//direction of the first line towards e, direction of the second line from f
+		double ax = grid.xs[e] - grid.xs[e ^ 1];
+		double ay = grid.ys[e] - grid.ys[e ^ 1];
+		double bx = grid.xs[f ^ 1] - grid.xs[f];
+		double by = grid.ys[f ^ 1] - grid.ys[f];
+		double lengths = Math.sqrt((ax * ax + ay * ay) * (bx * bx + by * by));
+		return lengths == 0 || ax * bx + ay * by >= minCos * lengths;
+	}
+
+	/**
+	 * Returns links between end points which chose each other, -1 for end points without link.
+	 */
+	private static int[] mutualLinks(int[] choices) {
+		int[] links = new int[choices.length];
+		for(int e = 0; e < choices.length; e++) {
+			int f = choices[e];
+			links[e] = f >= 0 && choices[f] == e ? f : -1;
+		}
+		return links;
+	}
+
+	/**
+	 * Splits lines to chains of linked lines. Chain is an array of end points where every line of the chain
+	 * is entered, the line {@code e/2} is left through the end point {@code e^1}. Open chains start on the first
+	 * line which has a free end point, closed chains on their first line.
+	 */
+	private static List<int[]> chains(int[] links) {
+		int n = links.length / 2;
+		boolean[] used = new boolean[n];
+		List<int[]> chains = new ArrayList<int[]>();
+
+		//open chains first, then the rest which are cycles
+		for(int pass = 0; pass < 2; pass++) {
+			for(int i = 0; i < n; i++) {
+				if(used[i]) {
+					continue;
+				}
+
+				int entry;
+				if(links[2*i] < 0) {
+					entry = 2*i;
+				} else if(links[2*i+1] < 0) {
+					entry = 2*i+1;
+				} else if(pass == 1) {
+					entry = 2*i;
+				} else {
+					continue;
+				}
+
+				//count lines of the chain, then store them
+				int length = 0;
+				for(int e = entry; e >= 0 && (length == 0 || e != entry); e = links[e ^ 1]) {
+					length++;
+				}
+				int[] chain = new int[length];
+				for(int k = 0, e = entry; k < length; k++, e = links[e ^ 1]) {
+					chain[k] = e;
+					used[e >>> 1] = true;
+				}
+				chains.add(chain);
+			}
+		}
+
+		//closed chains between open ones by their first lines
+		Collections.sort(chains, new Comparator<int[]>() {
+			public int compare(int[] c1, int[] c2) {
+				return Integer.compare(c1[0], c2[0]);
+			}
+		});
+		return chains;
+	}
+
+	/**
+	 * Stores points of the chain to the buffer: the entry point of the first line and the exit points of all lines.
+	 */
+	private static void chainPoints(EndpointGrid grid, int[] chain, PathBuffer points) {
+		points.clear();
+		points.add(grid.xs[chain[0]], grid.ys[chain[0]]);
+		for(int entry : chain) {
+			points.add(grid.xs[entry ^ 1], grid.ys[entry ^ 1]);
+		}
+	}
+
+	/**
+	 * Replaces points of the chain by the least number of lines, so no point is further than {@code maxDeviation}
+	 * from its line.
+	 */
+	private void simplify(PathBuffer points, List<Line> res) {
+		int from = 0;
+		int to = 1;
+		while(to < points.size()) {
+			int next = to + 1;
+			if(next < points.size() && fits(points, from, next)) {
+				to = next;
+				continue;
+			}
+
+			res.add(new Line(new Point(points.getX(from), points.getY(from)), new Point(points.getX(to), points.getY(to))));
+			from = to;
+			to = from + 1;
+		}
+	}
+
+	/**
+	 * Checks whether all points between {@code from} and {@code to} are close to the segment between them.
+	 */
+	private boolean fits(PathBuffer points, int from, int to) {
+		double x1 = points.getX(from);
+		double y1 = points.getY(from);
+		double dx = points.getX(to) - x1;
+		double dy = points.getY(to) - y1;
+		double lengthSq = dx * dx + dy * dy;
+		for(int i = from + 1; i < to; i++) {
+			double px = points.getX(i) - x1;
+			double py = points.getY(i) - y1;
+			double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSq));
+			double ex = px - t * dx;
+			double ey = py - t * dy;
+			if(ex * ex + ey * ey > maxDeviation * maxDeviation) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -1,20 +1,29 @@
 package org.zdenda.shapes.recognizer.core.lines;
 
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.zdenda.shapes.recognizer.core.AreaAroundPoint;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
 import org.zdenda.shapes.recognizer.core.Direction;
 import org.zdenda.shapes.recognizer.core.Line;
 import org.zdenda.shapes.recognizer.core.Pixel;
+import org.zdenda.shapes.recognizer.core.Polyline;
+import org.zdenda.shapes.recognizer.core.RunLengthBitmap;
+import org.zdenda.shapes.recognizer.core.components.Component;
+import org.zdenda.shapes.recognizer.core.components.ComponentLabeler;
 
 /**
  * Class containing methods to find lines in bitmap.
+ * Methods of this class can be called from multiple threads at once. Every call has its own {@code LineDetector},
+ * no state is kept between calls. Callers which search many bitmaps and want to reuse visited maps should use
+ * {@code LineDetector} with their own {@code BufferPool}.
+ * 
  * @author Zdenda
  *
  */
@@ -22,13 +31,6 @@ public class Lines {
 
 	protected static Logger logger = LogManager.getLogger(Lines.class);
 	
-	/**
-	 * Black points that were already visited.
-	 * Integer values is counted as a hash code of the coordinates.
-	 * 
-	 */
-	protected static Set<Integer> visitedPoints;
-	
 	/**
 	 * This method will try to find every line in a bitmap. If no line is found, empty list is returned.
 	 * If the bitmap is null or dimensions are invalid (one of dimensions is 0), null is returned.
@@ -53,42 +55,147 @@ public class Lines {
 			return null;
 		}
 		
-		visitedPoints = new HashSet<Integer>();
-		List<Line> lines = new ArrayList<Line>();
-		int w = bitmap[0].length;
-		int h = bitmap.length;
-		logger.debug("Finding lines in bitmap "+w+" x "+h);
+		return findLines(BitmapConverter.convertToBinaryBitmap(bitmap));
+	}
+	
+	/**
+	 * This method will try to find every line in a binary bitmap. If no line is found, empty list is returned.
+	 * If the bitmap is null or dimensions are invalid (one of dimensions is 0), null is returned.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with lines.
+	 */
+	public static List<Line> findLines(BinaryBitmap bitmap) {
+		return new LineDetector().findLines(bitmap);
+	}
+	
+	/**
+	 * Finds lines only in the region of the binary bitmap. The region is copied to a new bitmap first, so the cost
+	 * is proportional to the area of the region and lines end at its border. Lines have coordinates of the bitmap,
+	 * they are ordered by their first points and the search stops after {@code maxResults} lines.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @param region Region of the bitmap, clipped to the bitmap. If null, the whole bitmap is searched.
+	 * @param maxResults Maximal number of lines. Must be positive.
+	 * @return List with lines, empty if the region doesn't intersect the bitmap, or null if the bitmap is invalid.
+	 */
+	public static List<Line> findLines(BinaryBitmap bitmap, Rectangle region, int maxResults) {
+		if(!LineDetector.checkBitmap(bitmap)) {
+			return null;
+		}
+		if(region == null) {
+			return new LineDetector().findLines(bitmap, maxResults);
+		}
 		
+		BinaryBitmap cropped = bitmap.crop(region);
+		if(cropped.getWidth() == 0 || cropped.getHeight() == 0) {
+			return new ArrayList<Line>();
+		}
+		return translate(new LineDetector().findLines(cropped, maxResults), Math.max(region.x, 0), Math.max(region.y, 0));
+	}
+	
+	/**
+	 * Finds lines only in the region of the image. Only the region is converted (see
+	 * {@code BitmapConverter.convertToBinaryBitmap(BufferedImage, Rectangle, Binarizer)}), so the cost is proportional
+	 * to the area of the region. Lines have coordinates of the image, they are ordered by their first points and
+	 * the search stops after {@code maxResults} lines.
+	 * 
+	 * @param image Image on which search will be performed.
+	 * @param region Region of the image, clipped to the image. If null, the whole image is searched.
+	 * @param maxResults Maximal number of lines. Must be positive.
+	 * @return List with lines, empty if the region doesn't intersect the image, or null if the image is null.
+	 */
+	public static List<Line> findLines(BufferedImage image, Rectangle region, int maxResults) {
+		if(image == null) {
+			logger.warn("Image is null.");
+			return null;
+		}
 		
-		//this version works only with black & white (white as background) so the
-		//first point is first black pixel.
-		for(int i = 0; i < h; i++) {
-			for(int j = 0; j < w; j++) {
-				Pixel p = bitmap[i][j];
-				if(p == null) {
-					logger.warn("Pixel [{},{}] is null.",j,i);
-					continue;
-				}
-				
-				int hash = getCodeForCoordinates(j, i, p);
-				//first point must be black and not visited yet
-				if(p.isBlack() && !visitedPoints.contains(hash)) {
-					logger.debug("First point found at [{},{}].",j,i);
-					Point firstPoint = new Point(j, i);
-					visitedPoints.add(hash);
-					
-					Point secondPoint = findLineEnd(firstPoint, bitmap);
-					if(secondPoint == null) {
-						logger.warn("No second point found for point: {}.",firstPoint);
-						secondPoint = firstPoint;
-					}
-					lines.add(new Line(firstPoint, secondPoint));
-					
-				}
-			}
+		BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(image, region, null);
+		if(bitmap.getWidth() == 0 || bitmap.getHeight() == 0) {
+			return new ArrayList<Line>();
+		}
+		List<Line> lines = new LineDetector().findLines(bitmap, maxResults);
+		return region == null ? lines : translate(lines, Math.max(region.x, 0), Math.max(region.y, 0));
+	}
+	
+	/**
+	 * Finds every line in the binary bitmap by the Hough transform with default parameters ({@code HoughLineDetector}).
+	 * Unlike {@code findLines(BinaryBitmap)}, dashed and thick lines are found as one line.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with lines or null if the bitmap is invalid.
+	 */
+	public static List<Line> findLinesHough(BinaryBitmap bitmap) {
+		return new HoughLineDetector().findLines(bitmap);
+	}
+	
+	/**
+	 * Finds every line in the run length bitmap using {@code RunLengthLineDetector}. The result is the same
+	 * as the result of {@code findLines(BinaryBitmap)} for the same pixels.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with lines or null if the bitmap is invalid.
+	 */
+	public static List<Line> findLines(RunLengthBitmap bitmap) {
+		return new RunLengthLineDetector().findLines(bitmap);
+	}
+	
+	/**
+	 * Finds every line in the binary bitmap, ignoring connected components with less than {@code minComponentPixels}
+	 * pixels (noise). Components are found by {@code ComponentLabeler} first and lines are searched only inside of them.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @param minComponentPixels Minimal number of pixels of the component.
+	 * @return List with lines or null if the bitmap is invalid.
+	 */
+	public static List<Line> findLines(BinaryBitmap bitmap, long minComponentPixels) {
+		if(!LineDetector.checkBitmap(bitmap)) {
+			return null;
 		}
 		
-		return lines;
+		List<Component> components = ComponentLabeler.removeNoise(new ComponentLabeler().label(bitmap), minComponentPixels);
+		return new LineDetector().findLines(bitmap, components);
+	}
+	
+	/**
+	 * Finds every line in the binary bitmap like {@code findLines(BinaryBitmap)} and returns them
+	 * in the spatial index for range, nearest line and endpoint queries.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return Index of lines or null if the bitmap is invalid.
+	 */
+	public static LineIndex findLinesIndexed(BinaryBitmap bitmap) {
+		List<Line> lines = findLines(bitmap);
+		return lines == null ? null : new LineIndex(lines);
+	}
+	
+	/**
+	 * Finds every line in the binary bitmap like {@code findLines(BinaryBitmap)}, merges lines which continue
+	 * each other and joins connected lines to polylines by {@code LineMerger} with default parameters.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with polylines or null if the bitmap is invalid.
+	 */
+	public static List<Polyline> findPolylines(BinaryBitmap bitmap) {
+		List<Line> lines = findLines(bitmap);
+		if(lines == null) {
+			return null;
+		}
+		
+		LineMerger merger = new LineMerger();
+		return merger.assemble(merger.merge(lines));
+	}
+	
+	/**
+	 * Parallel version of {@code findLines(BinaryBitmap)}. Bitmap is split to horizontal bands
+	 * which are searched in the common fork/join pool. The result is the same as the result of sequential search.
+	 * 
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with lines.
+	 */
+	public static List<Line> findLinesParallel(BinaryBitmap bitmap) {
+		return new ParallelLineDetector().findLines(bitmap);
 	}
 	
 	/**
@@ -115,102 +222,55 @@ public class Lines {
 			return null;
 		}
 		
-		int w = bitmap[0].length;
-		int h = bitmap.length;
-		logger.debug("Finding line in bitmap "+w+" x "+h);
-		
-		visitedPoints = new HashSet<Integer>();
-		Point first = null;
-		
-		//find the first point
-		//this version works only with black & white (white as background) so the
-		//first point is first black pixel.
-		boolean stop = false;
-		for(int i = 0; i < h; i++) {
-			for(int j = 0; j < w; j++) {
-				Pixel p = bitmap[i][j];
-				if(p == null) {
-					logger.warn("Pixel [{},{}] is null.",j,i);
-					continue;
-				}
-				
-				int hash = getCodeForCoordinates(j, i, p);
-				//first point must be black and not visited yet
-				if(p.isBlack() && !visitedPoints.contains(hash)) {
-					logger.debug("First point found at [{},{}].",j,i);
-					first = new Point(j, i);
-					visitedPoints.add(hash);
-					stop = true;
-					break;
-				}
-			}
-			
-			if(stop) {
-				break;
-			}
-		}
-		
-		//if no first point of line is found, return empty array
-		if(first == null) {
-			logger.debug("No line found.");
-			return null;
-		}
-		
-		//get the end point of line
-		Point endPoint = findLineEnd(first, bitmap);
-		
-		if(endPoint == null) {
-			logger.warn("No end point found for the first point = "+first.toString());
-			endPoint = new Point(first);
-		}
-		
-		logger.debug("Line from: {} to: {} found.",first,endPoint);
-		return new Line(first, endPoint);
+		return findLine(BitmapConverter.convertToBinaryBitmap(bitmap));
 	}
 	
 	/**
-	 * This method will try to find the end of the line in bitmap.
-	 * If no other point besides the {@code firstPoint} is found, then
-	 * null is returned. {@code visitedPoints} must be initialized, before
-	 * calling this method.
+	 * This method will try to find a line in a binary bitmap. If line is found, then object representing this line is returned. 
+	 * Otherwise null is returned.
 	 * 
-	 * It is assumed that bitmap is checked for valid dimensions.
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return Two points representing the line or null.
+	 */
+	public static Line findLine(BinaryBitmap bitmap) {
+		return new LineDetector().findLine(bitmap);
+	}
+	
+	/**
+	 * Finds the first line in the region of the binary bitmap, see {@code findLines(BinaryBitmap, Rectangle, int)}.
 	 * 
-	 * @param firstPoint Starting point of the line.
 	 * @param bitmap Bitmap on which search will be performed.
-	 * @return
+	 * @param region Region of the bitmap. If null, the whole bitmap is searched.
+	 * @return The first line or null if there is no line or the bitmap is invalid.
 	 */
-	private static Point findLineEnd(Point firstPoint, Pixel[][] bitmap) {
-		
-		if(firstPoint == null) {
-			logger.warn("First point is null.");
-			return null;
-		}
-		
-		logger.debug("Finding the end point from starting point: {}",firstPoint);
-		
-		//find the next point a determine the direction of the line
-		Direction direction;
-		Point nextPoint = findNextPoint(firstPoint, bitmap, Direction.NONE);
-		if(nextPoint == null) {
-			logger.warn("No other point besides the first point found.");
-			return null;
-		}
-		direction = determineDirection(firstPoint, nextPoint);
-		logger.debug("The scond point is: {}, direction: {}.", nextPoint,direction);
-		
-		//continue with finding points in the current direction
-		Point lineEnd = nextPoint;
-		while(nextPoint != null) {
-			lineEnd = nextPoint; //last non-null point
-			int hash = getCodeForCoordinates(nextPoint.x, nextPoint.y, bitmap[nextPoint.y][nextPoint.x]);
-			visitedPoints.add(hash);
-
-			nextPoint = findNextPoint(nextPoint, bitmap, direction);
-			logger.trace("Next point is: {}.",nextPoint);
+	public static Line findLine(BinaryBitmap bitmap, Rectangle region) {
+		List<Line> lines = findLines(bitmap, region, 1);
+		return lines == null || lines.isEmpty() ? null : lines.get(0);
+	}
+	
+	/**
+	 * Finds the first line in the region of the image, see {@code findLines(BufferedImage, Rectangle, int)}.
+	 * 
+	 * @param image Image on which search will be performed.
+	 * @param region Region of the image. If null, the whole image is searched.
+	 * @return The first line or null if there is no line or the image is null.
+	 */
+	public static Line findLine(BufferedImage image, Rectangle region) {
+		List<Line> lines = findLines(image, region, 1);
+		return lines == null || lines.isEmpty() ? null : lines.get(0);
+	}
+	
+	/**
+	 * Moves lines found in the region to the coordinates of the whole bitmap.
+	 * @return The same list.
+	 */
+	private static List<Line> translate(List<Line> lines, int dx, int dy) {
+		for(Line line : lines) {
+			Point start = new Point(line.getStart().x + dx, line.getStart().y + dy);
+			line.setEnd(line.getEnd().equals(line.getStart()) ? start : new Point(line.getEnd().x + dx, line.getEnd().y + dy));
+			line.setStart(start);
 		}
-		
-		return lineEnd;
+		return lines;
 	}
 	
 	/**
@@ -226,47 +286,64 @@ public class Lines {
 	 * @return Next point.
 	 */
 	public static Point findNextPoint(Point curPoint, Pixel[][] bitmap, Direction direction) {
-		logger.trace("Finding next point from: {} in direction: {}",curPoint, direction);
+		if(logger.isTraceEnabled()) {
+			logger.trace("Finding next point from: {} in direction: {}",curPoint, direction);
+		}
 		int w = bitmap[0].length;
 		int h = bitmap.length;
+		int[] dx = Neighbours.DX[direction.getVal()];
+		int[] dy = Neighbours.DY[direction.getVal()];
 		
-		if(direction == Direction.NONE) {
-			//go through all points around the curPoint
-			AreaAroundPoint pointsAround = new AreaAroundPoint(curPoint);
-			while(pointsAround.hasNext()) {
-				Point next = pointsAround.next();
-				if(next.x < 0 || next.x >= w || next.y < 0 || next.y >= h) {
-					continue;
-				}
-				
-				logger.trace("Checking point: {}.",next);
-				if(bitmap[next.y][next.x].isBlack()) {
-					logger.trace("Next point found: {}.",next);
-					return next;
-				}
+		for(int i = 0; i < dx.length; i++) {
+			int x = curPoint.x + dx[i];
+			int y = curPoint.y + dy[i];
+			if(x < 0 || x >= w || y < 0 || y >= h) {
+				continue;
 			}
-		} else {
-			//iterate through points and try to find out next point
-			AreaAroundPoint pointsAround = new AreaAroundPoint(curPoint, direction);
-			while(pointsAround.hasNext()) {
-				Point next = pointsAround.next();
-				if(next.x < 0 || next.x >= w || next.y < 0 || next.y >= h) {
-					continue;
-				}
-				
-				logger.trace("Checking point: {}.",next);
-				if(bitmap[next.y][next.x].isBlack()) {
-					logger.trace("Next point found: {}", next);
-					return next;
+			
+			if(bitmap[y][x].isBlack()) {
+				Point next = new Point(x, y);
+				if(logger.isTraceEnabled()) {
+					logger.trace("Next point found: {}.",next);
 				}
+				return next;
 			}
 		}
 		
-		
-		logger.warn("No next point found.");
+		logger.trace("No next point found.");
 		return null;
 	}
 	
+	/**
+	 * Tries to find the next line point in the 3x3 area around the current point.
+	 * Actual area is determined by direction parameter.
+	 * 
+	 * If no point is found, null is returned. Bitmap is expected to have been checked
+	 * for valid dimensions.
+	 * 
+	 * @param curPoint Current point.
+	 * @param bitmap Binary bitmap.
+	 * @param direction Direction of line. If NONE is used, whole 3x3 area will be searched for the next point. 
+	 * @return Next point.
+	 */
+	public static Point findNextPoint(Point curPoint, BinaryBitmap bitmap, Direction direction) {
+		if(logger.isTraceEnabled()) {
+			logger.trace("Finding next point from: {} in direction: {}",curPoint, direction);
+		}
+		
+		int next = Neighbours.find(bitmap, curPoint.x, curPoint.y, direction.getVal());
+		if(next < 0) {
+			logger.trace("No next point found.");
+			return null;
+		}
+		
+		Point nextPoint = new Point(curPoint.x + Neighbours.DX[direction.getVal()][next], curPoint.y + Neighbours.DY[direction.getVal()][next]);
+		if(logger.isTraceEnabled()) {
+			logger.trace("Next point found: {}.",nextPoint);
+		}
+		return nextPoint;
+	}
+	
 	/**
 	 * Determines the direction from the first point to the second point. Y coordinate is expected to get bigger
 	 * from top to bottom.
@@ -321,20 +398,4 @@ public class Lines {
 			}
 		}
 	}
-	
-	/**
-	 * Returns the hash code for pixel. This code also counts the coordinates of pixel.
-	 * @param x X value.
-	 * @param y Y value.
-	 * @param p Pixel, null safe.
-	 * @return Hash code.
-	 */
-	private static int getCodeForCoordinates(int x, int y, Pixel p) {
-		int code = 7;
-		code = code * 71 + x;
-		code = code * 71 + y;
-		code = code * 71 + (p == null ? 0 : p.hashCode());
-		
-		return code;
-	}
 }
@@ -0,0 +1,82 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.Direction;
+
+/**
+ * <p>
+ * Precomputed tables of neighbours checked when searching for the next point of a line. Every direction
+ * has its own list of neighbours in the same order as {@code AreaAroundPoint} iterates them:
+ * for the direction d it's d, d-1, d+1, for NONE it's the whole 3x3 area from E clockwise to N.
+ * </p>
+ * 
+ * <p>
+ * Tables are indexed by the value of the direction and contain primitive offsets, so the search
+ * doesn't create any objects.
+ * </p>
+ * @author Zdenda
+ *
+ */
+final class Neighbours {
+
+	/**
+	 * Neighbour directions for every direction.
+	 */
+	static final Direction[][] DIRECTIONS = new Direction[Direction.MAX_VAL + 1][];
+	
+	/**
+	 * X offsets of the neighbours.
+	 */
+	static final int[][] DX = new int[Direction.MAX_VAL + 1][];
+	
+	/**
+	 * Y offsets of the neighbours.
+	 */
+	static final int[][] DY = new int[Direction.MAX_VAL + 1][];
+	
+	static {
+		DIRECTIONS[Direction.NONE.getVal()] = new Direction[] {Direction.E, Direction.SE, Direction.S, Direction.SW, Direction.W, Direction.NW, Direction.N};
+		for(Direction direction : Direction.values()) {
+			if(direction != Direction.NONE) {
+				DIRECTIONS[direction.getVal()] = new Direction[] {direction, direction.previousDirection(), direction.nextDirection()};
+			}
+		}
+		
+		for(int i = 0; i < DIRECTIONS.length; i++) {
+			DX[i] = new int[DIRECTIONS[i].length];
+			DY[i] = new int[DIRECTIONS[i].length];
+			for(int j = 0; j < DIRECTIONS[i].length; j++) {
+				DX[i][j] = DIRECTIONS[i][j].getDx();
+				DY[i][j] = DIRECTIONS[i][j].getDy();
+			}
+		}
+	}
+	
+	private Neighbours() {
+	}
+	
+	/**
+	 * Finds the first black neighbour of the point [x,y] for the direction.
+	 * @param bitmap Bitmap.
+	 * @param x X coordinate of the current point.
+	 * @param y Y coordinate of the current point.
+	 * @param direction Value of the direction.
+	 * @return Index of the neighbour in the tables of the direction or -1 if no black neighbour exists.
+	 */
+	static int find(BinaryBitmap bitmap, int x, int y, int direction) {
+		int[] dx = DX[direction];
+		int[] dy = DY[direction];
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		
+		for(int i = 0; i < dx.length; i++) {
+			int nx = x + dx[i];
+			int ny = y + dy[i];
+			if(nx >= 0 && nx < w && ny >= 0 && ny < h && bitmap.isBlack(nx, ny)) {
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+}
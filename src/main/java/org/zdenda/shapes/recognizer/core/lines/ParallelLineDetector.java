@@ -0,0 +1,321 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.Line;
+
+/**
+ * <p>
+ * Line detector which splits the bitmap into horizontal bands and searches them in parallel
+ * on {@code ForkJoinPool}. The result is the same as the result of {@code LineDetector.findLines()},
+ * including the order of lines (lines are ordered by their first point, row by row).
+ * </p>
+ *
+ * <p>
+ * The search has two phases:
+ * <ol>
+ * 	<li>Every band is searched independently. Lines which start in the band are traced through the whole
+ * 		bitmap and all their points are recorded.</li>
+ * 	<li>Bands are stitched together in order. Line found in the band is accepted if its first point wasn't visited
+ * 		by lines from previous bands, otherwise it's dropped (it's a part of line crossing the band boundary)
+ * 		and its points in the band become candidates for the first point of a new line.</li>
+ * </ol>
+ * The second phase only re-traces lines which start on the points of dropped lines, which are rare.
+ * </p>
+ *
+ * <p>
+ * One detector can be used by multiple threads at once.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class ParallelLineDetector implements LineDetectionEngine {
+
+	private static final Logger logger = LogManager.getLogger(ParallelLineDetector.class);
+
+	/**
+	 * Default minimal number of rows in one band.
+	 */
+	public static final int DEFAULT_MIN_BAND_HEIGHT = 64;
+
+	/**
+	 * Number of bands per one thread, more bands make the load more balanced.
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+
+	/**
+	 * Pool used to search the bands.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Minimal number of rows in one band.
+	 */
+	private final int minBandHeight;
+
+	/**
+	 * Creates detector which searches the bands in the common fork/join pool.
+	 */
+	public ParallelLineDetector() {
+		this(ForkJoinPool.commonPool(), DEFAULT_MIN_BAND_HEIGHT);
+	}
+
+	/**
+	 * Creates detector which will use existing pool. The pool is owned by the caller, detector never shuts it down.
+	 * @param pool Pool used for the search. If null, exception is thrown.
+	 * @param minBandHeight Minimal number of rows in one band. Must be positive.
+	 */
+	public ParallelLineDetector(ForkJoinPool pool, int minBandHeight) {
+		super();
+		if(pool == null) {
+			throw new IllegalArgumentException("Pool can't be null!");
+		}
+		if(minBandHeight < 1) {
+			throw new IllegalArgumentException("Band height must be positive!");
+		}
+
+		this.pool = pool;
+		this.minBandHeight = minBandHeight;
+	}
+
+	/**
+	 * This method will try to find every line in a binary bitmap. If no line is found, empty list is returned.
+	 * If the bitmap is null or dimensions are invalid (one of dimensions is 0), null is returned.
+	 *
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with lines.
+	 */
+	@Override
+	public List<Line> findLines(BinaryBitmap bitmap) {
+		if(!LineDetector.checkBitmap(bitmap)) {
+			return null;
+		}
+
+		long start = System.nanoTime();
+		int h = bitmap.getHeight();
+		int bandCount = Math.max(1, Math.min(pool.getParallelism() * BANDS_PER_THREAD, h / minBandHeight));
+		int bandHeight = (h + bandCount - 1) / bandCount;
+		bandCount = (h + bandHeight - 1) / bandHeight;
+		logger.debug("Finding lines in bitmap {} x {} using {} bands.", bitmap.getWidth(), h, bandCount);
+
+		//phase 1 - search every band on its own
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		List<BandLine>[] bands = new List[bandCount];
+		pool.invoke(new BandSearch(bitmap, bands, bandHeight, 0, bandCount));
+
+		//phase 2 - stitch the bands together
+		VisitedMap visitedPoints = new VisitedMap(bitmap.getWidth(), h);
+		List<Line> lines = new ArrayList<Line>();
+		for(int i = 0; i < bandCount; i++) {
+			int bandStart = i * bandHeight;
+			stitchBand(bitmap, bands[i], bandStart, Math.min(h, bandStart + bandHeight), visitedPoints, lines);
+			bands[i] = null;
+		}
+
+		if(logger.isDebugEnabled()) {
+			logger.debug("Search finished: {}.", new DetectionStatistics(visitedPoints.countVisited(), lines.size(), System.nanoTime() - start));
+		}
+		return lines;
+	}
+
+	/**
+	 * Searches lines which start in the band. Only the start points are checked against visited points,
+	 * so the points of lines are marked only if they lie in the band.
+	 *
+	 * @param bitmap Bitmap.
+	 * @param bandStart First row of the band.
+	 * @param bandEnd Row after the last row of the band.
+	 * @return Lines found in the band, ordered by their first points.
+	 */
+	static List<BandLine> searchBand(BinaryBitmap bitmap, int bandStart, int bandEnd) {
+		int w = bitmap.getWidth();
+		VisitedMap visitedPoints = new VisitedMap(w, bandEnd - bandStart);
+		PathBuffer path = new PathBuffer();
+		List<BandLine> lines = new ArrayList<BandLine>();
+
+		for(long first = LineDetector.findStart(bitmap, visitedPoints, bandStart, 0, bandStart, bandEnd); first != LineDetector.NO_POINT; ) {
+			int j = LineDetector.unpackX(first);
+			int i = LineDetector.unpackY(first);
+			visitedPoints.visit(j, i - bandStart);
+			BandLine line = traceLine(bitmap, j, i, path);
+			for(int k = 0; k < path.size(); k++) {
+				int y = path.getY(k);
+				if(y >= bandStart && y < bandEnd) {
+					visitedPoints.visit(path.getX(k), y - bandStart);
+				}
+			}
+			lines.add(line);
+			first = LineDetector.findStart(bitmap, visitedPoints, bandStart, j + 1, i, bandEnd);
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Adds lines of the band to the result. Lines which start on already visited point are dropped
+	 * and their points are searched for the start of new lines.
+	 *
+	 * @param bitmap Bitmap.
+	 * @param bandLines Lines found in the band in phase 1.
+	 * @param bandStart First row of the band.
+	 * @param bandEnd Row after the last row of the band.
+	 * @param visitedPoints Points visited by already accepted lines.
+	 * @param lines Result.
+	 */
+	private void stitchBand(BinaryBitmap bitmap, List<BandLine> bandLines, int bandStart, int bandEnd, VisitedMap visitedPoints, List<Line> lines) {
+		long w = bitmap.getWidth();
+
+		//points of dropped lines which may become first points, as raster indexes
+		PriorityQueue<Long> orphans = new PriorityQueue<Long>();
+		PathBuffer path = new PathBuffer();
+		int next = 0;
+		while(next < bandLines.size() || !orphans.isEmpty()) {
+			BandLine candidate = next < bandLines.size() ? bandLines.get(next) : null;
+			long candidateIndex = candidate == null ? Long.MAX_VALUE : candidate.startY * w + candidate.startX;
+
+			if(!orphans.isEmpty() && orphans.peek() < candidateIndex) {
+				long index = orphans.poll();
+				int x = (int)(index % w);
+				int y = (int)(index / w);
+				if(visitedPoints.isVisited(x, y)) {
+					continue;
+				}
+
+				if(logger.isTraceEnabled()) {
+					logger.trace("New first point found at [{},{}] while stitching.", x, y);
+				}
+				BandLine line = traceLine(bitmap, x, y, path);
+				acceptLine(line, visitedPoints, lines);
+				continue;
+			}
+
+			next++;
+			if(visitedPoints.isVisited(candidate.startX, candidate.startY)) {
+				//line started on the point of the line from previous band
+				if(logger.isTraceEnabled()) {
+					logger.trace("Line from [{},{}] dropped while stitching.", candidate.startX, candidate.startY);
+				}
+				for(int k = 0; k < candidate.path.length; k += 2) {
+					int x = candidate.path[k];
+					int y = candidate.path[k+1];
+					long index = y * w + x;
+					if(y >= bandStart && y < bandEnd && index > candidateIndex && !visitedPoints.isVisited(x, y)) {
+						orphans.add(index);
+					}
+				}
+			} else {
+				acceptLine(candidate, visitedPoints, lines);
+			}
+		}
+	}
+
+	/**
+	 * Marks the line as visited and adds it to result.
+	 */
+	private static void acceptLine(BandLine line, VisitedMap visitedPoints, List<Line> lines) {
+		visitedPoints.visit(line.startX, line.startY);
+		for(int k = 0; k < line.path.length; k += 2) {
+			visitedPoints.visit(line.path[k], line.path[k+1]);
+		}
+		lines.add(line.toLine());
+	}
+
+	/**
+	 * Traces the line from [x,y] and records its points.
+	 * @param bitmap Bitmap.
+	 * @param x X of the first point.
+	 * @param y Y of the first point.
+	 * @param path Buffer used to record points, will be cleared.
+	 * @return Traced line.
+	 */
+	private static BandLine traceLine(BinaryBitmap bitmap, int x, int y, PathBuffer path) {
+		path.clear();
+		long end = LineDetector.findLineEnd(x, y, bitmap, null, path);
+		if(end == LineDetector.NO_POINT) {
+			end = LineDetector.pack(x, y);
+		}
+
+		return new BandLine(x, y, end, path.toArray());
+	}
+
+	/**
+	 * Line found during the search of one band.
+	 */
+	static class BandLine {
+
+		final int startX;
+
+		final int startY;
+
+		/**
+		 * Packed end point.
+		 */
+		final long end;
+
+		/**
+		 * Points of the line except the first one as [x0,y0,x1,y1,...].
+		 */
+		final int[] path;
+
+		BandLine(int startX, int startY, long end, int[] path) {
+			this.startX = startX;
+			this.startY = startY;
+			this.end = end;
+			this.path = path;
+		}
+
+		Line toLine() {
+			Point start = new Point(startX, startY);
+			int endX = LineDetector.unpackX(end);
+			int endY = LineDetector.unpackY(end);
+			return new Line(start, endX == startX && endY == startY ? start : new Point(endX, endY));
+		}
+	}
+
+	/**
+	 * Task which searches range of bands, splitting the range until only one band is left.
+	 */
+	private static class BandSearch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final BinaryBitmap bitmap;
+
+		private final List<BandLine>[] results;
+
+		private final int bandHeight;
+
+		private final int from;
+
+		private final int to;
+
+		BandSearch(BinaryBitmap bitmap, List<BandLine>[] results, int bandHeight, int from, int to) {
+			this.bitmap = bitmap;
+			this.results = results;
+			this.bandHeight = bandHeight;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from == 1) {
+				int bandStart = from * bandHeight;
+				results[from] = searchBand(bitmap, bandStart, Math.min(bitmap.getHeight(), bandStart + bandHeight));
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new BandSearch(bitmap, results, bandHeight, from, middle),
+					new BandSearch(bitmap, results, bandHeight, middle, to));
+		}
+	}
+}
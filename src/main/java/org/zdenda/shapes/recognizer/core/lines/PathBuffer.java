@@ -0,0 +1,75 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of points stored as primitive [x,y] pairs. Used to record pixels of traced line.
+ * @author Zdenda
+ *
+ */
+class PathBuffer {
+
+	/**
+	 * Coordinates, x of the point i is at 2*i, y at 2*i+1.
+	 */
+	private int[] coordinates;
+
+	/**
+	 * Number of stored points.
+	 */
+	private int size;
+
+	public PathBuffer() {
+		this(16);
+	}
+
+	/**
+	 * @param capacity Initial number of points the buffer can hold.
+	 */
+	public PathBuffer(int capacity) {
+		coordinates = new int[Math.max(2, 2*capacity)];
+		size = 0;
+	}
+
+	/**
+	 * Appends the point [x,y] to the end of the buffer.
+	 * @param x
+	 * @param y
+	 */
+	public void add(int x, int y) {
+		if(2*size + 2 > coordinates.length) {
+			coordinates = Arrays.copyOf(coordinates, 2*coordinates.length);
+		}
+
+		coordinates[2*size] = x;
+		coordinates[2*size+1] = y;
+		size++;
+	}
+
+	public int getX(int i) {
+		return coordinates[2*i];
+	}
+
+	public int getY(int i) {
+		return coordinates[2*i+1];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all points. Allocated memory is kept.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns copy of the stored coordinates as [x0,y0,x1,y1,...] array.
+	 * @return
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(coordinates, 2*size);
+	}
+}
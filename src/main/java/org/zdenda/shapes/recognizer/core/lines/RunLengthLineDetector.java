@@ -0,0 +1,244 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.Direction;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.RunLengthBitmap;
+
+/**
+ * <p>
+ * Object which searches for lines in run length bitmaps. The search gives the same lines as
+ * {@code LineDetector.findLines()}, but only runs of black pixels are visited: empty rows are skipped,
+ * horizontal parts of lines are passed in one step and visited pixels are stored with one bit per
+ * black pixel (by ink index). Both memory and time depend on the amount of ink, not on the size of the image.
+ * </p>
+ *
+ * <p>
+ * One detector must not be used by multiple threads at once, but every thread can use its own detector.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class RunLengthLineDetector {
+
+	private static final Logger logger = LogManager.getLogger(RunLengthLineDetector.class);
+
+	/**
+	 * Visited black pixels, bit per ink index. Reused by the following searches.
+	 */
+	private long[] visited = new long[0];
+
+	/**
+	 * Last run found in every row. Lines found one after another pass the rows at near positions,
+	 * so the runs around the hint are checked before the binary search.
+	 */
+	private int[] rowHints = new int[0];
+
+	/**
+	 * Statistics of the last search.
+	 */
+	private DetectionStatistics lastStatistics = DetectionStatistics.EMPTY;
+
+	/**
+	 * This method will try to find every line in a run length bitmap. If no line is found, empty list is returned.
+	 * If the bitmap is null or dimensions are invalid (one of dimensions is 0), null is returned.
+	 *
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return List with lines.
+	 */
+	public List<Line> findLines(RunLengthBitmap bitmap) {
+		if(bitmap == null) {
+			logger.warn("Bitmap is null.");
+			return null;
+		}
+		if(bitmap.getWidth() == 0 || bitmap.getHeight() == 0) {
+			logger.warn("Invalid dimensions of bitmap: {}x{}.", bitmap.getWidth(), bitmap.getHeight());
+			return null;
+		}
+
+		long start = System.nanoTime();
+		prepareVisited(bitmap.countBlack());
+		if(rowHints.length < bitmap.getHeight()) {
+			rowHints = new int[bitmap.getHeight()];
+		}
+		for(int y = 0; y < bitmap.getHeight(); y++) {
+			rowHints[y] = bitmap.getRowStart(y);
+		}
+		List<Line> lines = new ArrayList<Line>();
+		logger.debug("Finding lines in {}.", bitmap);
+
+		for(int y = 0; y < bitmap.getHeight(); y++) {
+			int rowStart = bitmap.getRowStart(y);
+			int rowEnd = bitmap.getRowEnd(y);
+			if(rowStart == rowEnd) {
+				continue;
+			}
+
+			//first points are the not visited black pixels of the row, ink of the row is searched at once
+			int inkEnd = bitmap.getInkIndex(rowEnd - 1, bitmap.getRunEnd(rowEnd - 1));
+			int ink = bitmap.getInkIndex(rowStart, bitmap.getRunStart(rowStart));
+			int r = rowStart;
+			while((ink = nextUnvisited(ink, inkEnd)) >= 0) {
+				while(bitmap.getInkIndex(r, bitmap.getRunEnd(r)) <= ink) {
+					r++;
+				}
+				visit(ink);
+				lines.add(traceLine(bitmap, bitmap.getRunStart(r) + ink - bitmap.getInkIndex(r, bitmap.getRunStart(r)), y));
+				ink++;
+			}
+		}
+
+		lastStatistics = new DetectionStatistics(bitmap.countBlack(), lines.size(), System.nanoTime() - start);
+		logger.debug("Search finished: {}.", lastStatistics);
+		return lines;
+	}
+
+	/**
+	 * Returns statistics of the last search made by this detector. Scanned pixels are the black pixels only.
+	 * @return
+	 */
+	public DetectionStatistics getLastStatistics() {
+		return lastStatistics;
+	}
+
+	/**
+	 * Traces the line from the first point, the same way as {@code LineDetector.findLineEnd()}.
+	 * Steps to the east or west along a run jump to the end of the run at once.
+	 */
+	private Line traceLine(RunLengthBitmap bitmap, int firstX, int firstY) {
+		Point first = new Point(firstX, firstY);
+		int next = findNext(bitmap, firstX, firstY, Direction.NONE.getVal());
+		if(next < 0) {
+			return new Line(first, first);
+		}
+
+		int none = Direction.NONE.getVal();
+		Direction direction = Neighbours.DIRECTIONS[none][next & 7];
+		int x = firstX + Neighbours.DX[none][next & 7];
+		int y = firstY + Neighbours.DY[none][next & 7];
+		int run = next >>> 3;
+		int[] dx = Neighbours.DX[direction.getVal()];
+		int[] dy = Neighbours.DY[direction.getVal()];
+
+		while(true) {
+			visit(bitmap.getInkIndex(run, x));
+
+			//the first candidate is the direction itself, follow the run to its end
+			if(direction == Direction.E && x + 1 < bitmap.getRunEnd(run)) {
+				int last = bitmap.getRunEnd(run) - 1;
+				visitRange(bitmap.getInkIndex(run, x + 1), bitmap.getInkIndex(run, last) + 1);
+				x = last;
+			} else if(direction == Direction.W && x - 1 >= bitmap.getRunStart(run)) {
+				int last = bitmap.getRunStart(run);
+				visitRange(bitmap.getInkIndex(run, last), bitmap.getInkIndex(run, x));
+				x = last;
+			}
+
+			next = findNext(bitmap, x, y, direction.getVal());
+			if(next < 0) {
+				break;
+			}
+			x += dx[next & 7];
+			y += dy[next & 7];
+			run = next >>> 3;
+		}
+
+		return new Line(first, new Point(x, y));
+	}
+
+	/**
+	 * Finds the next point of the line among neighbours checked for the direction.
+	 * @return Index of the neighbour in lower 3 bits and index of its run in the other bits or -1 if there is no next point.
+	 */
+	private int findNext(RunLengthBitmap bitmap, int x, int y, int direction) {
+		int[] dx = Neighbours.DX[direction];
+		int[] dy = Neighbours.DY[direction];
+		for(int i = 0; i < dx.length; i++) {
+			int nx = x + dx[i];
+			int ny = y + dy[i];
+			if(!bitmap.isInside(nx, ny)) {
+				continue;
+			}
+
+			int run = findRun(bitmap, nx, ny);
+			if(run >= 0) {
+				return (run << 3) | i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the run which contains the pixel or -1. Runs next to the hint of the row are checked first.
+	 */
+	private int findRun(RunLengthBitmap bitmap, int x, int y) {
+		int hint = rowHints[y];
+		int rowStart = bitmap.getRowStart(y);
+		int rowEnd = bitmap.getRowEnd(y);
+		for(int r = Math.max(rowStart, hint - 1); r <= hint + 1 && r < rowEnd; r++) {
+			if(bitmap.getRunStart(r) <= x && x < bitmap.getRunEnd(r)) {
+				rowHints[y] = r;
+				return r;
+			}
+		}
+
+		int run = bitmap.findRun(x, y);
+		if(run >= 0) {
+			rowHints[y] = run;
+		}
+		return run;
+	}
+
+	/**
+	 * Returns cleared visited bits for the given number of black pixels.
+	 */
+	private void prepareVisited(int ink) {
+		int words = (ink + 63) >>> 6;
+		if(visited.length < words) {
+			visited = new long[words];
+		} else {
+			Arrays.fill(visited, 0, words, 0L);
+		}
+	}
+
+	private void visit(int ink) {
+		visited[ink >>> 6] |= 1L << ink;
+	}
+
+	/**
+	 * Marks ink indexes from {@code from} (inclusive) to {@code to} (exclusive) as visited.
+	 */
+	private void visitRange(int from, int to) {
+		for(int i = from; i < to; ) {
+			int bit = i & 63;
+			int count = Math.min(64 - bit, to - i);
+			long mask = count == 64 ? -1L : ((1L << count) - 1) << bit;
+			visited[i >>> 6] |= mask;
+			i += count;
+		}
+	}
+
+	/**
+	 * Returns the first not visited ink index from {@code from} (inclusive) to {@code to} (exclusive) or -1.
+	 */
+	private int nextUnvisited(int from, int to) {
+		int i = from;
+		while(i < to) {
+			long free = ~visited[i >>> 6] & (-1L << i);
+			if(free != 0) {
+				int found = (i & ~63) + Long.numberOfTrailingZeros(free);
+				return found < to ? found : -1;
+			}
+			i = (i & ~63) + 64;
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,476 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.Direction;
+import org.zdenda.shapes.recognizer.core.Line;
+
+/**
+ * <p>
+ * Line detector which consumes the bitmap row by row and keeps only a sliding window of the last rows in memory,
+ * so the memory depends on the width of the image and the size of the window, not on the height of the image.
+ * Lines are reported to the {@code LineListener} as soon as they are finished.
+ * </p>
+ *
+ * <p>
+ * The search works the same way as {@code LineDetector.findLines()}: rows are searched for the first points
+ * in order, but a row is searched only when {@code windowRows/2} rows below it have been received. Lines going down
+ * wait for the next rows. Rows which have already left the window are considered white, so the result is the same as
+ * the result of {@code LineDetector.findLines()} as long as no line goes back up by more than half of the window.
+ * Lines are reported in the order in which they are finished, not by their first points.
+ * </p>
+ *
+ * <p>
+ * One detector is used for one image by one thread.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class StreamingLineDetector {
+
+	private static final Logger logger = LogManager.getLogger(StreamingLineDetector.class);
+
+	/**
+	 * Number of rows read at once by {@code detect()} from images with easy random access.
+	 */
+	public static final int DEFAULT_STRIP_ROWS = 256;
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * Number of words per row.
+	 */
+	private final int stride;
+
+	/**
+	 * Number of rows kept in memory.
+	 */
+	private final int windowRows;
+
+	/**
+	 * Number of rows which must be received below the row, before the row is searched for first points.
+	 */
+	private final int lookahead;
+
+	/**
+	 * Rows in the window, the row y is stored from the index {@code (y % windowRows) * stride}.
+	 */
+	private final long[] rows;
+
+	/**
+	 * Visited points of rows in the window, the same layout as {@code rows}.
+	 */
+	private final long[] visited;
+
+	/**
+	 * Mask of valid bits in the last word of every row.
+	 */
+	private final long lastWordMask;
+
+	private final LineListener listener;
+
+	/**
+	 * Lines waiting for the next rows.
+	 */
+	private final List<OpenLine> openLines;
+
+	/**
+	 * Number of received rows.
+	 */
+	private int received;
+
+	/**
+	 * Number of rows searched for the first points.
+	 */
+	private int scanned;
+
+	/**
+	 * Temporary row used by {@code pushRow(int[])}.
+	 */
+	private long[] rowBuffer;
+
+	/**
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @param windowRows Number of rows kept in memory, at least 2.
+	 * @param listener Listener for found lines. If null, exception is thrown.
+	 */
+	public StreamingLineDetector(int width, int height, int windowRows, LineListener listener) {
+		super();
+		if(width < 0 || height < 0) {
+			throw new IllegalArgumentException("Invalid dimensions of image: "+width+"x"+height+"!");
+		}
+		if(windowRows < 2) {
+			throw new IllegalArgumentException("Window must have at least 2 rows!");
+		}
+		if(listener == null) {
+			throw new IllegalArgumentException("Listener can't be null!");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.stride = BinaryBitmap.strideFor(width);
+		this.windowRows = windowRows;
+		this.lookahead = windowRows / 2;
+		this.rows = new long[windowRows * stride];
+		this.visited = new long[windowRows * stride];
+		this.lastWordMask = (width & 63) == 0 ? -1L : (1L << width) - 1;
+		this.listener = listener;
+		this.openLines = new ArrayList<OpenLine>();
+		this.received = 0;
+		this.scanned = 0;
+	}
+
+	/**
+	 * Adds the next row of the image.
+	 * @param words Words of the row in the {@code BinaryBitmap} format.
+	 * @param offset Index of the first word of the row in {@code words}.
+	 */
+	public void pushRow(long[] words, int offset) {
+		if(received >= height) {
+			throw new IllegalStateException("All "+height+" rows were already pushed!");
+		}
+
+		if(stride > 0) {
+			int base = (received % windowRows) * stride;
+			System.arraycopy(words, offset, rows, base, stride);
+			rows[base + stride - 1] &= lastWordMask;
+			Arrays.fill(visited, base, base + stride, 0L);
+		}
+		received++;
+
+		process();
+	}
+
+	/**
+	 * Adds the next row of the image.
+	 * @param rgb Colors of pixels, only black (0x000000) pixels are considered as line points, alpha is ignored.
+	 */
+	public void pushRow(int[] rgb) {
+		if(rowBuffer == null) {
+			rowBuffer = new long[stride];
+		} else {
+			Arrays.fill(rowBuffer, 0L);
+		}
+
+		for(int x = 0; x < width; x++) {
+			if((rgb[x] & 0x00FFFFFF) == 0) {
+				rowBuffer[x >>> 6] |= 1L << x;
+			}
+		}
+		pushRow(rowBuffer, 0);
+	}
+
+	/**
+	 * Finishes the search after all rows were pushed. Every remaining line is reported.
+	 */
+	public void finish() {
+		if(received < height) {
+			throw new IllegalStateException("Only "+received+" of "+height+" rows were pushed!");
+		}
+
+		process();
+		logger.debug("Streaming search of {}x{} bitmap finished.", width, height);
+	}
+
+	/**
+	 * Reads the image from the stream and reports all lines in it to the listener. The image is decoded only once:
+	 * <ul>
+	 * 	<li>Formats with easy random access (e.g. BMP, TIFF) are read in strips of {@code DEFAULT_STRIP_ROWS} rows,
+	 * 		only one strip of the image and the window of the detector are kept in memory.</li>
+	 * 	<li>Other formats (e.g. PNG, JPEG) are decoded by one read. Rows are pushed to the detector as soon as
+	 * 		the reader reports them, so the search runs along with the decoding, but the decoded image is kept
+	 * 		in memory.</li>
+	 * 	<li>Interlaced and progressive images are searched after they are decoded, because their rows are
+	 * 		finished only by the last pass.</li>
+	 * </ul>
+	 *
+	 * @param input Stream with the image.
+	 * @param windowRows Number of rows kept by the detector.
+	 * @param listener Listener for found lines.
+	 * @throws IOException If the image can't be read.
+	 */
+	public static void detect(ImageInputStream input, int windowRows, LineListener listener) throws IOException {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+		if(!readers.hasNext()) {
+			throw new IOException("Unsupported image format.");
+		}
+
+		ImageReader reader = readers.next();
+		try {
+			//metadata tells the number of passes
+			reader.setInput(input, true, false);
+			int w = reader.getWidth(0);
+			int h = reader.getHeight(0);
+			StreamingLineDetector detector = new StreamingLineDetector(w, h, windowRows, listener);
+
+			if(reader.isRandomAccessEasy(0)) {
+				ImageReadParam param = reader.getDefaultReadParam();
+				for(int y = 0; y < h; y += DEFAULT_STRIP_ROWS) {
+					int stripRows = Math.min(DEFAULT_STRIP_ROWS, h - y);
+					param.setSourceRegion(new Rectangle(0, y, w, stripRows));
+					detector.pushRows(reader.read(0, param), 0, stripRows);
+				}
+			} else {
+				RowPusher pusher = new RowPusher(detector);
+				if(getPasses(reader) == 1) {
+					reader.addIIOReadUpdateListener(pusher);
+				}
+				BufferedImage image = reader.read(0);
+				detector.pushRows(image, pusher.pushed, h);
+			}
+
+			detector.finish();
+		} finally {
+			reader.dispose();
+		}
+	}
+
+	/**
+	 * Returns number of passes in which the image is decoded, 1 if the format doesn't tell it.
+	 */
+	private static int getPasses(ImageReader reader) throws IOException {
+		IIOMetadata metadata = reader.getImageMetadata(0);
+		if(metadata == null || !metadata.isStandardMetadataFormatSupported()) {
+			return 1;
+		}
+
+		Node root = metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName);
+		NodeList scans = ((Element) root).getElementsByTagName("NumProgressiveScans");
+		if(scans.getLength() == 0) {
+			return 1;
+		}
+		try {
+			return Integer.parseInt(((Element) scans.item(0)).getAttribute("value"));
+		} catch (NumberFormatException e) {
+			//unknown number of passes, search the image after decoding
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Pushes rows {@code [from,to)} of the image, converted to binary bitmap.
+	 */
+	private void pushRows(BufferedImage image, int from, int to) {
+		if(from >= to) {
+			return;
+		}
+
+		BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(image.getSubimage(0, from, width, to - from));
+		for(int i = 0; i < to - from; i++) {
+			pushRow(bitmap.getWords(), i * bitmap.getStride());
+		}
+	}
+
+	/**
+	 * Continues lines waiting for rows and searches rows which have enough rows below them.
+	 */
+	private void process() {
+		Iterator<OpenLine> it = openLines.iterator();
+		while(it.hasNext()) {
+			if(advance(it.next())) {
+				it.remove();
+			}
+		}
+
+		int scanLimit = received == height ? height : received - lookahead;
+		while(scanned < scanLimit) {
+			scanRow(scanned);
+			scanned++;
+		}
+	}
+
+	/**
+	 * Searches the row for first points of new lines.
+	 * @param y Row.
+	 */
+	private void scanRow(int y) {
+		int base = (y % windowRows) * stride;
+		for(int x = 0; x < width; x++) {
+			long bit = 1L << x;
+			int index = base + (x >>> 6);
+			if((rows[index] & bit) != 0 && (visited[index] & bit) == 0) {
+				visited[index] |= bit;
+				if(logger.isTraceEnabled()) {
+					logger.trace("First point found at [{},{}].", x, y);
+				}
+				OpenLine line = new OpenLine(x, y);
+				if(!advance(line)) {
+					openLines.add(line);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Follows the line as far as the received rows allow.
+	 * @param line Line.
+	 * @return True if the line is finished and was reported.
+	 */
+	private boolean advance(OpenLine line) {
+		while(true) {
+			Direction move = step(line);
+			if(move == null) {
+				return false;
+			}
+
+			if(move == Direction.NONE) {
+				Point start = new Point(line.startX, line.startY);
+				Point end = line.x == line.startX && line.y == line.startY ? start : new Point(line.x, line.y);
+				listener.lineFound(new Line(start, end));
+				return true;
+			}
+
+			if(line.direction == Direction.NONE) {
+				line.direction = move;
+			}
+			visited[(line.y % windowRows) * stride + (line.x >>> 6)] |= 1L << line.x;
+		}
+	}
+
+	/**
+	 * Moves the line to the next point.
+	 * @param line Line.
+	 * @return Direction of the move, NONE if there is no next point or null if the next row is needed.
+	 */
+	private Direction step(OpenLine line) {
+		int oldestRow = received - windowRows;
+		Direction[] candidates = Neighbours.DIRECTIONS[line.direction.getVal()];
+		int[] dx = Neighbours.DX[line.direction.getVal()];
+		int[] dy = Neighbours.DY[line.direction.getVal()];
+		for(int i = 0; i < candidates.length; i++) {
+			int x = line.x + dx[i];
+			int y = line.y + dy[i];
+			if(x < 0 || x >= width || y < 0 || y >= height) {
+				continue;
+			}
+
+			if(y >= received) {
+				return null;
+			}
+
+			//rows out of the window are white
+			if(y < oldestRow) {
+				continue;
+			}
+
+			if((rows[(y % windowRows) * stride + (x >>> 6)] & (1L << x)) != 0) {
+				line.x = x;
+				line.y = y;
+				return candidates[i];
+			}
+		}
+
+		return Direction.NONE;
+	}
+
+	/**
+	 * Line which isn't finished yet.
+	 */
+	private static class OpenLine {
+
+		final int startX;
+
+		final int startY;
+
+		/**
+		 * Current point.
+		 */
+		int x;
+
+		int y;
+
+		/**
+		 * Direction of the line, NONE until the second point is found.
+		 */
+		Direction direction;
+
+		OpenLine(int startX, int startY) {
+			this.startX = startX;
+			this.startY = startY;
+			this.x = startX;
+			this.y = startY;
+			this.direction = Direction.NONE;
+		}
+	}
+
+	/**
+	 * Pushes rows of the image being decoded to the detector. Rows are pushed only while the reader reports
+	 * whole rows in order, the rest of the image is pushed after the read.
+	 */
+	private static class RowPusher implements IIOReadUpdateListener {
+
+		private final StreamingLineDetector detector;
+
+		/**
+		 * Number of pushed rows.
+		 */
+		private int pushed;
+
+		/**
+		 * False after an update which can't be pushed.
+		 */
+		private boolean inOrder = true;
+
+		RowPusher(StreamingLineDetector detector) {
+			this.detector = detector;
+		}
+
+		public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY, int width, int height,
+				int periodX, int periodY, int[] bands) {
+			if(!inOrder) {
+				return;
+			}
+			if(minX != 0 || width != detector.width || periodX != 1 || periodY != 1 || minY > pushed) {
+				inOrder = false;
+				return;
+			}
+
+			int end = Math.min(minY + height, detector.height);
+			detector.pushRows(theImage, pushed, end);
+			pushed = Math.max(pushed, end);
+		}
+
+		public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass,
+				int minX, int minY, int periodX, int periodY, int[] bands) {
+		}
+
+		public void passComplete(ImageReader source, BufferedImage theImage) {
+		}
+
+		public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass,
+				int maxPass, int minX, int minY, int periodX, int periodY, int[] bands) {
+		}
+
+		public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY, int width,
+				int height, int periodX, int periodY, int[] bands) {
+		}
+
+		public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+		}
+	}
+}
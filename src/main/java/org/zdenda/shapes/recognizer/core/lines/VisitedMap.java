@@ -0,0 +1,146 @@
+package org.zdenda.shapes.recognizer.core.lines;
+
+import java.util.Arrays;
+
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+
+/**
+ * <p>
+ * Set of already visited pixels. One bit is used for every pixel of the bitmap, so the lookups
+ * are exact (no collisions) and no objects are created during the search.
+ * </p>
+ *
+ * <p>
+ * Bits are laid out the same way as in the {@code BinaryBitmap}, so the word {@code i} of the row {@code y}
+ * covers the same pixels in both structures.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class VisitedMap {
+
+	private final int width;
+
+	private final int height;
+
+	/**
+	 * Number of words per row.
+	 */
+	private final int stride;
+
+	private final long[] words;
+
+	/**
+	 * Creates a new map with no visited pixels.
+	 * @param width Width of the searched bitmap.
+	 * @param height Height of the searched bitmap.
+	 */
+	public VisitedMap(int width, int height) {
+		super();
+		if(width < 0 || height < 0) {
+			throw new IllegalArgumentException("Invalid dimensions of visited map: "+width+"x"+height+"!");
+		}
+
+		long size = (long)BinaryBitmap.strideFor(width) * height;
+		if(size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Visited map "+width+"x"+height+" is too big!");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.stride = BinaryBitmap.strideFor(width);
+		this.words = new long[(int)size];
+	}
+
+	/**
+	 * Creates a map which stores visited pixels in the words, e.g. taken from {@code BufferPool}.
+	 * Content of the words is kept, use {@code clear()} to start a new search.
+	 * @param width Width of the searched bitmap.
+	 * @param height Height of the searched bitmap.
+	 * @param words Array of {@code BinaryBitmap.strideFor(width)*height} words.
+	 */
+	VisitedMap(int width, int height, long[] words) {
+		super();
+		if(width < 0 || height < 0 || words.length != (long)BinaryBitmap.strideFor(width) * height) {
+			throw new IllegalArgumentException("Invalid dimensions of visited map: "+width+"x"+height+"!");
+		}
+
+		this.width = width;
+		this.height = height;
+		this.stride = BinaryBitmap.strideFor(width);
+		this.words = words;
+	}
+
+	/**
+	 * Returns true if the pixel at [x,y] was visited. Coordinates are expected to be inside the map.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @return
+	 */
+	public boolean isVisited(int x, int y) {
+		return (words[y*stride + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Marks the pixel at [x,y] as visited. Coordinates are expected to be inside the map.
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 */
+	public void visit(int x, int y) {
+		words[y*stride + (x >>> 6)] |= 1L << x;
+	}
+
+	/**
+	 * Returns the word of the row {@code y} with the pixels from {@code wordIndex*64} to {@code wordIndex*64+63}.
+	 * @param y Row.
+	 * @param wordIndex Index of the word within the row.
+	 * @return
+	 */
+	public long getWord(int y, int wordIndex) {
+		return words[y*stride + wordIndex];
+	}
+
+	/**
+	 * Returns the number of visited pixels.
+	 * @return
+	 */
+	public long countVisited() {
+		long count = 0;
+		for(long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Marks every pixel as not visited.
+	 */
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * Returns true if this map can be used for the bitmap with specified dimensions.
+	 * @param width Width of the bitmap.
+	 * @param height Height of the bitmap.
+	 * @return
+	 */
+	public boolean fits(int width, int height) {
+		return this.width == width && this.height == height;
+	}
+
+	/**
+	 * Returns words of the map, see {@code VisitedMap(int, int, long[])}.
+	 */
+	long[] getWords() {
+		return words;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+}
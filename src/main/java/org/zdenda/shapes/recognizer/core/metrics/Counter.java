@@ -0,0 +1,49 @@
+package org.zdenda.shapes.recognizer.core.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter which can be incremented by multiple threads at once without contention.
+ * @author Zdenda
+ *
+ */
+public class Counter {
+
+	private final String name;
+
+	private final LongAdder value = new LongAdder();
+
+	public Counter(String name) {
+		super();
+		if(name == null) {
+			throw new IllegalArgumentException("Name can't be null!");
+		}
+
+		this.name = name;
+	}
+
+	public void increment() {
+		value.increment();
+	}
+
+	public void add(long amount) {
+		value.add(amount);
+	}
+
+	public long get() {
+		return value.sum();
+	}
+
+	public void reset() {
+		value.reset();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "Counter [name=" + name + ", value=" + get() + "]";
+	}
+}
@@ -0,0 +1,125 @@
+package org.zdenda.shapes.recognizer.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Histogram of non-negative values (latencies in nanoseconds, sizes in bytes) with buckets of powers of two.
+ * Bucket {@code b} holds values from {@code 2^(b-1)} to {@code 2^b - 1}, bucket 0 holds only 0. Recording is
+ * one array increment and no objects are created, percentiles are accurate to a factor of two.
+ * </p>
+ *
+ * <p>
+ * Histogram can be used by multiple threads at once. Values read while other threads record may not be consistent
+ * with each other.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class Histogram {
+
+	private static final int BUCKETS = Long.SIZE;
+
+	private final String name;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public Histogram(String name) {
+		super();
+		if(name == null) {
+			throw new IllegalArgumentException("Name can't be null!");
+		}
+
+		this.name = name;
+	}
+
+	/**
+	 * Records the value. Negative values are recorded as 0.
+	 * @param value Value.
+	 */
+	public void record(long value) {
+		if(value < 0) {
+			value = 0;
+		}
+
+		buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+		count.increment();
+		sum.add(value);
+		long current;
+		while(value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			//retry
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0 : (double) getSum() / n;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket which contains the percentile, at most the maximal value.
+	 * @param percentile Percentile from 0 to 100.
+	 * @return Value or 0 if there are no values.
+	 */
+	public long getPercentile(double percentile) {
+		if(!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("Invalid percentile: "+percentile+"!");
+		}
+
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for(int b = 0; b < BUCKETS; b++) {
+			counts[b] = buckets.get(b);
+			total += counts[b];
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for(int b = 0; b < BUCKETS; b++) {
+			seen += counts[b];
+			if(seen >= rank) {
+				long upper = b == 0 ? 0 : (1L << b) - 1;
+				return Math.min(upper, getMax());
+			}
+		}
+		return 0;
+	}
+
+	public void reset() {
+		for(int b = 0; b < BUCKETS; b++) {
+			buckets.set(b, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "Histogram [name=" + name + ", count=" + getCount() + ", mean=" + getMean() + ", max=" + getMax() + "]";
+	}
+}
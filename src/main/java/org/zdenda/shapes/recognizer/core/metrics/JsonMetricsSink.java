@@ -0,0 +1,73 @@
+package org.zdenda.shapes.recognizer.core.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Sink which writes metrics as JSON (see {@code Metrics.toJson()}) to the file or to the stream.
+ * The file is overwritten by every report.
+ * @author Zdenda
+ *
+ */
+public class JsonMetricsSink implements MetricsSink {
+
+	private static final Logger logger = LogManager.getLogger(JsonMetricsSink.class);
+
+	private final File file;
+
+	private final PrintStream out;
+
+	/**
+	 * @param file File to write. If null, exception is thrown.
+	 */
+	public JsonMetricsSink(File file) {
+		super();
+		if(file == null) {
+			throw new IllegalArgumentException("File can't be null!");
+		}
+
+		this.file = file;
+		this.out = null;
+	}
+
+	/**
+	 * @param out Stream to print. If null, exception is thrown.
+	 */
+	public JsonMetricsSink(PrintStream out) {
+		super();
+		if(out == null) {
+			throw new IllegalArgumentException("Stream can't be null!");
+		}
+
+		this.file = null;
+		this.out = out;
+	}
+
+	public void report(Collection<Counter> counters, Collection<Histogram> histograms) {
+		String json = Metrics.toJson(counters, histograms);
+		if(out != null) {
+			out.println(json);
+			return;
+		}
+
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+			try {
+				writer.write(json);
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			logger.error("Error writing metrics to "+file.getPath()+".", e);
+		}
+	}
+}
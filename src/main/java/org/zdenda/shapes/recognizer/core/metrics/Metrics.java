@@ -0,0 +1,282 @@
+package org.zdenda.shapes.recognizer.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * <p>
+ * Metrics of the recognition pipeline. Metrics are disabled by default. Instrumented code reads {@code isEnabled()}
+ * once per image or per search and skips all measuring if it's false, so the cost of disabled metrics
+ * is one volatile read.
+ * </p>
+ *
+ * <p>
+ * Metrics of the pipeline:
+ * <ul>
+ * 	<li>{@code decode.nanos} - reading the image file by ImageIO.</li>
+ * 	<li>{@code convert.nanos} - converting the image to {@code BinaryBitmap}.</li>
+ * 	<li>{@code cache.load.nanos} - loading the bitmap from {@code BitmapCache}.</li>
+ * 	<li>{@code scan.nanos} - searching for the first points of lines by {@code LineDetector}.</li>
+ * 	<li>{@code trace.nanos} - tracing lines from their first points by {@code LineDetector}.</li>
+ * 	<li>{@code decode.allocatedBytes}, {@code recognize.allocatedBytes} - bytes allocated by the thread
+ * 		while decoding or recognizing one image, if the JVM can measure it.</li>
+ * 	<li>{@code images}, {@code pixels.scanned}, {@code lines.found} - counters.</li>
+ * </ul>
+ * Times and sizes are histograms with one value per image. Other metrics can be added by {@code counter()}
+ * and {@code histogram()}.
+ * </p>
+ *
+ * <p>
+ * Values are sent to sinks by {@code report()} and can be read through JMX after {@code registerMBean()}.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class Metrics {
+
+	private static final Logger logger = LogManager.getLogger(Metrics.class);
+
+	/**
+	 * Name of the MBean registered by {@code registerMBean()}.
+	 */
+	public static final String OBJECT_NAME = "org.zdenda.shapes:type=Metrics";
+
+	private static final ConcurrentMap<String, Counter> counters = new ConcurrentSkipListMap<String, Counter>();
+
+	private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+
+	private static final List<MetricsSink> sinks = new CopyOnWriteArrayList<MetricsSink>();
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	private static volatile boolean enabled;
+
+	public static final Histogram DECODE_TIME = histogram("decode.nanos");
+
+	public static final Histogram CONVERT_TIME = histogram("convert.nanos");
+
+	public static final Histogram CACHE_LOAD_TIME = histogram("cache.load.nanos");
+
+	public static final Histogram SCAN_TIME = histogram("scan.nanos");
+
+	public static final Histogram TRACE_TIME = histogram("trace.nanos");
+
+	public static final Histogram DECODE_ALLOCATION = histogram("decode.allocatedBytes");
+
+	public static final Histogram RECOGNITION_ALLOCATION = histogram("recognize.allocatedBytes");
+
+	public static final Counter IMAGES = counter("images");
+
+	public static final Counter PIXELS_SCANNED = counter("pixels.scanned");
+
+	public static final Counter LINES_FOUND = counter("lines.found");
+
+	private Metrics() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+
+	/**
+	 * Returns the counter with the name, new counter is created if it doesn't exist.
+	 * @param name Name of the counter.
+	 * @return
+	 */
+	public static Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if(counter == null) {
+			Counter created = new Counter(name);
+			counter = counters.putIfAbsent(name, created);
+			if(counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Returns the histogram with the name, new histogram is created if it doesn't exist.
+	 * @param name Name of the histogram.
+	 * @return
+	 */
+	public static Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if(histogram == null) {
+			Histogram created = new Histogram(name);
+			histogram = histograms.putIfAbsent(name, created);
+			if(histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns number of bytes allocated by the current thread so far.
+	 * @return Number of bytes or -1 if the JVM can't measure it.
+	 */
+	public static long allocatedBytes() {
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Records bytes allocated by the current thread since {@code start}, if both values are known.
+	 * @param histogram Histogram.
+	 * @param start Result of {@code allocatedBytes()} at the start of the measured code.
+	 */
+	public static void recordAllocation(Histogram histogram, long start) {
+		long end = allocatedBytes();
+		if(start >= 0 && end >= start) {
+			histogram.record(end - start);
+		}
+	}
+
+	/**
+	 * Sets every metric to zero.
+	 */
+	public static void reset() {
+		for(Counter counter : counters.values()) {
+			counter.reset();
+		}
+		for(Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	public static void addSink(MetricsSink sink) {
+		if(sink == null) {
+			throw new IllegalArgumentException("Sink can't be null!");
+		}
+		sinks.add(sink);
+	}
+
+	public static void removeSink(MetricsSink sink) {
+		sinks.remove(sink);
+	}
+
+	/**
+	 * Sends current values to all sinks.
+	 */
+	public static void report() {
+		Collection<Counter> counterValues = new ArrayList<Counter>(counters.values());
+		Collection<Histogram> histogramValues = new ArrayList<Histogram>(histograms.values());
+		for(MetricsSink sink : sinks) {
+			try {
+				sink.report(counterValues, histogramValues);
+			} catch (RuntimeException e) {
+				logger.error("Error reporting metrics to "+sink+".", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns all metrics as JSON object, see {@code toJson(Collection, Collection)}.
+	 * @return
+	 */
+	public static String toJson() {
+		return toJson(counters.values(), histograms.values());
+	}
+
+	/**
+	 * Returns metrics as JSON object
+	 * {@code {"counters":{"name":value,...},"histograms":{"name":{"count":N,"sum":S,"mean":M,"max":X,"p50":P,"p90":P,"p99":P},...}}}.
+	 * Percentiles are upper bounds of the buckets.
+	 * @param counters Counters.
+	 * @param histograms Histograms.
+	 * @return
+	 */
+	public static String toJson(Collection<Counter> counters, Collection<Histogram> histograms) {
+		StringBuilder sb = new StringBuilder("{\"counters\":{");
+		String separator = "";
+		for(Counter counter : counters) {
+			sb.append(separator).append('"').append(counter.getName()).append("\":").append(counter.get());
+			separator = ",";
+		}
+
+		sb.append("},\"histograms\":{");
+		separator = "";
+		for(Histogram histogram : histograms) {
+			sb.append(separator).append('"').append(histogram.getName()).append("\":{\"count\":").append(histogram.getCount())
+				.append(",\"sum\":").append(histogram.getSum())
+				.append(",\"mean\":").append(String.format(Locale.ROOT, "%.1f", histogram.getMean()))
+				.append(",\"max\":").append(histogram.getMax())
+				.append(",\"p50\":").append(histogram.getPercentile(50))
+				.append(",\"p90\":").append(histogram.getPercentile(90))
+				.append(",\"p99\":").append(histogram.getPercentile(99)).append('}');
+			separator = ",";
+		}
+		return sb.append("}}").toString();
+	}
+
+	/**
+	 * Registers {@code MetricsMXBean} in the platform MBean server as {@code OBJECT_NAME}.
+	 * Nothing is done if it's already registered.
+	 * @return False if the registration failed.
+	 */
+	public static boolean registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Management(), new ObjectName(OBJECT_NAME));
+			logger.debug("Metrics registered as {}.", OBJECT_NAME);
+		} catch (InstanceAlreadyExistsException e) {
+			logger.debug("Metrics are already registered.");
+		} catch (JMException e) {
+			logger.warn("Metrics couldn't be registered: {}.", e.toString());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Implementation of the MBean.
+	 */
+	private static class Management implements MetricsMXBean {
+
+		public boolean isEnabled() {
+			return Metrics.isEnabled();
+		}
+
+		public void setEnabled(boolean enabled) {
+			Metrics.setEnabled(enabled);
+		}
+
+		public Map<String, Long> getCounters() {
+			Map<String, Long> values = new LinkedHashMap<String, Long>();
+			for(Counter counter : counters.values()) {
+				values.put(counter.getName(), counter.get());
+			}
+			return values;
+		}
+
+		public String getJson() {
+			return Metrics.toJson();
+		}
+
+		public void reset() {
+			Metrics.reset();
+		}
+	}
+}
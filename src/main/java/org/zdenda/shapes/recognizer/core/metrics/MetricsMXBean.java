@@ -0,0 +1,29 @@
+package org.zdenda.shapes.recognizer.core.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@code Metrics}, registered as {@code Metrics.OBJECT_NAME}.
+ * @author Zdenda
+ *
+ */
+public interface MetricsMXBean {
+
+	public boolean isEnabled();
+
+	public void setEnabled(boolean enabled);
+
+	/**
+	 * Returns values of all counters.
+	 * @return
+	 */
+	public Map<String, Long> getCounters();
+
+	/**
+	 * Returns all metrics in the format of {@code Metrics.toJson()}.
+	 * @return
+	 */
+	public String getJson();
+
+	public void reset();
+}
@@ -0,0 +1,18 @@
+package org.zdenda.shapes.recognizer.core.metrics;
+
+import java.util.Collection;
+
+/**
+ * Receiver of the metrics reported by {@code Metrics.report()}, e.g. a file or a monitoring system.
+ * @author Zdenda
+ *
+ */
+public interface MetricsSink {
+
+	/**
+	 * Reports current values of the metrics.
+	 * @param counters All counters ordered by their names.
+	 * @param histograms All histograms ordered by their names.
+	 */
+	public void report(Collection<Counter> counters, Collection<Histogram> histograms);
+}
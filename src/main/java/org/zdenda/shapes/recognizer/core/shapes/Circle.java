@@ -0,0 +1,80 @@
+package org.zdenda.shapes.recognizer.core.shapes;
+
+import java.awt.Rectangle;
+
+/**
+ * Circle fitted to the pixels of a curve. Coordinates are in pixels, center of the pixel [x,y] is [x,y].
+ * @author Zdenda
+ *
+ */
+public class Circle extends RecognizedShape {
+
+	private final double centerX;
+
+	private final double centerY;
+
+	private final double radius;
+
+	/**
+	 * Root mean square of distances of the pixels from the circle.
+	 */
+	private final double error;
+
+	/**
+	 * @param centerX X of the center.
+	 * @param centerY Y of the center.
+	 * @param radius Radius, must be positive.
+	 * @param error Root mean square of distances of the fitted pixels from the circle.
+	 */
+	public Circle(double centerX, double centerY, double radius, double error) {
+		super(ShapeType.CIRCLE);
+		if(!(radius > 0)) {
+			throw new IllegalArgumentException("Invalid radius: "+radius+"!");
+		}
+
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.radius = radius;
+		this.error = error;
+	}
+
+	public double getCenterX() {
+		return centerX;
+	}
+
+	public double getCenterY() {
+		return centerY;
+	}
+
+	public double getRadius() {
+		return radius;
+	}
+
+	public double getError() {
+		return error;
+	}
+
+	/**
+	 * Returns distance of the point from the circle.
+	 * @param x X of the point.
+	 * @param y Y of the point.
+	 * @return
+	 */
+	public double distance(double x, double y) {
+		return Math.abs(Math.hypot(x - centerX, y - centerY) - radius);
+	}
+
+	@Override
+	public Rectangle getBounds() {
+		int minX = (int) Math.round(centerX - radius);
+		int minY = (int) Math.round(centerY - radius);
+		int maxX = (int) Math.round(centerX + radius);
+		int maxY = (int) Math.round(centerY + radius);
+		return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Circle [center=[%.1f,%.1f], radius=%.1f, error=%.2f]", centerX, centerY, radius, error);
+	}
+}
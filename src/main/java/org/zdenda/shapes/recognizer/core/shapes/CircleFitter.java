@@ -0,0 +1,115 @@
+package org.zdenda.shapes.recognizer.core.shapes;
+
+import org.zdenda.shapes.recognizer.core.components.Component;
+
+/**
+ * <p>
+ * Algebraic (Kåsa) circle fit. The circle {@code x^2 + y^2 + Dx + Ey + F = 0} is found by linear least squares,
+ * so the fit needs only one pass over the pixels to sum their moments and one 3x3 system.
+ * The second pass measures distances of the pixels from the circle and their angular coverage.
+ * </p>
+ *
+ * <p>
+ * The fitter is immutable and can be used by multiple threads at once.
+ * </p>
+ * @author Zdenda
+ *
+ */
+class CircleFitter {
+
+	/**
+	 * Number of sectors used to check that the pixels go around the whole circle.
+	 */
+	private static final int SECTORS = 16;
+
+	/**
+	 * Minimal number of sectors with a pixel, so circles with small gaps are accepted.
+	 */
+	private static final int MIN_SECTORS = 14;
+
+	private final int minRadius;
+
+	private final double maxError;
+
+	private final double maxRelativeError;
+
+	/**
+	 * @param minRadius Minimal radius of the circle.
+	 * @param maxError Maximal root mean square of distances of pixels from the circle in pixels.
+	 * @param maxRelativeError Maximal root mean square of distances relative to the radius, used for large circles.
+	 */
+	CircleFitter(int minRadius, double maxError, double maxRelativeError) {
+		this.minRadius = minRadius;
+		this.maxError = maxError;
+		this.maxRelativeError = maxRelativeError;
+	}
+
+	/**
+	 * Fits circle to the pixels of the component.
+	 * @param component Component.
+	 * @return Circle or null if the pixels don't form a circle.
+	 */
+	Circle fit(Component component) {
+		if(component.getMaxX() - component.getMinX() < 2 * minRadius || component.getMaxY() - component.getMinY() < 2 * minRadius) {
+			return null;
+		}
+
+		//moments relative to the center of bounds, so the sums stay small
+		double originX = (component.getMinX() + component.getMaxX()) / 2.0;
+		double originY = (component.getMinY() + component.getMaxY()) / 2.0;
+		double n = 0, sx = 0, sy = 0, sxx = 0, syy = 0, sxy = 0, sxz = 0, syz = 0, sz = 0;
+		for(int r = 0; r < component.getRunCount(); r++) {
+			double y = component.getRunY(r) - originY;
+			for(int px = component.getRunStart(r); px < component.getRunEnd(r); px++) {
+				double x = px - originX;
+				double z = x * x + y * y;
+				n++;
+				sx += x;
+				sy += y;
+				sxx += x * x;
+				syy += y * y;
+				sxy += x * y;
+				sxz += x * z;
+				syz += y * z;
+				sz += z;
+			}
+		}
+
+		//normal equations [sxx sxy sx; sxy syy sy; sx sy n] * [D E F] = -[sxz syz sz], solved by Cramer's rule
+		double det = sxx * (syy * n - sy * sy) - sxy * (sxy * n - sy * sx) + sx * (sxy * sy - syy * sx);
+		if(Math.abs(det) < 1e-9) {
+			return null;
+		}
+		double d = -(sxz * (syy * n - sy * sy) - sxy * (syz * n - sy * sz) + sx * (syz * sy - syy * sz)) / det;
+		double e = -(sxx * (syz * n - sz * sy) - sxz * (sxy * n - sy * sx) + sx * (sxy * sz - syz * sx)) / det;
+		double f = -(sxx * (syy * sz - syz * sy) - sxy * (sxy * sz - syz * sx) + sxz * (sxy * sy - syy * sx)) / det;
+
+		double cx = -d / 2;
+		double cy = -e / 2;
+		double radiusSq = cx * cx + cy * cy - f;
+		if(!(radiusSq >= minRadius * minRadius)) {
+			return null;
+		}
+		double radius = Math.sqrt(radiusSq);
+
+		//distances from the circle and coverage of sectors
+		double errorSq = 0;
+		int sectors = 0;
+		for(int r = 0; r < component.getRunCount(); r++) {
+			double y = component.getRunY(r) - originY - cy;
+			for(int px = component.getRunStart(r); px < component.getRunEnd(r); px++) {
+				double x = px - originX - cx;
+				double distance = Math.sqrt(x * x + y * y) - radius;
+				errorSq += distance * distance;
+				int sector = (int) ((Math.atan2(y, x) + Math.PI) * (SECTORS / (2 * Math.PI)));
+				sectors |= 1 << Math.min(sector, SECTORS - 1);
+			}
+		}
+
+		double error = Math.sqrt(errorSq / n);
+		if(error > Math.max(maxError, maxRelativeError * radius) || Integer.bitCount(sectors) < MIN_SECTORS) {
+			return null;
+		}
+		return new Circle(originX + cx, originY + cy, radius, error);
+	}
+}
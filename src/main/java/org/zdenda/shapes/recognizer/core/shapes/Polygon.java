@@ -0,0 +1,57 @@
+package org.zdenda.shapes.recognizer.core.shapes;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Closed polygon. The last vertex is connected to the first one.
+ * @author Zdenda
+ *
+ */
+public class Polygon extends RecognizedShape {
+
+	private final List<Point> vertices;
+
+	/**
+	 * @param type Type of the polygon, must not be {@code CIRCLE}.
+	 * @param vertices Vertices, at least 3. If null or shorter, exception is thrown.
+	 */
+	public Polygon(ShapeType type, List<Point> vertices) {
+		super(type);
+		if(type == ShapeType.CIRCLE) {
+			throw new IllegalArgumentException("Polygon can't be a circle!");
+		}
+		if(vertices == null || vertices.size() < 3) {
+			throw new IllegalArgumentException("Polygon must have at least 3 vertices!");
+		}
+
+		this.vertices = Collections.unmodifiableList(new ArrayList<Point>(vertices));
+	}
+
+	/**
+	 * Returns unmodifiable list of vertices.
+	 * @return
+	 */
+	public List<Point> getVertices() {
+		return vertices;
+	}
+
+	@Override
+	public Rectangle getBounds() {
+		Rectangle bounds = new Rectangle(vertices.get(0));
+		for(Point vertex : vertices) {
+			bounds.add(vertex);
+		}
+		bounds.width++;
+		bounds.height++;
+		return bounds;
+	}
+
+	@Override
+	public String toString() {
+		return "Polygon [type=" + getType() + ", vertices=" + vertices + "]";
+	}
+}
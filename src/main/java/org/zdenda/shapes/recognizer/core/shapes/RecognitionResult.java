@@ -0,0 +1,80 @@
+package org.zdenda.shapes.recognizer.core.shapes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.Polyline;
+
+/**
+ * Result of {@code ShapeRecognizer.recognize()}: lines found in the bitmap, polylines assembled from them
+ * and recognized shapes.
+ * @author Zdenda
+ *
+ */
+public class RecognitionResult {
+
+	private final List<Line> lines;
+
+	private final List<Polyline> polylines;
+
+	private final List<RecognizedShape> shapes;
+
+	/**
+	 * @param lines Lines as found by the detector.
+	 * @param polylines Polylines assembled from merged lines.
+	 * @param shapes Recognized shapes.
+	 */
+	public RecognitionResult(List<Line> lines, List<Polyline> polylines, List<RecognizedShape> shapes) {
+		super();
+		this.lines = Collections.unmodifiableList(lines);
+		this.polylines = Collections.unmodifiableList(polylines);
+		this.shapes = Collections.unmodifiableList(shapes);
+	}
+
+	/**
+	 * Returns lines as found by the detector, before merging.
+	 * @return
+	 */
+	public List<Line> getLines() {
+		return lines;
+	}
+
+	public List<Polyline> getPolylines() {
+		return polylines;
+	}
+
+	/**
+	 * Returns all shapes ordered by the top left corners of their bounds, row by row.
+	 * @return
+	 */
+	public List<RecognizedShape> getShapes() {
+		return shapes;
+	}
+
+	public List<Polygon> getPolygons() {
+		List<Polygon> polygons = new ArrayList<Polygon>();
+		for(RecognizedShape shape : shapes) {
+			if(shape instanceof Polygon) {
+				polygons.add((Polygon) shape);
+			}
+		}
+		return polygons;
+	}
+
+	public List<Circle> getCircles() {
+		List<Circle> circles = new ArrayList<Circle>();
+		for(RecognizedShape shape : shapes) {
+			if(shape instanceof Circle) {
+				circles.add((Circle) shape);
+			}
+		}
+		return circles;
+	}
+
+	@Override
+	public String toString() {
+		return "RecognitionResult [lines=" + lines.size() + ", polylines=" + polylines.size() + ", shapes=" + shapes + "]";
+	}
+}
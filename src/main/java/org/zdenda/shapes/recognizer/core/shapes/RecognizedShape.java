@@ -0,0 +1,32 @@
+package org.zdenda.shapes.recognizer.core.shapes;
+
+import java.awt.Rectangle;
+
+/**
+ * Common class of shapes found by {@code ShapeRecognizer}. Shapes are immutable.
+ * @author Zdenda
+ *
+ */
+public abstract class RecognizedShape {
+
+	private final ShapeType type;
+
+	protected RecognizedShape(ShapeType type) {
+		super();
+		if(type == null) {
+			throw new IllegalArgumentException("Type can't be null!");
+		}
+
+		this.type = type;
+	}
+
+	public ShapeType getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the smallest rectangle of pixels which contains the whole shape.
+	 * @return
+	 */
+	public abstract Rectangle getBounds();
+}
@@ -0,0 +1,253 @@
+package org.zdenda.shapes.recognizer.core.shapes;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.Polyline;
+import org.zdenda.shapes.recognizer.core.components.Component;
+import org.zdenda.shapes.recognizer.core.components.ComponentLabeler;
+import org.zdenda.shapes.recognizer.core.lines.LineDetectionEngine;
+import org.zdenda.shapes.recognizer.core.lines.LineDetector;
+import org.zdenda.shapes.recognizer.core.lines.LineMerger;
+
+/**
+ * <p>
+ * Recognizes closed shapes in the binary bitmap. Lines and shapes are returned together, so the image doesn't have
+ * to be decoded again for another tool. The bitmap is scanned once by {@code ComponentLabeler}, {@code LineDetector}
+ * then traces lines only from the runs of the components. Other detectors search the whole bitmap again.
+ * <ul>
+ * 	<li>Polygons - lines are merged and assembled to polylines by {@code LineMerger}, which joins end points with
+ * 		exactly one close end point (the graph of end points). Closed polylines are polygons, vertices where
+ * 		the polygon goes almost straight are removed. Polygons with 3 vertices are triangles, polygons with 4 vertices
+ * 		are rectangles if all their angles are close to right angles.</li>
+ * 	<li>Circles - every connected component which is large enough is fitted by {@code CircleFitter}. Tracing splits
+ * 		curves to many short lines, so polygons whose vertices all lie on a recognized circle are dropped.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Recognizer can be used by multiple threads at once only if its detector can be used so, which isn't true
+ * for {@code LineDetector} used by default.
+ * </p>
+ * @author Zdenda
+ *
+ */
+public class ShapeRecognizer {
+
+	private static final Logger logger = LogManager.getLogger(ShapeRecognizer.class);
+
+	/**
+	 * Default minimal radius of circles.
+	 */
+	public static final int DEFAULT_MIN_RADIUS = 4;
+
+	/**
+	 * Default maximal root mean square of distances of pixels from the circle.
+	 */
+	public static final double DEFAULT_MAX_CIRCLE_ERROR = 1.0;
+
+	/**
+	 * Default maximal difference of angles of rectangles from right angle in degrees.
+	 */
+	public static final double DEFAULT_ANGLE_TOLERANCE = 12;
+
+	/**
+	 * Maximal root mean square of distances relative to the radius, so thicker curves of large circles are accepted.
+	 */
+	private static final double MAX_RELATIVE_CIRCLE_ERROR = 0.04;
+
+	/**
+	 * Vertices where the polygon turns less than this angle in degrees are removed.
+	 */
+	private static final double MIN_TURN_ANGLE = 20;
+
+	private static final double MAX_STRAIGHT_COS = Math.cos(Math.toRadians(MIN_TURN_ANGLE));
+
+	/**
+	 * Maximal distance of polygon vertices from the circle to drop the polygon as a trace of the circle.
+	 */
+	private static final double MAX_VERTEX_DISTANCE = 2;
+
+	private final LineDetectionEngine detector;
+
+	private final LineMerger merger;
+
+	private final ComponentLabeler labeler = new ComponentLabeler();
+
+	private final CircleFitter fitter;
+
+	/**
+	 * Maximal absolute cosine of right angle of rectangles.
+	 */
+	private final double maxRightAngleCos;
+
+	/**
+	 * Creates recognizer with {@code LineDetector}, {@code LineMerger} with default parameters and default tolerances.
+	 */
+	public ShapeRecognizer() {
+		this(new LineDetector(), new LineMerger(), DEFAULT_MIN_RADIUS, DEFAULT_MAX_CIRCLE_ERROR, DEFAULT_ANGLE_TOLERANCE);
+	}
+
+	/**
+	 * @param detector Detector of lines. If null, exception is thrown.
+	 * @param merger Merger used to assemble polygons. If null, exception is thrown.
+	 * @param minRadius Minimal radius of circles, must be positive.
+	 * @param maxCircleError Maximal root mean square of distances of pixels from the circle, must be positive.
+	 * @param angleTolerance Maximal difference of angles of rectangles from right angle in degrees, from 0 to 45.
+	 */
+	public ShapeRecognizer(LineDetectionEngine detector, LineMerger merger, int minRadius, double maxCircleError, double angleTolerance) {
+		super();
+		if(detector == null) {
+			throw new IllegalArgumentException("Detector can't be null!");
+		}
+		if(merger == null) {
+			throw new IllegalArgumentException("Merger can't be null!");
+		}
+		if(minRadius < 1) {
+			throw new IllegalArgumentException("Minimal radius must be positive!");
+		}
+		if(!(maxCircleError > 0)) {
+			throw new IllegalArgumentException("Invalid maximal circle error: "+maxCircleError+"!");
+		}
+		if(!(angleTolerance >= 0 && angleTolerance <= 45)) {
+			throw new IllegalArgumentException("Invalid angle tolerance: "+angleTolerance+"!");
+		}
+
+		this.detector = detector;
+		this.merger = merger;
+		this.fitter = new CircleFitter(minRadius, maxCircleError, MAX_RELATIVE_CIRCLE_ERROR);
+		this.maxRightAngleCos = Math.sin(Math.toRadians(angleTolerance));
+	}
+
+	/**
+	 * Finds lines and shapes in the bitmap.
+	 * @param bitmap Bitmap on which search will be performed.
+	 * @return Result or null if the bitmap is null or its dimensions are invalid.
+	 */
+	public RecognitionResult recognize(BinaryBitmap bitmap) {
+		List<Component> components = labeler.label(bitmap);
+		if(components == null) {
+			return null;
+		}
+		List<Line> lines = detector instanceof LineDetector ? ((LineDetector) detector).findLines(bitmap, components)
+				: detector.findLines(bitmap);
+		if(lines == null) {
+			return null;
+		}
+
+		long start = System.nanoTime();
+		List<Polyline> polylines = merger.assemble(merger.merge(lines));
+
+		List<Circle> circles = new ArrayList<Circle>();
+		for(Component component : components) {
+			Circle circle = fitter.fit(component);
+			if(circle != null) {
+				circles.add(circle);
+			}
+		}
+
+		List<RecognizedShape> shapes = new ArrayList<RecognizedShape>(circles);
+		for(Polyline polyline : polylines) {
+			if(!polyline.isClosed()) {
+				continue;
+			}
+
+			List<Point> vertices = removeStraightVertices(polyline.getPoints());
+			if(vertices.size() >= 3 && !isOnCircle(vertices, circles)) {
+				shapes.add(new Polygon(classify(vertices), vertices));
+			}
+		}
+
+		Collections.sort(shapes, new Comparator<RecognizedShape>() {
+			public int compare(RecognizedShape s1, RecognizedShape s2) {
+				Rectangle b1 = s1.getBounds();
+				Rectangle b2 = s2.getBounds();
+				return b1.y != b2.y ? Integer.compare(b1.y, b2.y) : Integer.compare(b1.x, b2.x);
+			}
+		});
+
+		logger.debug("{} shapes recognized from {} lines in {} ms.", shapes.size(), lines.size(), (System.nanoTime() - start) / 1000000);
+		return new RecognitionResult(lines, polylines, shapes);
+	}
+
+	/**
+	 * Returns type of the polygon with given vertices.
+	 * @param vertices At least 3 vertices.
+	 * @return
+	 */
+	ShapeType classify(List<Point> vertices) {
+		if(vertices.size() == 3) {
+			return ShapeType.TRIANGLE;
+		}
+		if(vertices.size() > 4) {
+			return ShapeType.POLYGON;
+		}
+
+		for(int i = 0; i < 4; i++) {
+			if(Math.abs(cosine(vertices.get((i + 3) % 4), vertices.get(i), vertices.get((i + 1) % 4))) > maxRightAngleCos) {
+				return ShapeType.QUADRILATERAL;
+			}
+		}
+		return ShapeType.RECTANGLE;
+	}
+
+	/**
+	 * Removes vertices of the closed polygon where it goes almost straight or which repeat the previous vertex.
+	 * @param points Vertices.
+	 * @return New list of vertices.
+	 */
+	static List<Point> removeStraightVertices(List<Point> points) {
+		List<Point> vertices = new ArrayList<Point>(points);
+		boolean removed = true;
+		while(removed && vertices.size() >= 3) {
+			removed = false;
+			for(int i = 0; i < vertices.size() && vertices.size() >= 3; i++) {
+				Point previous = vertices.get((i + vertices.size() - 1) % vertices.size());
+				Point next = vertices.get((i + 1) % vertices.size());
+				//angle between the edges is 180 degrees minus the turn
+				if(-cosine(previous, vertices.get(i), next) >= MAX_STRAIGHT_COS) {
+					vertices.remove(i--);
+					removed = true;
+				}
+			}
+		}
+		return vertices;
+	}
+
+	/**
+	 * Returns cosine of the angle at the vertex between edges to previous and next point. If an edge has zero length,
+	 * -1 is returned (the vertex is considered straight).
+	 */
+	private static double cosine(Point previous, Point vertex, Point next) {
+		double ax = previous.x - vertex.x;
+		double ay = previous.y - vertex.y;
+		double bx = next.x - vertex.x;
+		double by = next.y - vertex.y;
+		double length = Math.sqrt((ax * ax + ay * ay) * (bx * bx + by * by));
+		return length == 0 ? -1 : (ax * bx + ay * by) / length;
+	}
+
+	/**
+	 * Checks whether all vertices lie on one of the circles.
+	 */
+	private static boolean isOnCircle(List<Point> vertices, List<Circle> circles) {
+		for(Circle circle : circles) {
+			boolean on = true;
+			for(int i = 0; i < vertices.size() && on; i++) {
+				on = circle.distance(vertices.get(i).x, vertices.get(i).y) <= MAX_VERTEX_DISTANCE + circle.getError();
+			}
+			if(on) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,31 @@
+package org.zdenda.shapes.recognizer.core.shapes;
+
+/**
+ * Types of recognized shapes.
+ * @author Zdenda
+ *
+ */
+public enum ShapeType {
+
+	/**
+	 * Closed polygon with 3 vertices.
+	 */
+	TRIANGLE,
+
+	/**
+	 * Closed polygon with 4 vertices and right angles.
+	 */
+	RECTANGLE,
+
+	/**
+	 * Closed polygon with 4 vertices which isn't a rectangle.
+	 */
+	QUADRILATERAL,
+
+	/**
+	 * Closed polygon with more than 4 vertices.
+	 */
+	POLYGON,
+
+	CIRCLE
+}
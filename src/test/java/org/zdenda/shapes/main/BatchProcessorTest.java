@@ -0,0 +1,264 @@
+package org.zdenda.shapes.main;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapCache;
+
+public class BatchProcessorTest {
+
+	private static final String HORIZONTAL = "1 lines: [10,5]-[49,5]";
+
+	private static final String VERTICAL = "1 lines: [3,2]-[3,15]";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Every file of the directory gets one result line, unsupported file is counted as failure.
+	 */
+	@Test
+	public void testProcess() throws IOException, InterruptedException {
+		File directory = createImages();
+		List<File> files = FileCollector.collect(directory.getPath());
+		assertEquals(Arrays.asList(new File(directory, "a.png"), new File(directory, "b.png"), new File(directory, "broken.png"),
+				new File(directory, "sub/c.bmp")), files);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BatchProcessor processor = new BatchProcessor(2, new PrintStream(out, true, "UTF-8"));
+		assertEquals("One file should have failed!", 1, processor.process(files));
+
+		Map<String, String> results = parseResults(out);
+		assertEquals(4, results.size());
+		assertEquals(HORIZONTAL, results.get(new File(directory, "a.png").getPath()));
+		assertEquals("0 lines", results.get(new File(directory, "b.png").getPath()));
+		assertEquals("error: unsupported image format", results.get(new File(directory, "broken.png").getPath()));
+		assertEquals(VERTICAL, results.get(new File(directory, "sub/c.bmp").getPath()));
+		assertEquals(2, processor.getStatistics().getLinesFound());
+	}
+
+	@Test
+	public void testCollect() throws IOException {
+		File directory = createImages();
+
+		assertEquals(Arrays.asList(new File(directory, "a.png"), new File(directory, "b.png"), new File(directory, "broken.png")),
+				FileCollector.collect(directory.getPath()+File.separator+"*.png"));
+		assertEquals(Arrays.asList(new File(directory, "sub/c.bmp")), FileCollector.collect(directory.getPath()+File.separator+"**.bmp"));
+		assertEquals(Arrays.asList(new File(directory, "notes.txt")), FileCollector.collect(new File(directory, "notes.txt").getPath()));
+		assertTrue(FileCollector.collect(new File(directory, "missing").getPath()).isEmpty());
+		assertTrue(FileCollector.collect(new File(directory, "missing").getPath()+File.separator+"*.png").isEmpty());
+
+		//files listed twice are returned once
+		List<File> files = FileCollector.collect(Arrays.asList(new File(directory, "a.png").getPath(), directory.getPath()));
+		assertEquals(Arrays.asList(new File(directory, "a.png"), new File(directory, "b.png"), new File(directory, "broken.png"),
+				new File(directory, "sub/c.bmp")), files);
+	}
+
+	/**
+	 * Errors thrown while decoding or recognizing a file must not stop the threads. With one recognition thread
+	 * and more files than fit to the queue, the processing would never finish otherwise.
+	 */
+	@Test(timeout = 20000)
+	public void testErrors() throws IOException, InterruptedException {
+		File directory = folder.newFolder("errors");
+		List<File> files = new ArrayList<File>();
+		for(int i = 0; i < 12; i++) {
+			String prefix = i % 3 == 0 ? "decode" : i % 3 == 1 ? "recognize" : "ok";
+			File file = new File(directory, prefix+i+".png");
+			ImageIO.write(lineImage(true), "png", file);
+			files.add(file);
+		}
+
+		BitmapCache cache = new BitmapCache(folder.newFolder("cache")) {
+			@Override
+			public BinaryBitmap get(File image) throws IOException {
+				if(image.getName().startsWith("decode")) {
+					throw new Error("decoder failed");
+				}
+				if(image.getName().startsWith("recognize")) {
+					return new BinaryBitmap(60, 20) {
+						@Override
+						public int getWidth() {
+							throw new Error("recognizer failed");
+						}
+					};
+				}
+				return super.get(image);
+			}
+		};
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BatchProcessor processor = new BatchProcessor(1, new PrintStream(out, true, "UTF-8"), cache);
+		assertEquals("Wrong number of failures!", 8, processor.process(files));
+
+		Map<String, String> results = parseResults(out);
+		assertEquals(files.size(), results.size());
+		for(File file : files) {
+			String result = results.get(file.getPath());
+			if(file.getName().startsWith("decode")) {
+				assertEquals("error: java.lang.Error: decoder failed", result);
+			} else if(file.getName().startsWith("recognize")) {
+				assertEquals("error: java.lang.Error: recognizer failed", result);
+			} else {
+				assertEquals(HORIZONTAL, result);
+			}
+		}
+	}
+
+	/**
+	 * Decoding by {@code DECODERS_PER_THREAD} threads per recognition thread, virtual ones if the JDK has them,
+	 * otherwise a platform thread per task, gives the same results.
+	 */
+	@Test(timeout = 20000)
+	public void testVirtualThreads() throws IOException, InterruptedException {
+		String version = System.getProperty("java.specification.version");
+		int feature = Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+		ExecutorService decoders = BatchProcessor.newVirtualThreadExecutor();
+		assertEquals("Virtual threads should be available since JDK 21!", feature >= 21, decoders != null);
+		if(decoders == null) {
+			decoders = Executors.newCachedThreadPool();
+		}
+
+		assertEquals(2 * BatchProcessor.DECODERS_PER_THREAD, BatchProcessor.decoderCount(2, true, 100));
+		assertEquals(2, BatchProcessor.decoderCount(2, false, 100));
+		assertEquals(5, BatchProcessor.decoderCount(2, true, 5));
+		assertEquals(1, BatchProcessor.decoderCount(2, true, 0));
+		assertTrue("Decodes should be limited below the number of virtual decoders!",
+				BatchProcessor.maxDecodes(2) < BatchProcessor.decoderCount(2, true, 100));
+
+		File directory = folder.newFolder("many");
+		List<File> files = new ArrayList<File>();
+		for(int i = 0; i < 40; i++) {
+			File file = new File(directory, "image"+i+".png");
+			ImageIO.write(lineImage(i % 2 == 0), "png", file);
+			files.add(file);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BatchProcessor processor = new BatchProcessor(2, new PrintStream(out, true, "UTF-8"));
+		assertEquals(0, processor.process(files, decoders, BatchProcessor.decoderCount(2, true, files.size())));
+		assertTrue(decoders.isShutdown());
+
+		Map<String, String> results = parseResults(out);
+		assertEquals(files.size(), results.size());
+		for(int i = 0; i < files.size(); i++) {
+			assertEquals(i % 2 == 0 ? HORIZONTAL : VERTICAL, results.get(files.get(i).getPath()));
+		}
+		assertEquals(files.size(), processor.getStatistics().getLinesFound());
+	}
+
+	@Test
+	public void testMainThreads() throws IOException {
+		File directory = createImages();
+
+		assertEquals("Invalid number of threads: 0.", runMain("--threads", "0", directory.getPath()).trim());
+		assertEquals("Invalid number of threads: x.", runMain("--threads", "x", directory.getPath()).trim());
+		assertTrue(runMain("--threads").startsWith("Missing number of threads."));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(runMain("--threads", "2", new File(directory, "a.png").getPath(), new File(directory, "sub").getPath())
+				.getBytes(StandardCharsets.UTF_8));
+		Map<String, String> results = parseResults(out);
+		assertEquals(2, results.size());
+		assertEquals(HORIZONTAL, results.get(new File(directory, "a.png").getPath()));
+		assertEquals(VERTICAL, results.get(new File(directory, "sub/c.bmp").getPath()));
+	}
+
+	/**
+	 * Creates directory with two png images, empty image, unsupported file, text file and bmp image in subdirectory.
+	 */
+	private File createImages() throws IOException {
+		File directory = folder.newFolder("images");
+		ImageIO.write(lineImage(true), "png", new File(directory, "a.png"));
+
+		BufferedImage empty = new BufferedImage(30, 30, BufferedImage.TYPE_INT_RGB);
+		fill(empty);
+		ImageIO.write(empty, "png", new File(directory, "b.png"));
+
+		FileOutputStream broken = new FileOutputStream(new File(directory, "broken.png"));
+		broken.write("not an image".getBytes(StandardCharsets.UTF_8));
+		broken.close();
+		FileOutputStream notes = new FileOutputStream(new File(directory, "notes.txt"));
+		notes.write("not an image".getBytes(StandardCharsets.UTF_8));
+		notes.close();
+
+		File sub = new File(directory, "sub");
+		assertTrue(sub.mkdir());
+		ImageIO.write(lineImage(false), "bmp", new File(sub, "c.bmp"));
+		return directory;
+	}
+
+	/**
+	 * Returns white image with horizontal line [10,5]-[49,5] or vertical line [3,2]-[3,15].
+	 */
+	private static BufferedImage lineImage(boolean horizontal) {
+		BufferedImage image = new BufferedImage(60, 20, BufferedImage.TYPE_INT_RGB);
+		fill(image);
+		if(horizontal) {
+			for(int x = 10; x < 50; x++) {
+				image.setRGB(x, 5, 0);
+			}
+		} else {
+			for(int y = 2; y < 16; y++) {
+				image.setRGB(3, y, 0);
+			}
+		}
+		return image;
+	}
+
+	private static void fill(BufferedImage image) {
+		for(int i = 0; i < image.getHeight(); i++) {
+			for(int j = 0; j < image.getWidth(); j++) {
+				image.setRGB(j, i, 0xFFFFFF);
+			}
+		}
+	}
+
+	/**
+	 * Returns results printed by the processor by file paths.
+	 */
+	private static Map<String, String> parseResults(ByteArrayOutputStream out) {
+		Map<String, String> results = new HashMap<String, String>();
+		for(String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\\r?\\n")) {
+			int separator = line.indexOf(": ");
+			assertTrue("Unexpected line: "+line, separator > 0);
+			assertNull("Two results of "+line, results.put(line.substring(0, separator), line.substring(separator + 2)));
+		}
+		return results;
+	}
+
+	/**
+	 * Runs {@code Main} and returns what it printed.
+	 */
+	private static String runMain(String... args) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream original = System.out;
+		System.setOut(new PrintStream(out, true, "UTF-8"));
+		try {
+			Main.main(args);
+		} finally {
+			System.setOut(original);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,184 @@
+package org.zdenda.shapes.main;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecognitionServerTest {
+	
+	private RecognitionServer server;
+	
+	@Before
+	public void setUp() throws IOException {
+		server = new RecognitionServer(0, 2, 2, 10000, null);
+		server.start();
+	}
+	
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+	
+	@Test
+	public void testLines() throws IOException {
+		BufferedImage image = new BufferedImage(60, 20, BufferedImage.TYPE_INT_RGB);
+		for(int i = 0; i < image.getHeight(); i++) {
+			for(int j = 0; j < image.getWidth(); j++) {
+				image.setRGB(j, i, i == 5 && j >= 10 && j < 50 ? 0x404040 : 0xFFFFFF);
+			}
+		}
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		
+		HttpURLConnection connection = post("/lines", png.toByteArray());
+		assertEquals(200, connection.getResponseCode());
+		String json = read(connection.getInputStream());
+		assertTrue("Unexpected response: "+json, json.startsWith("{\"width\":60,\"height\":20,"));
+		assertTrue("Unexpected response: "+json, json.endsWith("\"lines\":[]}"));
+		
+		connection = post("/lines?binarize=global:100", png.toByteArray());
+		assertEquals(200, connection.getResponseCode());
+		json = read(connection.getInputStream());
+		assertTrue("Unexpected response: "+json, json.endsWith("\"lines\":[[10,5,49,5]]}"));
+	}
+	
+	@Test
+	public void testErrors() throws IOException {
+		HttpURLConnection connection = post("/lines", "not an image".getBytes(StandardCharsets.UTF_8));
+		assertEquals(400, connection.getResponseCode());
+		assertEquals("{\"error\":\"Unsupported image format.\"}", read(connection.getErrorStream()));
+		
+		assertEquals(400, post("/lines?binarize=unknown", new byte[1]).getResponseCode());
+		
+		connection = (HttpURLConnection) url("/lines").openConnection();
+		assertEquals(405, connection.getResponseCode());
+		
+		connection = (HttpURLConnection) url("/health").openConnection();
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("{\"status\":\"ok\",\"workers\":2,\"pending\":0}", read(connection.getInputStream()));
+	}
+	
+	@Test
+	public void testCorruptImage() throws IOException {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(60, 20, BufferedImage.TYPE_INT_RGB), "png", png);
+		byte[] corrupt = png.toByteArray();
+		//keep the header, damage the image data
+		for(int i = 40; i < corrupt.length - 12; i++) {
+			corrupt[i] = (byte) 0xA5;
+		}
+		
+		HttpURLConnection connection = post("/lines", corrupt);
+		assertEquals(400, connection.getResponseCode());
+		String json = read(connection.getErrorStream());
+		assertTrue("Unexpected response: "+json, json.startsWith("{\"error\":\"Corrupt image: "));
+	}
+	
+	@Test
+	public void testTooManyPixels() throws IOException {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(60, 20, BufferedImage.TYPE_INT_RGB), "png", png);
+		byte[] huge = png.toByteArray();
+		//IHDR chunk claims 65536 x 65536 pixels, its image data would be corrupt
+		ByteBuffer.wrap(huge, 16, 8).putInt(65536).putInt(65536);
+		CRC32 crc = new CRC32();
+		crc.update(huge, 12, 17);
+		ByteBuffer.wrap(huge, 29, 4).putInt((int) crc.getValue());
+		
+		HttpURLConnection connection = post("/lines", huge);
+		assertEquals(413, connection.getResponseCode());
+		assertEquals("{\"error\":\"Image has more than "+RecognitionServer.MAX_IMAGE_PIXELS+" pixels.\"}",
+				read(connection.getErrorStream()));
+	}
+	
+	/**
+	 * With one worker and no queue, request whose body is being read holds the only permit, so other requests
+	 * are rejected. Request which takes longer than the timeout gets 504.
+	 */
+	@Test(timeout = 30000)
+	public void testBusyAndTimeout() throws IOException, InterruptedException {
+		server.stop();
+		server = new RecognitionServer(0, 1, 0, 1, null);
+		server.start();
+		
+		HttpURLConnection held = (HttpURLConnection) url("/lines").openConnection();
+		held.setRequestMethod("POST");
+		held.setDoOutput(true);
+		held.setChunkedStreamingMode(16);
+		OutputStream out = held.getOutputStream();
+		out.write(new byte[64]);
+		out.flush();
+		waitForPending(1);
+		
+		HttpURLConnection connection = post("/lines", new byte[1]);
+		assertEquals(503, connection.getResponseCode());
+		assertEquals("{\"error\":\"Server is busy.\"}", read(connection.getErrorStream()));
+		
+		out.close();
+		held.getResponseCode();
+		waitForPending(0);
+		
+		//decoding of a big image takes much longer than 1 ms
+		BufferedImage image = new BufferedImage(2000, 2000, BufferedImage.TYPE_INT_RGB);
+		for(int i = 0; i < image.getHeight(); i++) {
+			for(int j = 0; j < image.getWidth(); j++) {
+				image.setRGB(j, i, (i * 31 + j * 17) * 0x010203);
+			}
+		}
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		connection = post("/lines", png.toByteArray());
+		assertEquals(504, connection.getResponseCode());
+		assertEquals("{\"error\":\"Recognition timed out.\"}", read(connection.getErrorStream()));
+	}
+	
+	/**
+	 * Waits until the server has the number of pending requests.
+	 */
+	private void waitForPending(int pending) throws IOException, InterruptedException {
+		String expected = "{\"status\":\"ok\",\"workers\":1,\"pending\":"+pending+"}";
+		while(!expected.equals(read(url("/health").openStream()))) {
+			Thread.sleep(10);
+		}
+	}
+	
+	private URL url(String path) throws IOException {
+		return new URL("http://localhost:"+server.getPort()+path);
+	}
+	
+	private HttpURLConnection post(String path, byte[] body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		OutputStream out = connection.getOutputStream();
+		out.write(body);
+		out.close();
+		return connection;
+	}
+	
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while((read = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
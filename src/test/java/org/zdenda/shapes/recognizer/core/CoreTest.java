@@ -1,14 +1,19 @@
 package org.zdenda.shapes.recognizer.core;
 
 import static org.junit.Assert.*;
+import static org.zdenda.shapes.recognizer.core.RandomBitmaps.*;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 
 import javax.imageio.ImageIO;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Class for testing generic core utilities.
@@ -71,4 +76,298 @@ public class CoreTest {
 		assertTrue("[4][0] shoubl be blue!", array[4][0].getR() == 0 && array[4][0].getG() == 0 && array[4][0].getB() == 255);
 		assertTrue("[5][3] shoubl be green!", array[5][3].getR() == 0 && array[5][3].getG() == 255 && array[5][3].getB() == 0);
 	}
+	
+	/**
+	 * Verify that converting to binary bitmap works.
+	 */
+	@Test
+	public void testConvertToBinaryBitmap() {
+		String testFileName = "/testImg/testConvert.bmp";
+		
+		//load image
+		File imageFile = new File(getClass().getResource(testFileName).getFile());
+		BufferedImage bi = null;
+		try {
+			bi = ImageIO.read(imageFile);
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail();
+		}
+		
+		//convert
+		Pixel[][] array = BitmapConverter.convertToPixArray(bi);
+		BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(bi);
+		
+		//check dimensions
+		assertEquals("Wrong height!", array.length, bitmap.getHeight());
+		assertEquals("Wrong width!", array[0].length, bitmap.getWidth());
+		
+		//check colors
+		for(int i = 0; i < bitmap.getHeight(); i++) {
+			for(int j = 0; j < bitmap.getWidth(); j++) {
+				assertEquals("Wrong color of ["+i+"]["+j+"]!", array[i][j].isBlack(), bitmap.isBlack(j, i));
+			}
+		}
+		assertTrue("[0][1] should be balck!",bitmap.isBlack(1, 0));
+	}
+	
+	/**
+	 * Verify that pixels are stored in the right words of binary bitmap.
+	 */
+	@Test
+	public void testBinaryBitmapWords() {
+		BinaryBitmap bitmap = new BinaryBitmap(130, 3);
+		assertEquals("Wrong stride!", 3, bitmap.getStride());
+		
+		bitmap.setBlack(0, 0, true);
+		bitmap.setBlack(63, 1, true);
+		bitmap.setBlack(64, 1, true);
+		bitmap.setBlack(129, 2, true);
+		
+		assertEquals("Wrong word!", 1L, bitmap.getWord(0, 0));
+		assertEquals("Wrong word!", Long.MIN_VALUE, bitmap.getWord(1, 0));
+		assertEquals("Wrong word!", 1L, bitmap.getWord(1, 1));
+		assertEquals("Wrong word!", 2L, bitmap.getWord(2, 2));
+		assertEquals("Wrong number of black pixels!", 4, bitmap.countBlack());
+		
+		bitmap.setBlack(63, 1, false);
+		assertFalse("[1][63] should be white!", bitmap.isBlack(63, 1));
+		assertTrue("[1][64] should be black!", bitmap.isBlack(64, 1));
+	}
+	
+	/**
+	 * Verify that converting reads the same colors as {@code getRGB()} for every supported image type
+	 * and for sub images.
+	 */
+	@Test
+	public void testRunLengthBitmap() {
+		//runs crossing words, touching the end of the row and an empty row
+		BinaryBitmap bitmap = new BinaryBitmap(130, 3);
+		for(int x = 60; x < 130; x++) {
+			bitmap.setBlack(x, 0, true);
+		}
+		bitmap.setBlack(0, 2, true);
+		bitmap.setBlack(2, 2, true);
+		bitmap.setBlack(3, 2, true);
+		
+		RunLengthBitmap runs = RunLengthBitmap.fromBinaryBitmap(bitmap);
+		assertEquals("Wrong number of runs!", 3, runs.getRunCount());
+		assertEquals("Wrong number of black pixels!", bitmap.countBlack(), runs.countBlack());
+		assertEquals(60, runs.getRunStart(0));
+		assertEquals(130, runs.getRunEnd(0));
+		assertEquals("Row 1 should be empty!", runs.getRowStart(1), runs.getRowEnd(1));
+		assertEquals(2, runs.findRun(3, 2));
+		assertEquals(-1, runs.findRun(1, 2));
+		assertEquals("Wrong ink index!", 72, runs.getInkIndex(2, 3));
+		
+		BinaryBitmap back = runs.toBinaryBitmap();
+		for(int i = 0; i < bitmap.getStride() * bitmap.getHeight(); i++) {
+			assertEquals("Wrong word "+i+"!", bitmap.getWords()[i], back.getWords()[i]);
+		}
+	}
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testBitmapCache() throws IOException {
+		BufferedImage image = paint(randomBitmap(100, 7, 50, 3), new BufferedImage(100, 7, BufferedImage.TYPE_BYTE_BINARY));
+		File imageFile = folder.newFile("image.png");
+		ImageIO.write(image, "png", imageFile);
+		BinaryBitmap expected = BitmapConverter.convertToBinaryBitmap(image);
+		
+		BitmapCache cache = new BitmapCache(new File(folder.getRoot(), "cache"));
+		assertNull("Cache should be empty!", cache.load(imageFile));
+		BinaryBitmap decoded = cache.get(imageFile);
+		BinaryBitmap loaded = cache.load(imageFile);
+		assertNotNull("Bitmap should have been cached!", loaded);
+		assertEquals(expected.getWidth(), loaded.getWidth());
+		assertEquals(expected.getHeight(), loaded.getHeight());
+		for(int i = 0; i < expected.getWords().length; i++) {
+			assertEquals("Wrong decoded word "+i+"!", expected.getWords()[i], decoded.getWords()[i]);
+			assertEquals("Wrong cached word "+i+"!", expected.getWords()[i], loaded.getWords()[i]);
+		}
+		
+		//changed image must not be loaded from cache
+		assertTrue(imageFile.setLastModified(imageFile.lastModified() - 10000));
+		assertNull("Cached bitmap of changed image shouldn't be used!", cache.load(imageFile));
+		
+		//bitmap is stored with the stamp of the decoded version
+		cache.store(imageFile, expected, imageFile.length(), imageFile.lastModified() + 10000);
+		assertNull("Bitmap of older version shouldn't be used!", cache.load(imageFile));
+		cache.store(imageFile, expected, imageFile.length(), imageFile.lastModified());
+		assertNotNull(cache.load(imageFile));
+		
+		//corrupt dimensions in the header are rejected before the bitmap is allocated
+		File cacheFile = cache.cacheFile(imageFile);
+		for(int[] size : new int[][] {{-1, 7}, {100, -7}, {Integer.MAX_VALUE, Integer.MAX_VALUE}, {100, 8}}) {
+			RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+			try {
+				file.seek(8);
+				file.writeInt(Integer.reverseBytes(size[0]));
+				file.writeInt(Integer.reverseBytes(size[1]));
+			} finally {
+				file.close();
+			}
+			assertNull("Corrupt cache file shouldn't be used!", cache.load(imageFile));
+		}
+		assertNotNull("Corrupt cache file should be replaced!", cache.get(imageFile));
+		assertNotNull(cache.load(imageFile));
+	}
+	
+	@Test
+	public void testBinarizer() {
+		assertNull(Binarizer.parse("global"));
+		assertNull(Binarizer.parse("global:256"));
+		assertNull(Binarizer.parse("adaptive:4"));
+		assertNull(Binarizer.parse("otsu:1"));
+		assertNotNull(Binarizer.parse("adaptive:15:10"));
+		
+		//dark grey line on light background with gradient from left to right
+		int w = 150;
+		int h = 40;
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		for(int i = 0; i < h; i++) {
+			for(int j = 0; j < w; j++) {
+				int level = i == 20 ? 40 + j / 2 : 200 + j / 10;
+				image.setRGB(j, i, 0xFF000000 | level * 0x010101);
+			}
+		}
+		byte[] grey = BitmapConverter.convertToGrey(image);
+		
+		assertOnlyRow("global", BitmapConverter.convertToBinaryBitmap(image, Binarizer.global(100)), 20, 0, 122);
+		assertOnlyRow("otsu", BitmapConverter.convertToBinaryBitmap(image, Binarizer.otsu()), 20, 0, w);
+		assertOnlyRow("adaptive", Binarizer.adaptive(15, 20).binarize(grey, w, h), 20, 0, w);
+		
+		//no binarizer means only black pixels
+		assertEquals(0, BitmapConverter.convertToBinaryBitmap(image, null).getWords()[20 * 3]);
+	}
+	
+	/**
+	 * Checks that only pixels [from,to) of the row are black.
+	 */
+	private void assertOnlyRow(String name, BinaryBitmap bitmap, int row, int from, int to) {
+		for(int i = 0; i < bitmap.getHeight(); i++) {
+			for(int j = 0; j < bitmap.getWidth(); j++) {
+				boolean expected = i == row && j >= from && j < to;
+				assertEquals("Wrong pixel ["+i+"]["+j+"] of "+name+" binarizer!", expected, bitmap.isBlack(j, i));
+			}
+		}
+	}
+	
+	@Test
+	public void testConvertImageTypes() {
+		int[] types = new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE,
+				BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+				BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_INDEXED,
+				BufferedImage.TYPE_USHORT_565_RGB, BufferedImage.TYPE_USHORT_GRAY};
+		
+		for(int type : types) {
+			BufferedImage image = randomImage(203, 37, type, 50, 7 + type);
+			
+			assertConverted("type "+type, image);
+			assertConverted("sub image of type "+type, image.getSubimage(3, 5, 190, 20));
+			assertConverted("sub image of type "+type, image.getSubimage(64, 1, 130, 30));
+		}
+		
+		//1 bit image where 0 is white
+		IndexColorModel cm = new IndexColorModel(1, 2, new byte[] {-1, 0}, new byte[] {-1, 0}, new byte[] {-1, 0});
+		BufferedImage image = paint(randomBitmap(77, 13, 50, 7), new BufferedImage(77, 13, BufferedImage.TYPE_BYTE_BINARY, cm));
+		assertConverted("inverted binary image", image);
+		assertConverted("inverted binary sub image", image.getSubimage(8, 2, 60, 10));
+		
+		//transparent pixels are white, half transparent black is grey
+		BufferedImage transparent = new BufferedImage(3, 1, BufferedImage.TYPE_INT_ARGB);
+		transparent.setRGB(0, 0, 0x00000000);
+		transparent.setRGB(1, 0, 0x80000000);
+		transparent.setRGB(2, 0, 0xFF000000);
+		assertArrayEquals(new byte[] {(byte) 255, (byte) 127, 0}, BitmapConverter.convertToGrey(transparent));
+		assertFalse(BitmapConverter.convertToBinaryBitmap(transparent, Binarizer.global(100)).isBlack(0, 0));
+	}
+	
+	/**
+	 * Pooled and reused buffers must give the same result as new buffers, no buffers should be allocated for images
+	 * of the same size.
+	 */
+	@Test
+	public void testBufferPool() {
+		BufferedImage first = randomImage(150, 40, BufferedImage.TYPE_INT_RGB, 50, 11);
+		BufferedImage second = randomImage(150, 40, BufferedImage.TYPE_INT_RGB, 50, 12);
+		
+		BufferPool pool = new BufferPool(1 << 20);
+		for(Binarizer binarizer : new Binarizer[] {null, Binarizer.otsu()}) {
+			BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmapPooled(first, binarizer, pool);
+			pool.releaseBitmap(bitmap);
+			BinaryBitmap reused = BitmapConverter.convertToBinaryBitmapPooled(second, binarizer, pool);
+			assertSame("Bitmap should be reused!", bitmap, reused);
+			assertArrayEquals(BitmapConverter.convertToBinaryBitmap(second, binarizer).getWords(), reused.getWords());
+			pool.releaseBitmap(reused);
+		}
+		assertNotSame("Bitmap of different size shouldn't be reused!", BitmapConverter.convertToBinaryBitmapPooled(first, null, pool),
+				pool.acquireBitmap(150, 41));
+		
+		long[] words = pool.acquireWords(130, 7);
+		assertEquals(3 * 7, words.length);
+		pool.releaseWords(words, 130, 7);
+		assertSame(words, pool.acquireWords(130, 7));
+		pool.releaseWords(new long[5], 130, 7);
+		assertNotSame("Words of different size shouldn't be reused!", words, pool.acquireWords(130, 8));
+		
+		//pool of two 10x10 bitmaps (80 bytes each)
+		BufferPool small = new BufferPool(160);
+		BinaryBitmap kept = new BinaryBitmap(10, 10);
+		small.releaseBitmap(kept);
+		small.releaseBitmap(new BinaryBitmap(10, 10));
+		small.releaseBitmap(new BinaryBitmap(10, 10));
+		assertEquals(2, small.size());
+		assertEquals(160, small.getBytes());
+		small.releaseBitmap(new BinaryBitmap(1000, 1000));
+		assertEquals("Buffer larger than the pool shouldn't be kept!", 2, small.size());
+		
+		//released buffer of a new size evicts the least recently used size
+		small.releaseWords(new long[10], 10, 10);
+		assertEquals(2, small.size());
+		assertEquals(160, small.getBytes());
+		assertNotNull(small.acquireWords(10, 10));
+		assertEquals(80, small.getBytes());
+		assertNotSame("The oldest bitmap should be evicted!", kept, small.acquireBitmap(10, 10));
+		assertEquals(0, small.size());
+		
+		Pixel[][] pixels = BitmapConverter.convertToPixArray(first);
+		Pixel pixel = pixels[3][7];
+		assertSame(pixels, BitmapConverter.convertToPixArray(second, pixels));
+		assertSame(pixel, pixels[3][7]);
+		assertEquals(new Pixel(second.getRGB(7, 3)), pixel);
+		
+		byte[] grey = new byte[150 * 40];
+		assertSame(grey, BitmapConverter.convertToGrey(second, grey));
+		assertArrayEquals(BitmapConverter.convertToGrey(second), grey);
+	}
+	
+	/**
+	 * Checks both conversions of the image against {@code getRGB()}.
+	 * @param name Name used in messages.
+	 * @param image Image.
+	 */
+	private void assertConverted(String name, BufferedImage image) {
+		Pixel[][] array = BitmapConverter.convertToPixArray(image);
+		BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(image);
+		RunLengthBitmap runs = BitmapConverter.convertToRunLengthBitmap(image);
+		byte[] grey = BitmapConverter.convertToGrey(image);
+		
+		for(int i = 0; i < image.getHeight(); i++) {
+			for(int j = 0; j < image.getWidth(); j++) {
+				Pixel expected = new Pixel(image.getRGB(j, i));
+				assertEquals("Wrong grey level of ["+i+"]["+j+"] in "+name+"!", RasterRowReader.compositeGrey(image.getRGB(j, i)), grey[i*image.getWidth() + j] & 0xFF);
+				assertEquals("Wrong color of ["+i+"]["+j+"] in "+name+"!", expected, array[i][j]);
+				assertEquals("Wrong black pixel ["+i+"]["+j+"] in "+name+"!", expected.isBlack(), bitmap.isBlack(j, i));
+				assertEquals("Wrong run length pixel ["+i+"]["+j+"] in "+name+"!", expected.isBlack(), runs.isBlack(j, i));
+			}
+			
+			int rest = image.getWidth() % BinaryBitmap.WORD_SIZE;
+			if(rest != 0) {
+				assertEquals("Padding of row "+i+" in "+name+" should be empty!", 0L, bitmap.getWord(i, bitmap.getStride()-1) >>> rest);
+			}
+		}
+	}
 }
@@ -0,0 +1,66 @@
+package org.zdenda.shapes.recognizer.core;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Random bitmaps and images for tests. The same seed always gives the same pixels.
+ * @author Zdenda
+ *
+ */
+public class RandomBitmaps {
+
+	/**
+	 * Returns bitmap with random black pixels.
+	 * @param width Width of the bitmap.
+	 * @param height Height of the bitmap.
+	 * @param percent Probability of a black pixel in percent.
+	 * @param seed Seed of the random generator.
+	 * @return
+	 */
+	public static BinaryBitmap randomBitmap(int width, int height, int percent, long seed) {
+		Random random = new Random(seed);
+		BinaryBitmap bitmap = new BinaryBitmap(width, height);
+		for(int i = 0; i < height; i++) {
+			for(int j = 0; j < width; j++) {
+				bitmap.setBlack(j, i, random.nextInt(100) < percent);
+			}
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Returns image with random black pixels, the other pixels have random opaque colors.
+	 * @param width Width of the image.
+	 * @param height Height of the image.
+	 * @param type Type of the image.
+	 * @param percent Probability of a black pixel in percent.
+	 * @param seed Seed of the random generator.
+	 * @return
+	 */
+	public static BufferedImage randomImage(int width, int height, int type, int percent, long seed) {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, type);
+		for(int i = 0; i < height; i++) {
+			for(int j = 0; j < width; j++) {
+				image.setRGB(j, i, random.nextInt(100) < percent ? 0xFF000000 : random.nextInt() | 0xFF000000);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Paints the bitmap to the image, black pixels are black and the others white.
+	 * @param bitmap Bitmap with the same dimensions as the image.
+	 * @param image Image of any type.
+	 * @return The image.
+	 */
+	public static BufferedImage paint(BinaryBitmap bitmap, BufferedImage image) {
+		for(int i = 0; i < bitmap.getHeight(); i++) {
+			for(int j = 0; j < bitmap.getWidth(); j++) {
+				image.setRGB(j, i, bitmap.isBlack(j, i) ? 0xFF000000 : 0xFFFFFFFF);
+			}
+		}
+		return image;
+	}
+}
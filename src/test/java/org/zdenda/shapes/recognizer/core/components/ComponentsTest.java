@@ -0,0 +1,107 @@
+package org.zdenda.shapes.recognizer.core.components;
+
+import static org.junit.Assert.*;
+import static org.zdenda.shapes.recognizer.core.RandomBitmaps.*;
+
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.Line;
+import org.zdenda.shapes.recognizer.core.lines.LineDetector;
+import org.zdenda.shapes.recognizer.core.lines.Lines;
+
+public class ComponentsTest {
+
+	@Test
+	public void testLabelFail() {
+		assertNull("Null should be returned for null bitmap!", new ComponentLabeler().label(null));
+		assertTrue("Empty bitmap has no components!", new ComponentLabeler().label(new BinaryBitmap(0, 0)).isEmpty());
+	}
+
+	@Test
+	public void testLabel() {
+		//two strokes touching diagonally, one long run crossing words and one isolated pixel
+		BinaryBitmap bitmap = new BinaryBitmap(130, 10);
+		for(int i = 0; i < 5; i++) {
+			bitmap.setBlack(2 + i, 1 + i, true);
+		}
+		for(int x = 10; x < 128; x++) {
+			bitmap.setBlack(x, 3, true);
+		}
+		bitmap.setBlack(60, 4, true);
+		bitmap.setBlack(129, 8, true);
+
+		List<Component> components = new ComponentLabeler().label(bitmap);
+		assertEquals("Wrong number of components!", 3, components.size());
+
+		Component diagonal = components.get(0);
+		assertEquals(0, diagonal.getLabel());
+		assertEquals(new Rectangle(2, 1, 5, 5), diagonal.getBounds());
+		assertEquals(5, diagonal.getPixelCount());
+		assertEquals(5, diagonal.getRunCount());
+
+		Component horizontal = components.get(1);
+		assertEquals(new Rectangle(10, 3, 118, 2), horizontal.getBounds());
+		assertEquals(119, horizontal.getPixelCount());
+		assertEquals(2, horizontal.getRunCount());
+		assertEquals(10, horizontal.getRunStart(0));
+		assertEquals(128, horizontal.getRunEnd(0));
+		assertEquals(4, horizontal.getRunY(1));
+
+		assertEquals(new Rectangle(129, 8, 1, 1), components.get(2).getBounds());
+		assertEquals(2, ComponentLabeler.removeNoise(components, 2).size());
+	}
+
+	/**
+	 * Parallel labelling must give the same components as sequential labelling, components which cross
+	 * bands must be joined.
+	 */
+	@Test
+	public void testParallelLabel() {
+		BinaryBitmap bitmap = randomBitmap(200, 300, 30, 42);
+		List<Component> expected = new ComponentLabeler().label(bitmap);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			List<Component> actual = new ComponentLabeler(pool, 7).label(bitmap);
+			assertEquals("Wrong number of components!", expected.size(), actual.size());
+			for(int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getBounds(), actual.get(i).getBounds());
+				assertEquals(expected.get(i).getPixelCount(), actual.get(i).getPixelCount());
+				assertEquals(expected.get(i).getRunCount(), actual.get(i).getRunCount());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Lines found inside of all components must be the same as lines found in the whole bitmap.
+	 */
+	@Test
+	public void testFindLinesInComponents() {
+		BinaryBitmap bitmap = randomBitmap(150, 120, 20, 7);
+		LineDetector detector = new LineDetector();
+		List<Line> expected = detector.findLines(bitmap);
+		List<Line> actual = detector.findLines(bitmap, new ComponentLabeler().label(bitmap));
+		assertEquals("Wrong number of lines!", expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getStart(), actual.get(i).getStart());
+			assertEquals(expected.get(i).getEnd(), actual.get(i).getEnd());
+		}
+
+		//isolated pixels are removed as noise
+		BinaryBitmap noisy = new BinaryBitmap(50, 20);
+		for(int x = 5; x < 45; x++) {
+			noisy.setBlack(x, 10, true);
+		}
+		noisy.setBlack(2, 2, true);
+		noisy.setBlack(47, 17, true);
+		List<Line> lines = Lines.findLines(noisy, 2);
+		assertEquals("Noise should be removed!", 1, lines.size());
+		assertEquals(5, lines.get(0).getStart().x);
+		assertEquals(44, lines.get(0).getEnd().x);
+	}
+}
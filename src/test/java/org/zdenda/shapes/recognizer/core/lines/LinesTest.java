@@ -1,21 +1,47 @@
 package org.zdenda.shapes.recognizer.core.lines;
 
 import static org.junit.Assert.*;
+import static org.zdenda.shapes.recognizer.core.RandomBitmaps.*;
 
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Line2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import org.junit.Test;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
 import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.BufferPool;
 import org.zdenda.shapes.recognizer.core.Direction;
 import org.zdenda.shapes.recognizer.core.Line;
 import org.zdenda.shapes.recognizer.core.Pixel;
+import org.zdenda.shapes.recognizer.core.Polyline;
+import org.zdenda.shapes.recognizer.core.RunLengthBitmap;
 
 public class LinesTest {
 
@@ -38,7 +64,7 @@ public class LinesTest {
 	
 	@Test
 	public void testFindLineFail1() {
-		Line line = Lines.findLine(null);
+		Line line = Lines.findLine((Pixel[][])null);
 		assertEquals("Line should be null!", null, line);
 	}
 	
@@ -242,6 +268,554 @@ public class LinesTest {
 		assertEquals("The second line should end on [7, 48]!",new Point(7, 48), lines.get(1).getEnd());
 	}
 	
+	@Test
+	public void testFindLineBinaryFail() {
+		assertEquals("Line should be null!", null, Lines.findLine((BinaryBitmap)null));
+		assertEquals("Line should be null!", null, Lines.findLine(new BinaryBitmap(0, 0)));
+		assertEquals("Lines should be null!", null, Lines.findLines(new BinaryBitmap(0, 5)));
+	}
+	
+	/**
+	 * Lines found in binary bitmap converted directly from the image should be the same as the lines
+	 * expected by the tests of pixel arrays.
+	 */
+	@Test
+	public void testFindLinesBinary() {
+		String[] files = new String[] {noLines, horizontalLine, verticalLine, SEline1, SEline2, SWline1, SWline2,
+				horizontalLines, verticalLines, SElines, SWlines};
+		int[][] expected = new int[][] {
+			{},
+			{2,9, 17,9},
+			{9,2, 9,17},
+			{2,2, 17,17},
+			{3,2, 12,16},
+			{17,2, 2,17},
+			{16,2, 7,16},
+			{3,9, 26,9, 3,43, 26,43},
+			{6,3, 6,46, 22,3, 22,46},
+			{6,3, 27,28, 3,17, 22,48},
+			{23,3, 2,28, 26,17, 7,48}
+		};
+		
+		for(int f = 0; f < files.length; f++) {
+			BufferedImage image = openImage(getClass().getResource(path+files[f]));
+			if(image == null) {
+				fail();
+			}
+			
+			List<Line> expectedLines = new ArrayList<Line>();
+			for(int k = 0; k < expected[f].length; k += 4) {
+				expectedLines.add(new Line(new Point(expected[f][k], expected[f][k+1]), new Point(expected[f][k+2], expected[f][k+3])));
+			}
+			List<Line> lines = Lines.findLines(BitmapConverter.convertToBinaryBitmap(image));
+			assertLinesEqual(files[f], expectedLines, lines);
+		}
+	}
+	
+	/**
+	 * Points [1,0] and [0,71] used to share the same visited code, so the second one was never found.
+	 */
+	@Test
+	public void testFindLinesNoCollision() {
+		BinaryBitmap bitmap = new BinaryBitmap(3, 80);
+		bitmap.setBlack(1, 0, true);
+		bitmap.setBlack(0, 71, true);
+		
+		List<Line> lines = Lines.findLines(bitmap);
+		assertEquals("Two lines should have been found!", 2, lines.size());
+		assertEquals("The second line should start on [0, 71]!", new Point(0, 71), lines.get(1).getStart());
+	}
+	
+	/**
+	 * One detector reused for multiple bitmaps should return the same results as new detectors.
+	 */
+	@Test
+	public void testLineDetectorReuse() {
+		LineDetector detector = new LineDetector();
+		String[] files = new String[] {horizontalLines, verticalLines, SElines, SWlines, SWlines};
+		
+		for(String file : files) {
+			BufferedImage image = openImage(getClass().getResource(path+file));
+			if(image == null) {
+				fail();
+			}
+			
+			BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(image);
+			assertLinesEqual(file, Lines.findLines(bitmap), detector.findLines(bitmap));
+		}
+	}
+	
+	/**
+	 * Search over runs must give the same lines as the search over the binary bitmap.
+	 */
+	@Test
+	public void testRunLengthDetector() {
+		RunLengthLineDetector detector = new RunLengthLineDetector();
+		String[] files = new String[] {horizontalLines, verticalLines, SElines, SWlines, noLines};
+		for(String file : files) {
+			BufferedImage image = openImage(getClass().getResource(path+file));
+			if(image == null) {
+				fail();
+			}
+			
+			assertLinesEqual(file, Lines.findLines(BitmapConverter.convertToBinaryBitmap(image)),
+					detector.findLines(BitmapConverter.convertToRunLengthBitmap(image)));
+		}
+		
+		//crossing strokes and runs of all lengths
+		for(int k = 0; k < 5; k++) {
+			BinaryBitmap bitmap = randomBitmap(150, 90, 20 + 10 * k, 11 + k);
+			assertLinesEqual("random bitmap "+k, Lines.findLines(bitmap), detector.findLines(RunLengthBitmap.fromBinaryBitmap(bitmap)));
+		}
+		
+		assertNull("Null should be returned for empty bitmap!", detector.findLines(RunLengthBitmap.fromBinaryBitmap(new BinaryBitmap(0, 5))));
+	}
+	
+	/**
+	 * Incremental detector must give the same lines as the full search after every edit.
+	 */
+	@Test
+	public void testIncrementalDetector() {
+		Random random = new Random(5);
+		BinaryBitmap bitmap = randomBitmap(300, 200, 30, 5);
+		
+		IncrementalLineDetector detector = new IncrementalLineDetector(bitmap);
+		assertLinesEqual("first search", Lines.findLines(bitmap), detector.update(new Rectangle(0, 0, 1, 1)));
+		for(int k = 0; k < 100; k++) {
+			Rectangle dirty = new Rectangle(random.nextInt(310) - 5, random.nextInt(210) - 5, 1 + random.nextInt(12), 1 + random.nextInt(12));
+			for(int i = dirty.y; i < dirty.y + dirty.height; i++) {
+				for(int j = dirty.x; j < dirty.x + dirty.width; j++) {
+					if(bitmap.isInside(j, i)) {
+						bitmap.setBlack(j, i, random.nextInt(10) < (k % 2 == 0 ? 1 : 6));
+					}
+				}
+			}
+			assertLinesEqual("edit "+k+" of "+dirty, Lines.findLines(bitmap), detector.update(dirty));
+		}
+	}
+	
+	/**
+	 * Search in the region must give the same lines as the search in the bitmap with white pixels outside of the region.
+	 */
+	@Test
+	public void testRegionOfInterest() {
+		BinaryBitmap bitmap = randomBitmap(300, 200, 30, 21);
+		BufferedImage image = paint(bitmap, new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB));
+		
+		Rectangle[] regions = {new Rectangle(0, 0, 300, 200), new Rectangle(70, 30, 100, 50), new Rectangle(-10, 150, 80, 100),
+				new Rectangle(250, 1, 64, 7), new Rectangle(129, 0, 1, 200)};
+		for(Rectangle region : regions) {
+			BinaryBitmap masked = new BinaryBitmap(300, 200);
+			for(int i = 0; i < bitmap.getHeight(); i++) {
+				for(int j = 0; j < bitmap.getWidth(); j++) {
+					masked.setBlack(j, i, bitmap.isBlack(j, i) && region.contains(j, i));
+				}
+			}
+			
+			List<Line> expected = Lines.findLines(masked);
+			assertLinesEqual("region "+region, expected, Lines.findLines(bitmap, region, Integer.MAX_VALUE));
+			assertLinesEqual("image region "+region, expected, Lines.findLines(image, region, Integer.MAX_VALUE));
+			assertLinesEqual("first lines of "+region, expected.subList(0, 5), Lines.findLines(bitmap, region, 5));
+			assertLinesEqual("first line of "+region, expected.subList(0, 1), Arrays.asList(Lines.findLine(bitmap, region)));
+			assertLinesEqual("first image line of "+region, expected.subList(0, 1), Arrays.asList(Lines.findLine(image, region)));
+		}
+		
+		assertTrue(Lines.findLines(bitmap, new Rectangle(300, 0, 10, 10), 10).isEmpty());
+		assertNull(Lines.findLine(bitmap, new Rectangle(-20, -20, 10, 10)));
+		assertNull(Lines.findLine(image, new Rectangle(-20, -20, 10, 10)));
+		assertNull(Lines.findLine((BufferedImage) null, new Rectangle(0, 0, 10, 10)));
+	}
+	
+	/**
+	 * Queries of the line index must give the same results as checking all lines.
+	 */
+	@Test
+	public void testLineIndex() {
+		Random random = new Random(13);
+		List<Line> lines = new ArrayList<Line>();
+		for(int i = 0; i < 500; i++) {
+			Point start = new Point(random.nextInt(1000), random.nextInt(800));
+			Point end = i % 10 == 0 ? start : new Point(start.x + random.nextInt(101) - 50, start.y + random.nextInt(101) - 50);
+			lines.add(new Line(start, end));
+		}
+		LineIndex index = new LineIndex(lines);
+		assertEquals(500, index.size());
+		assertNull(new LineIndex(new ArrayList<Line>()).findNearest(3, 4));
+		
+		for(int k = 0; k < 200; k++) {
+			int x = random.nextInt(1100) - 50;
+			int y = random.nextInt(900) - 50;
+			Rectangle area = new Rectangle(x, y, 2 + random.nextInt(80), 2 + random.nextInt(80));
+			List<Line> expected = new ArrayList<Line>();
+			List<Line> expectedEnds = new ArrayList<Line>();
+			Line nearest = null;
+			double nearestDistance = Double.MAX_VALUE;
+			for(Line line : lines) {
+				Line2D segment = new Line2D.Double(line.getStart(), line.getEnd());
+				if(segment.intersects(area.x, area.y, area.width - 1, area.height - 1)) {
+					expected.add(line);
+				}
+				if(line.getStart().distance(x, y) <= 10 || line.getEnd().distance(x, y) <= 10) {
+					expectedEnds.add(line);
+				}
+				if(segment.ptSegDistSq(x, y) < nearestDistance) {
+					nearestDistance = segment.ptSegDistSq(x, y);
+					nearest = line;
+				}
+			}
+			
+			assertEquals("Wrong lines in "+area+"!", expected, index.findIntersecting(area));
+			assertEquals("Wrong lines near end point ["+x+","+y+"]!", expectedEnds, index.findByEndpoint(x, y, 10));
+			assertEquals("Wrong nearest line to ["+x+","+y+"]!", nearestDistance, new Line2D.Double(index.findNearest(x, y).getStart(), index.findNearest(x, y).getEnd()).ptSegDistSq(x, y), 1e-9);
+		}
+	}
+	
+	/**
+	 * Pieces of one line should be merged, connected lines joined to polylines which end at crossings.
+	 */
+	@Test
+	public void testLineMerger() {
+		List<Line> lines = new ArrayList<Line>();
+		//one line in three pieces with small gaps, the middle one reversed
+		lines.add(new Line(new Point(0, 0), new Point(10, 1)));
+		lines.add(new Line(new Point(20, 2), new Point(11, 1)));
+		lines.add(new Line(new Point(21, 2), new Point(30, 3)));
+		//part of the first line found again from another point
+		lines.add(new Line(new Point(5, 1), new Point(10, 1)));
+		//corner
+		lines.add(new Line(new Point(30, 4), new Point(30, 20)));
+		//closed square
+		lines.add(new Line(new Point(50, 50), new Point(60, 50)));
+		lines.add(new Line(new Point(60, 50), new Point(60, 60)));
+		lines.add(new Line(new Point(60, 60), new Point(50, 60)));
+		lines.add(new Line(new Point(50, 60), new Point(50, 51)));
+		//crossing of three lines
+		lines.add(new Line(new Point(100, 0), new Point(100, 20)));
+		lines.add(new Line(new Point(100, 20), new Point(110, 20)));
+		lines.add(new Line(new Point(100, 21), new Point(110, 30)));
+		
+		LineMerger merger = new LineMerger();
+		List<Line> merged = merger.merge(lines);
+		assertEquals("Wrong number of merged lines!", 9, merged.size());
+		assertEquals(new Point(0, 0), merged.get(0).getStart());
+		assertEquals(new Point(30, 3), merged.get(0).getEnd());
+		
+		List<Polyline> polylines = merger.assemble(merged);
+		assertEquals("Wrong number of polylines!", 5, polylines.size());
+		assertEquals(Arrays.asList(new Point(0, 0), new Point(30, 3), new Point(30, 20)), polylines.get(0).getPoints());
+		assertFalse(polylines.get(0).isClosed());
+		assertEquals(4, polylines.get(1).getPoints().size());
+		assertTrue("Square should be closed!", polylines.get(1).isClosed());
+		assertEquals(4, polylines.get(1).getLines().size());
+		for(int i = 2; i < 5; i++) {
+			assertEquals("Lines of the crossing shouldn't be joined!", 2, polylines.get(i).getPoints().size());
+		}
+		
+		assertNull(merger.merge(null));
+	}
+	
+	/**
+	 * Hough detector should find solid, dashed and thick lines as single lines, chunked accumulator
+	 * must give the same result as the full one.
+	 */
+	@Test
+	public void testHoughDetector() {
+		BinaryBitmap bitmap = new BinaryBitmap(200, 150);
+		for(int x = 10; x < 190; x++) {
+			//solid horizontal line
+			bitmap.setBlack(x, 20, true);
+			//dashed horizontal line with gaps of 2 pixels
+			if(x % 6 < 4) {
+				bitmap.setBlack(x, 60, true);
+			}
+		}
+		for(int y = 30; y < 140; y++) {
+			//vertical line 2 pixels thick
+			bitmap.setBlack(150, y, true);
+			bitmap.setBlack(151, y, true);
+		}
+		for(int i = 0; i < 60; i++) {
+			//diagonal line
+			bitmap.setBlack(20 + i, 80 + i, true);
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			List<Line> lines = new HoughLineDetector(pool, 180, 1.0, 30, 20, 3, 64L * 1024 * 1024).findLines(bitmap);
+			assertEquals("Wrong number of lines!", 4, lines.size());
+			assertEquals(new Point(10, 20), lines.get(0).getStart());
+			assertEquals(new Point(189, 20), lines.get(0).getEnd());
+			assertEquals(30, lines.get(1).getStart().y);
+			assertEquals(139, lines.get(1).getEnd().y);
+			assertEquals(150, lines.get(1).getStart().x, 1);
+			assertEquals(new Point(12, 60), lines.get(2).getStart());
+			assertEquals(new Point(189, 60), lines.get(2).getEnd());
+			assertEquals(new Point(20, 80), lines.get(3).getStart());
+			assertEquals(new Point(79, 139), lines.get(3).getEnd());
+			
+			//budget for a few theta rows only
+			List<Line> chunked = new HoughLineDetector(pool, 180, 1.0, 30, 20, 3, 10000).findLines(bitmap);
+			assertLinesEqual("chunked accumulator", lines, chunked);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Lines with theta close to 0 get votes also close to PI (with opposite rho). Near vertical lines must be found
+	 * the same way as the same lines transposed to near horizontal ones, which are in the middle of the theta range.
+	 */
+	@Test
+	public void testHoughDetectorWrap() {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			for(int dx = -12; dx <= 12; dx += 2) {
+				BinaryBitmap vertical = new BinaryBitmap(100, 620);
+				BinaryBitmap horizontal = new BinaryBitmap(620, 100);
+				for(int y = 10; y < 610; y++) {
+					int x = 50 + (int)Math.round(dx * (y - 10) / 599.0);
+					vertical.setBlack(x, y, true);
+					horizontal.setBlack(y, x, true);
+				}
+				
+				for(long budget : new long[] {64L * 1024 * 1024, 10000}) {
+					HoughLineDetector detector = new HoughLineDetector(pool, 180, 1.0, 30, 20, 3, budget);
+					List<Line> expected = new ArrayList<Line>();
+					for(Line line : detector.findLines(horizontal)) {
+						//transposed, the first point is the one which comes first in the order of rows
+						Point start = new Point(line.getStart().y, line.getStart().x);
+						Point end = new Point(line.getEnd().y, line.getEnd().x);
+						expected.add(end.y < start.y ? new Line(end, start) : new Line(start, end));
+					}
+					assertLinesEqual("line tilted by "+dx, sortLines(expected), detector.findLines(vertical));
+				}
+			}
+			
+			BinaryBitmap bitmap = new BinaryBitmap(100, 620);
+			for(int y = 10; y < 610; y++) {
+				bitmap.setBlack(50, y, true);
+			}
+			List<Line> lines = new HoughLineDetector(pool, 180, 1.0, 30, 20, 3, 10000).findLines(bitmap);
+			assertEquals("Vertical line should have been found once!", 1, lines.size());
+			assertEquals(new Point(50, 10), lines.get(0).getStart());
+			assertEquals(new Point(50, 609), lines.get(0).getEnd());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Statistics of the search should match the bitmap and found lines.
+	 */
+	@Test
+	public void testDetectionStatistics() {
+		LineDetector detector = new LineDetector();
+		BufferedImage image = openImage(getClass().getResource(path+horizontalLines));
+		if(image == null) {
+			fail();
+		}
+		
+		BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(image);
+		List<Line> lines = detector.findLines(bitmap);
+		DetectionStatistics statistics = detector.getLastStatistics();
+		assertEquals("Every black pixel should have been examined!", bitmap.countBlack(), statistics.getPixelsScanned());
+		assertEquals(lines.size(), statistics.getLinesFound());
+		assertTrue(statistics.getTimeNanos() >= 0);
+		
+		Line line = detector.findLine(bitmap);
+		statistics = detector.getLastStatistics();
+		assertEquals(1, statistics.getLinesFound());
+		assertEquals("Only points of the line should have been examined!", line.getEnd().x - line.getStart().x + 1, statistics.getPixelsScanned());
+	}
+	
+	/**
+	 * Detectors running in multiple threads at once shouldn't affect each other.
+	 */
+	@Test
+	public void testConcurrentDetectors() throws Exception {
+		String[] files = new String[] {horizontalLines, verticalLines, SElines, SWlines};
+		final BinaryBitmap[] bitmaps = new BinaryBitmap[files.length];
+		final List<List<Line>> expected = new ArrayList<List<Line>>();
+		for(int i = 0; i < files.length; i++) {
+			BufferedImage image = openImage(getClass().getResource(path+files[i]));
+			if(image == null) {
+				fail();
+			}
+			bitmaps[i] = BitmapConverter.convertToBinaryBitmap(image);
+			expected.add(Lines.findLines(bitmaps[i]));
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(files.length);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for(int t = 0; t < files.length; t++) {
+			final int offset = t;
+			results.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					LineDetector detector = new LineDetector();
+					for(int i = 0; i < 50; i++) {
+						int index = (i + offset) % bitmaps.length;
+						List<Line> lines = detector.findLines(bitmaps[index]);
+						assertLinesEqual("bitmap "+index, expected.get(index), lines);
+					}
+					return true;
+				}
+			}));
+		}
+		
+		for(Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+		executor.shutdown();
+	}
+	
+	/**
+	 * Detector with pooled buffers must find the same lines, it holds the visited map only until
+	 * {@code releaseBuffers()} is called.
+	 */
+	@Test
+	public void testPooledDetector() {
+		BufferPool pool = new BufferPool(1 << 20);
+		LineDetector detector = new LineDetector(pool);
+		//maps of the previous sizes stay in the pool
+		int previous = 0;
+		for(int size = 60; size <= 140; size += 40, previous++) {
+			for(int k = 0; k < 2; k++) {
+				BinaryBitmap bitmap = randomBitmap(size, size / 2, 30, 25 + size + k);
+				
+				assertLinesEqual("size "+size, new LineDetector().findLines(bitmap), detector.findLines(bitmap));
+				assertEquals("Visited map should be held by the detector!", previous, pool.size());
+				detector.releaseBuffers();
+				assertEquals("Visited map should be returned to the pool!", previous + 1, pool.size());
+			}
+		}
+		
+		detector.releaseBuffers();
+		assertEquals(3, pool.size());
+	}
+	
+	/**
+	 * Parallel search must return the same lines in the same order as the sequential one,
+	 * even if lots of lines cross the band boundaries.
+	 */
+	@Test
+	public void testParallelDetector() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ParallelLineDetector detector = new ParallelLineDetector(pool, 3);
+		
+			for(int density = 5; density <= 65; density += 20) {
+				BinaryBitmap bitmap = randomBitmap(150, 211, density, 42 + density);
+			
+				assertLinesEqual("density "+density, new LineDetector().findLines(bitmap), detector.findLines(bitmap));
+			}
+		
+			for(String file : new String[] {verticalLines, SElines, SWlines}) {
+				BufferedImage image = openImage(getClass().getResource(path+file));
+				if(image == null) {
+					fail();
+				}
+			
+				BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(image);
+				assertLinesEqual(file, Lines.findLines(bitmap), detector.findLines(bitmap));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Streaming search must find the same lines as the search in the whole bitmap.
+	 */
+	@Test
+	public void testStreamingDetector() {
+		//window covering the whole bitmap
+		BinaryBitmap noise = randomBitmap(70, 90, 30, 3);
+		assertLinesEqual("noise", sortLines(Lines.findLines(noise)), sortLines(streamLines(noise, 2*noise.getHeight())));
+		
+		//small window
+		for(String file : new String[] {horizontalLines, verticalLines, SElines, SWlines, SEline2, SWline2}) {
+			BufferedImage image = openImage(getClass().getResource(path+file));
+			if(image == null) {
+				fail();
+			}
+			
+			BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(image);
+			assertLinesEqual(file, sortLines(Lines.findLines(bitmap)), sortLines(streamLines(bitmap, 4)));
+		}
+		
+		//small window and noise, line can't go up by more than the height of its component
+		for(int windowRows = 4; windowRows <= 8; windowRows += 2) {
+			BinaryBitmap bitmap = randomBitmap(130, 150, 25, 3 + windowRows);
+			//components at most 2 rows high, separated by white rows
+			for(int i = 2; i < bitmap.getHeight(); i += 3) {
+				for(int j = 0; j < bitmap.getWidth(); j++) {
+					bitmap.setBlack(j, i, false);
+				}
+			}
+			assertTrue("Noise should have some points!", bitmap.countBlack() > 1000);
+			assertLinesEqual("noise, window "+windowRows, sortLines(Lines.findLines(bitmap)), sortLines(streamLines(bitmap, windowRows)));
+		}
+	}
+	
+	/**
+	 * Streaming search of the image file.
+	 */
+	@Test
+	public void testStreamingDetectorFile() throws IOException {
+		File file = new File(getClass().getResource(path+SWlines).getFile());
+		final List<Line> lines = new ArrayList<Line>();
+		ImageInputStream input = ImageIO.createImageInputStream(file);
+		try {
+			StreamingLineDetector.detect(input, 8, new LineListener() {
+				public void lineFound(Line line) {
+					lines.add(line);
+				}
+			});
+		} finally {
+			input.close();
+		}
+		
+		BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(openImage(file.toURI().toURL()));
+		assertLinesEqual(SWlines, sortLines(Lines.findLines(bitmap)), sortLines(lines));
+	}
+	
+	/**
+	 * Tall image must be decoded once, so the stream is read once and the work is linear in the height.
+	 * PNG is read by one pass with row updates, interlaced PNG after decoding and BMP in strips.
+	 */
+	@Test
+	public void testStreamingDetectorTallImage() throws IOException {
+		BinaryBitmap bitmap = randomBitmap(200, 8 * StreamingLineDetector.DEFAULT_STRIP_ROWS + 17, 30, 8);
+		BufferedImage image = paint(bitmap, new BufferedImage(bitmap.getWidth(), bitmap.getHeight(), BufferedImage.TYPE_BYTE_BINARY));
+		List<Line> expected = sortLines(Lines.findLines(bitmap));
+		
+		for(String format : new String[] {"png", "interlaced png", "bmp"}) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageWriter writer = ImageIO.getImageWritersByFormatName(format.substring(format.indexOf(' ') + 1)).next();
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if(format.startsWith("interlaced")) {
+				param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+			}
+			ImageOutputStream output = ImageIO.createImageOutputStream(out);
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(image, null, null), param);
+			output.close();
+			writer.dispose();
+			
+			final List<Line> lines = new ArrayList<Line>();
+			CountingInputStream input = new CountingInputStream(new ByteArrayInputStream(out.toByteArray()));
+			StreamingLineDetector.detect(input, 2 * image.getHeight(), new LineListener() {
+				public void lineFound(Line line) {
+					lines.add(line);
+				}
+			});
+			input.close();
+			
+			assertLinesEqual(format, expected, sortLines(lines));
+			assertTrue(format+" was read "+input.bytesRead+" bytes of "+out.size()+"!", input.bytesRead <= out.size() + 1024);
+		}
+	}
+	
 	/**
 	 * Test null points and same point.
 	 */
@@ -289,6 +863,85 @@ public class LinesTest {
 	}
 	
 	
+	/**
+	 * Pushes the bitmap to the streaming detector row by row and returns found lines.
+	 */
+	private static List<Line> streamLines(BinaryBitmap bitmap, int windowRows) {
+		final List<Line> lines = new ArrayList<Line>();
+		StreamingLineDetector detector = new StreamingLineDetector(bitmap.getWidth(), bitmap.getHeight(), windowRows, new LineListener() {
+			public void lineFound(Line line) {
+				lines.add(line);
+			}
+		});
+		
+		for(int i = 0; i < bitmap.getHeight(); i++) {
+			detector.pushRow(bitmap.getWords(), i * bitmap.getStride());
+		}
+		detector.finish();
+		
+		return lines;
+	}
+	
+	/**
+	 * Sorts the lines by their first points, row by row.
+	 */
+	private static List<Line> sortLines(List<Line> lines) {
+		List<Line> sorted = new ArrayList<Line>(lines);
+		Collections.sort(sorted, new Comparator<Line>() {
+			public int compare(Line l1, Line l2) {
+				if(l1.getStart().y != l2.getStart().y) {
+					return l1.getStart().y < l2.getStart().y ? -1 : 1;
+				}
+				return Integer.compare(l1.getStart().x, l2.getStart().x);
+			}
+		});
+		return sorted;
+	}
+	
+	/**
+	 * Stream which counts bytes read from it.
+	 */
+	private static class CountingInputStream extends MemoryCacheImageInputStream {
+		
+		private long bytesRead;
+		
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0) {
+				bytesRead++;
+			}
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if(read > 0) {
+				bytesRead += read;
+			}
+			return read;
+		}
+	}
+	
+	/**
+	 * Checks that both lists contain the same lines in the same order.
+	 * @param name Name used in messages.
+	 * @param expected Expected lines.
+	 * @param lines Actual lines.
+	 */
+	private static void assertLinesEqual(String name, List<Line> expected, List<Line> lines) {
+		assertEquals("Wrong number of lines in "+name+"!", expected.size(), lines.size());
+		for(int i = 0; i < expected.size(); i++) {
+			assertEquals("Wrong start of line in "+name+"!", expected.get(i).getStart(), lines.get(i).getStart());
+			assertEquals("Wrong end of line in "+name+"!", expected.get(i).getEnd(), lines.get(i).getEnd());
+		}
+	}
+	
 	/**
 	 * Opens image on specified path. If exception raises, returns null.
 	 * @param path
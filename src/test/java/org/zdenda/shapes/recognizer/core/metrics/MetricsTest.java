@@ -0,0 +1,100 @@
+package org.zdenda.shapes.recognizer.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.lines.LineDetector;
+
+public class MetricsTest {
+
+	/**
+	 * Values should be counted in buckets of powers of two.
+	 */
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram("test");
+		assertEquals(0, histogram.getPercentile(50));
+		for(int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		histogram.record(-5);
+
+		assertEquals(101, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(100, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(0));
+		//50th value is 49, bucket 32-63
+		assertEquals(63, histogram.getPercentile(50));
+		assertEquals(100, histogram.getPercentile(99));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+
+	/**
+	 * Detector should record metrics only if they are enabled, the values should be readable by JMX and sinks.
+	 */
+	@Test
+	public void testMetrics() throws Exception {
+		BinaryBitmap bitmap = new BinaryBitmap(100, 50);
+		for(int x = 10; x < 90; x++) {
+			bitmap.setBlack(x, 20, true);
+			bitmap.setBlack(x, 40, true);
+		}
+
+		final List<String> reports = new ArrayList<String>();
+		MetricsSink sink = new MetricsSink() {
+			public void report(Collection<Counter> counters, Collection<Histogram> histograms) {
+				reports.add(Metrics.toJson(counters, histograms));
+			}
+		};
+
+		Metrics.reset();
+		try {
+			LineDetector detector = new LineDetector();
+			detector.findLines(bitmap);
+			assertEquals("Disabled metrics shouldn't be recorded!", 0, Metrics.LINES_FOUND.get());
+
+			Metrics.setEnabled(true);
+			detector.findLines(bitmap);
+			detector.findLines(bitmap);
+			assertEquals(4, Metrics.LINES_FOUND.get());
+			assertEquals(2 * 2 * 80, Metrics.PIXELS_SCANNED.get());
+			assertEquals(2, Metrics.TRACE_TIME.getCount());
+			assertEquals(2, Metrics.SCAN_TIME.getCount());
+
+			assertTrue(Metrics.registerMBean());
+			assertTrue("Second registration should be ignored!", Metrics.registerMBean());
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+			assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+			String json = (String) server.getAttribute(name, "Json");
+			assertTrue(json, json.startsWith("{\"counters\":{"));
+			assertTrue(json, json.contains("\"lines.found\":4"));
+			assertTrue(json, json.contains("\"trace.nanos\":{\"count\":2,"));
+
+			Metrics.addSink(sink);
+			Metrics.report();
+			assertEquals(1, reports.size());
+			assertTrue(reports.get(0), reports.get(0).contains("\"lines.found\":4"));
+
+			server.invoke(name, "reset", null, null);
+			assertEquals(0, Metrics.LINES_FOUND.get());
+		} finally {
+			Metrics.setEnabled(false);
+			Metrics.removeSink(sink);
+			Metrics.reset();
+		}
+	}
+}
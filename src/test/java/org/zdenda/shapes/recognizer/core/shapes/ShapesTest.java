@@ -0,0 +1,74 @@
+package org.zdenda.shapes.recognizer.core.shapes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.zdenda.shapes.recognizer.core.BinaryBitmap;
+import org.zdenda.shapes.recognizer.core.BitmapConverter;
+import org.zdenda.shapes.recognizer.core.lines.LineDetector;
+
+public class ShapesTest {
+
+	/**
+	 * Rectangle, triangle, general quadrilateral and circle should be recognized, open line and filled disk not.
+	 */
+	@Test
+	public void testRecognizer() {
+		BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, 400, 300);
+		g.setColor(Color.BLACK);
+		g.drawRect(20, 20, 100, 60);
+		g.drawPolygon(new int[] {200, 300, 250}, new int[] {120, 120, 30}, 3);
+		g.drawOval(40, 150, 80, 80);
+		g.drawPolygon(new int[] {200, 320, 340, 180}, new int[] {180, 170, 260, 240}, 4);
+		g.drawLine(300, 20, 380, 60);
+		g.fillOval(340, 100, 40, 40);
+		g.dispose();
+
+		ShapeRecognizer recognizer = new ShapeRecognizer();
+		BinaryBitmap bitmap = BitmapConverter.convertToBinaryBitmap(image);
+		RecognitionResult result = recognizer.recognize(bitmap);
+		List<RecognizedShape> shapes = result.getShapes();
+		assertEquals("Wrong number of shapes: "+shapes, 4, shapes.size());
+
+		assertEquals(ShapeType.RECTANGLE, shapes.get(0).getType());
+		assertEquals(new Point(20, 20), ((Polygon) shapes.get(0)).getVertices().get(0));
+		assertEquals(ShapeType.TRIANGLE, shapes.get(1).getType());
+		assertEquals(ShapeType.CIRCLE, shapes.get(2).getType());
+		assertEquals(ShapeType.QUADRILATERAL, shapes.get(3).getType());
+
+		Circle circle = result.getCircles().get(0);
+		assertEquals(80, circle.getCenterX(), 0.5);
+		assertEquals(190, circle.getCenterY(), 0.5);
+		assertEquals(40, circle.getRadius(), 0.5);
+		assertTrue(circle.getError() < 0.5);
+
+		assertEquals(3, result.getPolygons().size());
+		assertTrue("Lines should be returned with shapes!", result.getLines().size() >= 10);
+		//lines traced from the components are the lines of the whole bitmap
+		assertEquals(new LineDetector().findLines(bitmap).toString(), result.getLines().toString());
+		assertNull(recognizer.recognize(null));
+	}
+
+	/**
+	 * Vertices where the polygon goes straight should be removed.
+	 */
+	@Test
+	public void testStraightVertices() {
+		List<Point> vertices = ShapeRecognizer.removeStraightVertices(Arrays.asList(new Point(0, 0), new Point(50, 1),
+				new Point(100, 0), new Point(100, 50), new Point(100, 50), new Point(0, 50)));
+		assertEquals(Arrays.asList(new Point(0, 0), new Point(100, 0), new Point(100, 50), new Point(0, 50)), vertices);
+		assertEquals(ShapeType.RECTANGLE, new ShapeRecognizer().classify(vertices));
+	}
+}